@@ -1,15 +1,51 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Indices of characters below
+ *  DENSE_LIMIT are kept in a direct-mapped table; any others live in a
+ *  small open-addressed table, so lookups never scan the alphabet.
  *  @author Pranav Bhimani
  */
 class Alphabet {
 
+    /** Index reported by index() for characters not in the alphabet. */
+    static final int NOT_PRESENT = -1;
+
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        _dense = new int[DENSE_LIMIT];
+        Arrays.fill(_dense, NOT_PRESENT);
+
+        int sparse = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            if (chars.charAt(i) >= DENSE_LIMIT) {
+                sparse += 1;
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, sparse) * 4);
+        _sparseKeys = new char[capacity];
+        _sparseIndex = new int[capacity];
+        Arrays.fill(_sparseIndex, NOT_PRESENT);
+
+        for (int i = 0; i < chars.length(); i++) {
+            char ch = chars.charAt(i);
+            if (index(ch) != NOT_PRESENT) {
+                throw error("Alphabet may not contain duplicate characters");
+            }
+            if (ch < DENSE_LIMIT) {
+                _dense[ch] = i;
+            } else {
+                int slot = slot(ch);
+                _sparseKeys[slot] = ch;
+                _sparseIndex[slot] = i;
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -22,9 +58,14 @@ class Alphabet {
         return _chars.length();
     }
 
+    /** Returns the characters of the alphabet, in order of index. */
+    String chars() {
+        return _chars;
+    }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.contains(Character.toString(ch));
+        return index(ch) != NOT_PRESENT;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -36,17 +77,50 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (ch == _chars.charAt(i)) {
-                return i;
-            }
+        int result = index(ch);
+        if (result == NOT_PRESENT) {
+            throw error("character %c is not in the alphabet", ch);
         }
-        return 0;
+        return result;
     }
 
+    /** Returns the index of CH, or NOT_PRESENT if CH is not in this
+     *  alphabet. */
+    int index(char ch) {
+        if (ch < DENSE_LIMIT) {
+            return _dense[ch];
+        }
+        return _sparseIndex[slot(ch)];
+    }
+
+    /** Return the slot of the sparse table that holds CH, or the empty
+     *  slot where CH would go. */
+    private int slot(char ch) {
+        int mask = _sparseKeys.length - 1;
+        int slot = (ch * HASH_MULTIPLIER >>> 16) & mask;
+        while (_sparseIndex[slot] != NOT_PRESENT && _sparseKeys[slot] != ch) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Characters below this value are indexed by a direct table. */
+    private static final int DENSE_LIMIT = 256;
+
+    /** Multiplier used to scatter characters over the sparse table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
 
     /** The string associated with this alphabet. */
     private String _chars;
 
+    /** Index of each character below DENSE_LIMIT, or NOT_PRESENT. */
+    private final int[] _dense;
+
+    /** Open-addressed keys for characters at or above DENSE_LIMIT. */
+    private final char[] _sparseKeys;
+
+    /** Index of the character in the matching slot of _sparseKeys, or
+     *  NOT_PRESENT if the slot is empty. */
+    private final int[] _sparseIndex;
 
 }
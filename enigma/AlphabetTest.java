@@ -0,0 +1,55 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Pranav Bhimani
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDefaultIndices() {
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            char c = UPPER_STRING.charAt(i);
+            assertTrue(UPPER.contains(c));
+            assertEquals(i, UPPER.toInt(c));
+            assertEquals(c, UPPER.toChar(i));
+        }
+        assertFalse(UPPER.contains('a'));
+        assertEquals(Alphabet.NOT_PRESENT, UPPER.index('*'));
+    }
+
+    @Test
+    public void checkSparseCharacters() {
+        String chars = "A\u00e9\u03a9\u4e2d\uffff0";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+        }
+        assertFalse(alpha.contains('\u03a8'));
+        assertEquals(Alphabet.NOT_PRESENT, alpha.index('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        UPPER.toInt('a');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+}
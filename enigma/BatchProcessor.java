@@ -0,0 +1,286 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Processes an input in which each settings line starts an independent
+ *  segment, since it completely resets the machine.  Consecutive
+ *  segments are gathered into tasks of about TASK_CHARS characters, each
+ *  of which a worker thread processes with its own machine, producing
+ *  encoded output.  The outputs are written in input order from a queue
+ *  holding at most QUEUE_PER_THREAD tasks per worker, so that memory use
+ *  does not depend on the size of the input.  A segment that grows past
+ *  SEGMENT_LIMIT characters is not held in memory: once the tasks before
+ *  it are written, it is processed directly as it is read.  The output,
+ *  and the error reported for the first bad line, if any, are the same
+ *  as when processing the input on one thread.
+ *  @author Pranav Bhimani
+ */
+class BatchProcessor {
+
+    /** Number of characters gathered into a task before it is given to a
+     *  worker. */
+    static final int TASK_CHARS = 1 << 16;
+
+    /** Number of characters of one segment that may be held in memory. */
+    static final int SEGMENT_LIMIT = 1 << 22;
+
+    /** Number of tasks per worker that may be waiting to be written. */
+    static final int QUEUE_PER_THREAD = 4;
+
+    /** A processor that uses MAIN to process lines with THREADS workers,
+     *  each with a machine built from CATALOG with a table budget of
+     *  BUDGET bytes. */
+    BatchProcessor(Main main, RotorCatalog catalog, int threads,
+                   long budget) {
+        this(main, catalog, threads, budget, TASK_CHARS, SEGMENT_LIMIT);
+    }
+
+    /** A processor as for BatchProcessor(MAIN, CATALOG, THREADS, BUDGET),
+     *  but whose tasks have about TASKCHARS characters and which holds at
+     *  most SEGMENTLIMIT characters of a segment. */
+    BatchProcessor(Main main, RotorCatalog catalog, int threads,
+                   long budget, int taskChars, int segmentLimit) {
+        _main = main;
+        _catalog = catalog;
+        _threads = threads;
+        _budget = budget;
+        _taskChars = taskChars;
+        _segmentLimit = segmentLimit;
+    }
+
+    /** Process the lines of INPUT, writing the results to OUTPUT. */
+    void process(MessageReader input, GroupWriter output) {
+        if (!input.readLine()) {
+            throw error("no messages");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            process(input, output, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Process INPUT, whose first line has been read, into OUTPUT, using
+     *  the workers of POOL. */
+    private void process(MessageReader input, GroupWriter output,
+                         ExecutorService pool) {
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        Task task = new Task(true);
+        Machine inline = null;
+        while (true) {
+            char[] line = input.line();
+            int len = input.length();
+            boolean last = input.atEnd();
+            boolean settings = !last && Main.isSettings(line, len);
+            if (inline != null && settings) {
+                inline = null;
+            }
+            if (inline != null) {
+                _main.processLine(inline, line, len, last, output);
+            } else {
+                if (settings && task._chars >= _taskChars) {
+                    submit(task, pending, pool, output);
+                    task = new Task(false);
+                }
+                if (settings) {
+                    task._segmentStart = task._chars;
+                }
+                if (task._chars - task._segmentStart + len > _segmentLimit) {
+                    while (!pending.isEmpty()) {
+                        write(pending.remove(), output);
+                    }
+                    inline = task.run(null, output);
+                    _main.processLine(inline, line, len, last, output);
+                    task = new Task(false);
+                } else {
+                    task.add(line, len, last);
+                }
+            }
+            if (last) {
+                break;
+            }
+            input.readLine();
+        }
+        if (task._lines > 0) {
+            submit(task, pending, pool, output);
+        }
+        while (!pending.isEmpty()) {
+            write(pending.remove(), output);
+        }
+    }
+
+    /** Give TASK to a worker of POOL, adding it to PENDING, after first
+     *  writing the oldest pending task to OUTPUT if PENDING is full. */
+    private void submit(Task task, ArrayDeque<Future<Result>> pending,
+                        ExecutorService pool, GroupWriter output) {
+        if (pending.size() >= QUEUE_PER_THREAD * _threads) {
+            write(pending.remove(), output);
+        }
+        pending.add(pool.submit(task::call));
+    }
+
+    /** Wait for the task of RESULT to finish and write its output to
+     *  OUTPUT, reporting its error, if it had one. */
+    private void write(Future<Result> result, GroupWriter output) {
+        Result done;
+        try {
+            done = result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new Error(cause);
+        }
+        output.write(done._output, 0, done._output.length);
+        if (done._error != null) {
+            throw done._error;
+        }
+    }
+
+    /** Return a new machine from my catalog. */
+    private Machine newMachine() {
+        Machine machine = new Machine(_catalog);
+        machine.setTableBudget(_budget);
+        return machine;
+    }
+
+    /** The output of a task, and the error that stopped it, if any. */
+    private static class Result {
+        /** A result with output OUTPUT and error ERROR (or null). */
+        Result(byte[] output, EnigmaException error) {
+            _output = output;
+            _error = error;
+        }
+
+        /** Encoded output. */
+        private final byte[] _output;
+        /** The error that stopped the task, or null. */
+        private final EnigmaException _error;
+    }
+
+    /** The state a worker keeps from task to task. */
+    private class Worker {
+        /** Machine for tasks that start with a settings line. */
+        private final Machine _machine = newMachine();
+        /** Destination of the output of _writer. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+        /** Writer of task output. */
+        private final GroupWriter _writer = new GroupWriter(_bytes);
+    }
+
+    /** Each thread's Worker. */
+    private final ThreadLocal<Worker> _workers =
+        ThreadLocal.withInitial(Worker::new);
+
+    /** A sequence of lines to be processed, beginning with a settings
+     *  line unless it is the first. */
+    private class Task {
+
+        /** An empty task, which is the first iff FIRST. */
+        Task(boolean first) {
+            _first = first;
+        }
+
+        /** Add the line LINE[0 .. LEN-1], which is the last line of the
+         *  input iff LAST. */
+        void add(char[] line, int len, boolean last) {
+            if (_lines == _lengths.length) {
+                _lengths = Arrays.copyOf(_lengths, 2 * _lines);
+            }
+            if (_chars + len > _text.length) {
+                _text = Arrays.copyOf(_text,
+                                      Math.max(2 * _text.length,
+                                               _chars + len));
+            }
+            System.arraycopy(line, 0, _text, _chars, len);
+            _lengths[_lines++] = len;
+            _chars += len;
+            _last = last;
+        }
+
+        /** Process my lines on a worker thread, returning the output and
+         *  the error, if any. */
+        Result call() {
+            Worker worker = _workers.get();
+            EnigmaException error = null;
+            try {
+                run(worker._machine, worker._writer);
+            } catch (EnigmaException excp) {
+                error = excp;
+            }
+            worker._writer.flush();
+            byte[] output = worker._bytes.toByteArray();
+            worker._bytes.reset();
+            return new Result(output, error);
+        }
+
+        /** Process my lines with MACHINE, or with a new machine if I am
+         *  the first task (since my first lines must see the machine as it
+         *  was first configured) or MACHINE is null.  Write the results
+         *  to OUTPUT and return the machine used. */
+        Machine run(Machine machine, GroupWriter output) {
+            if (_first || machine == null) {
+                machine = newMachine();
+            }
+            char[] line = new char[16];
+            for (int i = 0, start = 0; i < _lines; i++) {
+                int len = _lengths[i];
+                if (line.length < len) {
+                    line = new char[Math.max(len, 2 * line.length)];
+                }
+                System.arraycopy(_text, start, line, 0, len);
+                _main.processLine(machine, line, len,
+                                  _last && i == _lines - 1, output);
+                start += len;
+            }
+            return machine;
+        }
+
+        /** True iff I hold the first lines of the input. */
+        private final boolean _first;
+        /** True iff my last line is the last line of the input. */
+        private boolean _last;
+        /** My lines, one after another. */
+        private char[] _text = new char[256];
+        /** Length of each of my lines. */
+        private int[] _lengths = new int[16];
+        /** Number of lines. */
+        private int _lines;
+        /** Total number of characters. */
+        private int _chars;
+        /** Index in _text of my last settings line. */
+        private int _segmentStart;
+    }
+
+    /** Processor of individual lines. */
+    private final Main _main;
+    /** Rotors available to each machine. */
+    private final RotorCatalog _catalog;
+    /** Number of workers. */
+    private final int _threads;
+    /** Table budget of each machine. */
+    private final long _budget;
+    /** Characters in a task. */
+    private final int _taskChars;
+    /** Characters of a segment that may be held. */
+    private final int _segmentLimit;
+}
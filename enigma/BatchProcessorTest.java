@@ -0,0 +1,132 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the BatchProcessor class.
+ *  @author Pranav Bhimani
+ */
+public class BatchProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings lines used in the test inputs. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA",
+        "* C Gamma VI VII VIII QDZL AMZB (AZ) (QW) (EX)",
+        "* B Beta III IV I AXLE BCFG (HQ) (EX) (IP) (TR) (BY)",
+    };
+
+    /** Return a Main configured with the naval rotors. */
+    private static Main navalMain() throws IOException {
+        File config = File.createTempFile("naval", ".conf");
+        config.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(config)) {
+            out.print(Benchmark.NAVAL_CONFIG);
+        }
+        return new Main(new String[] { config.getPath() });
+    }
+
+    /** Return a random input of about SEGMENTS segments, using RAND.  If
+     *  BAD, one line has a character not in the alphabet. */
+    private static String randomInput(int segments, Random rand,
+                                      boolean bad) {
+        StringBuilder text = new StringBuilder();
+        int badSegment = bad ? segments / 2 : -1;
+        for (int s = 0; s < segments; s++) {
+            text.append(SETTINGS[rand.nextInt(SETTINGS.length)]).append('\n');
+            int lines = rand.nextInt(s % 17 == 0 ? 40 : 4);
+            for (int i = 0; i < lines; i++) {
+                int len = rand.nextInt(60);
+                for (int k = 0; k < len; k++) {
+                    text.append(rand.nextInt(7) == 0 ? ' '
+                                : (char) ('A' + rand.nextInt(26)));
+                }
+                if (s == badSegment && i == lines / 2) {
+                    text.append('a');
+                }
+                text.append(rand.nextInt(4) == 0 ? "\r\n" : "\n");
+            }
+        }
+        return text.append("   ").toString();
+    }
+
+    /** Return the output of processing INPUT on one thread, followed by
+     *  the error message, if any. */
+    private static String sequential(String input) throws IOException {
+        Main main = navalMain();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter output = new GroupWriter(bytes);
+        String error = "";
+        try {
+            main.processMessages(main.readConfig(), reader(input), output);
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        output.flush();
+        return bytes + error;
+    }
+
+    /** Return the output of processing INPUT in batch mode with THREADS
+     *  workers, tasks of TASKCHARS characters and segments of at most
+     *  LIMIT characters, followed by the error message, if any. */
+    private static String batch(String input, int threads, int taskChars,
+                                int limit) throws IOException {
+        Main main = navalMain();
+        RotorCatalog catalog = main.readConfig().catalog();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter output = new GroupWriter(bytes);
+        String error = "";
+        try {
+            new BatchProcessor(main, catalog, threads, 0, taskChars,
+                               limit).process(reader(input), output);
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        output.flush();
+        return bytes + error;
+    }
+
+    /** Return a reader of TEXT. */
+    private static MessageReader reader(String text) {
+        return new MessageReader(new ByteArrayInputStream(text.getBytes()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesSequential() throws IOException {
+        Random rand = new Random(12);
+        for (int trial = 0; trial < 4; trial++) {
+            String input = randomInput(300, rand, false);
+            String expected = sequential(input);
+            assertEquals(expected, batch(input, 3, 200, 100000));
+            assertEquals(expected, batch(input, 2, 50, 400));
+            assertEquals(expected, batch(input, 1, 1, 1));
+        }
+    }
+
+    @Test
+    public void checkFirstError() throws IOException {
+        Random rand = new Random(5);
+        String input = randomInput(200, rand, true);
+        String expected = sequential(input);
+        assertTrue(expected.endsWith("Input is not in Alphabet!"));
+        assertEquals(expected, batch(input, 4, 100, 100000));
+        assertEquals(expected, batch(input, 4, 100, 300));
+    }
+
+}
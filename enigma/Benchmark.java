@@ -0,0 +1,886 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import java.nio.FloatBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/** Throughput and allocation measurements for the enigma package.  Run
+ *  with 'make bench' or
+ *
+ *      java enigma.Benchmark [--csv | --json] [--out FILE]
+ *                            [--length N] [--time MILLIS] [NAME...]
+ *
+ *  Each benchmark is warmed up and then timed over REPETITIONS runs of
+ *  about --time milliseconds each (default 500).  For each, it reports
+ *  the operations per second and nanoseconds per operation of the best
+ *  run, the bytes allocated per operation by the measuring thread, and
+ *  the collections that happened while it was timed.  Results are
+ *  written as CSV (the default) or JSON to standard output or FILE, so
+ *  that separate runs can be compared.  If NAMEs are given, only the
+ *  benchmarks whose names start with one of them are run.  --length
+ *  gives the message length used by the parallel benchmarks.
+ *  @author Pranav Bhimani
+ */
+public class Benchmark {
+
+    /** Run the benchmarks as specified by ARGS (see above). */
+    public static void main(String... args) throws IOException {
+        Benchmark bench = new Benchmark();
+        String out = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--csv":
+                bench._json = false;
+                break;
+            case "--json":
+                bench._json = true;
+                break;
+            case "--out":
+                out = args[++i];
+                break;
+            case "--length":
+                bench._length = Integer.parseInt(args[++i]);
+                break;
+            case "--time":
+                bench._millis = Long.parseLong(args[++i]);
+                break;
+            default:
+                bench._filters.add(args[i]);
+            }
+        }
+        bench.runAll();
+        if (out == null) {
+            bench.write(System.out);
+        } else {
+            try (PrintStream file = new PrintStream(new File(out))) {
+                bench.write(file);
+            }
+        }
+    }
+
+    /** Something to be measured: an operation repeated some number of
+     *  times. */
+    interface Case {
+        /** Perform my operation N times and return a value depending on
+         *  the results (so that they cannot be optimized away). */
+        long run(int n);
+    }
+
+    /** Run all the benchmarks selected by _filters. */
+    void runAll() throws IOException {
+        for (int size : new int[] { 26, 64, 200 }) {
+            alphabetCases(size);
+            permutationCases(size);
+        }
+        for (int size : new int[] { 26, 200, 300 }) {
+            rotorCases(size);
+        }
+        for (int rotors : new int[] { 3, 5, 8 }) {
+            for (int size : new int[] { 26, 200 }) {
+                machineCases(rotors, size);
+            }
+        }
+        for (int length : new int[] { 16, 1024, 1 << 20 }) {
+            stringCase(length);
+        }
+        sessionCases(1 << 20);
+        bombeCases(26);
+        attackCase(256);
+        batchCases(256);
+        indexCases();
+        for (int rotors : new int[] { 12, 2000 }) {
+            configCases(rotors);
+        }
+        mainCases();
+        if (selected("machine.convertParallel")) {
+            parallelScaling(_length);
+        }
+    }
+
+    /** Add the Alphabet benchmarks for an alphabet of SIZE characters. */
+    void alphabetCases(int size) {
+        Alphabet alpha = alphabet(size);
+        char[] chars = randomMessage(alpha, 4096, new Random(size));
+        String params = "size=" + size;
+        measure("alphabet.toInt", params, n -> {
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += alpha.toInt(chars[i & 4095]);
+            }
+            return sum;
+        });
+        measure("alphabet.contains", params, n -> {
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                if (alpha.contains((char) (chars[i & 4095] + (i & 1)))) {
+                    sum += 1;
+                }
+            }
+            return sum;
+        });
+    }
+
+    /** Add the Permutation benchmarks for an alphabet of SIZE
+     *  characters. */
+    void permutationCases(int size) {
+        Permutation perm = randomPermutation(alphabet(size),
+                                             new Random(size));
+        String params = "size=" + size;
+        measure("permutation.permute", params, n -> {
+            int c = 0;
+            for (int i = 0; i < n; i++) {
+                c = perm.permute(c + 1);
+            }
+            return c;
+        });
+        measure("permutation.invert", params, n -> {
+            int c = 0;
+            for (int i = 0; i < n; i++) {
+                c = perm.invert(c + 1);
+            }
+            return c;
+        });
+    }
+
+    /** Add the Rotor benchmarks for an alphabet of SIZE characters. */
+    void rotorCases(int size) {
+        Rotor rotor = new MovingRotor("R", randomPermutation(alphabet(size),
+                                                           new Random(size)),
+                                      "");
+        String params = "size=" + size;
+        measure("rotor.convertForward", params, n -> {
+            int c = 0;
+            for (int i = 0; i < n; i++) {
+                c = rotor.convertForward(c, i % size);
+            }
+            return c;
+        });
+        measure("rotor.convertBackward", params, n -> {
+            int c = 0;
+            for (int i = 0; i < n; i++) {
+                c = rotor.convertBackward(c, i % size);
+            }
+            return c;
+        });
+    }
+
+    /** Add the benchmarks of Machine.convert(int) for a machine with
+     *  NUMROTORS rotors on an alphabet of SIZE characters, converting
+     *  directly and through a substitution table. */
+    void machineCases(int numRotors, int size) {
+        String params = "rotors=" + numRotors + " size=" + size;
+        for (boolean table : new boolean[] { false, true }) {
+            Machine machine = randomMachine(numRotors, size, new Random(1));
+            if (table) {
+                machine.setTableBudget(1L << 26);
+            }
+            measure("machine.convert", params + " table=" + table, n -> {
+                int c = 0;
+                for (int i = 0; i < n; i++) {
+                    c = machine.convert(c);
+                }
+                return c;
+            });
+        }
+    }
+
+    /** Add the benchmarks of Machine.convert(String) and of the bulk
+     *  Machine.convert(char[], ...) on a message of LENGTH characters.
+     *  One operation is one character. */
+    void stringCase(int length) {
+        Machine machine = standardMachine();
+        String msg = new String(randomMessage(length, new Random(length)));
+        measure("machine.convertString", "length=" + length, n -> {
+            long sum = 0;
+            for (int done = 0; done < n; done += length) {
+                sum += machine.convert(msg).charAt(0);
+            }
+            return sum;
+        }, length);
+        char[] chars = msg.toCharArray();
+        char[] out = new char[length];
+        measure("machine.convertChars", "length=" + length, n -> {
+            for (int done = 0; done < n; done += length) {
+                machine.convert(chars, 0, length, out, 0);
+            }
+            return out[0];
+        }, length);
+    }
+
+    /** Add the benchmark of SessionStore.convert on messages of 64
+     *  characters for randomly chosen sessions among SESSIONS open ones.
+     *  One operation is one character; the storage per session is
+     *  reported in the parameters. */
+    void sessionCases(int sessions) {
+        if (!selected("sessions.convert")) {
+            return;
+        }
+        Machine machine = standardMachine();
+        SessionStore store = new SessionStore(machine.catalog(), sessions);
+        Random rand = new Random(sessions);
+        for (int i = 0; i < sessions; i++) {
+            machine.setRotors(new String(randomMessage(4, rand)));
+            store.open(machine);
+        }
+        char[] msg = randomMessage(64, rand);
+        char[] out = new char[msg.length];
+        int[] order = new int[4096];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = rand.nextInt(sessions);
+        }
+        measure("sessions.convert", "sessions=" + sessions
+                + " bytesPerSession=" + store.bytesPerSession(), n -> {
+                for (int done = 0; done < n; done += msg.length) {
+                    store.convert(order[(done >> 6) & 4095], msg, 0,
+                                  msg.length, out, 0);
+                }
+                return out[0];
+            }, msg.length);
+    }
+
+    /** Add the benchmark of Bombe.run with a crib of LENGTH letters on
+     *  one rotor order of a 4-rotor machine, on one thread and on all
+     *  processors.  One operation is one candidate key. */
+    void bombeCases(int length) {
+        if (!selected("bombe.search")) {
+            return;
+        }
+        Machine machine = standardMachine();
+        RotorCatalog catalog =
+            new RotorCatalog(UPPER, 4, 2, machine.catalog().rotors());
+        Machine m = new Machine(catalog);
+        m.insertRotors(new String[] { "B", "Beta", "II", "III" });
+        m.setRotors("QEV");
+        m.setPlugboard(new Permutation("(AZ) (QW) (EX)", UPPER));
+        String crib = new String(randomMessage(length, new Random(length)));
+        Bombe bombe = new Bombe(catalog, m.convert(crib), crib, 0);
+        bombe.setOrders(List.<String[]>of(new String[] {
+            "B", "Beta", "II", "III" }));
+        int positions = (int) bombe.positions();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[] { 1, cores }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            measure("bombe.search", "crib=" + length + " threads=" + threads,
+                    n -> {
+                    long stops = 0;
+                    for (int done = 0; done < n; done += positions) {
+                        stops += bombe.run(pool, false).stops().size();
+                    }
+                    return stops;
+                }, positions);
+            pool.shutdown();
+            if (cores == 1) {
+                break;
+            }
+        }
+    }
+
+    /** Add the benchmark of HillClimb's inner loop: decrypting a message
+     *  of LENGTH characters with tabulated rotors and a plugboard, and
+     *  scoring it with a random table of 4-grams.  One operation is one
+     *  decryption and score, on one thread, so the rate is per core. */
+    void attackCase(int length) {
+        if (!selected("attack.decryptScore")) {
+            return;
+        }
+        Random rand = new Random(length);
+        FloatBuffer table = FloatBuffer.allocate(26 * 26 * 26 * 26);
+        for (int k = 0; k < table.capacity(); k++) {
+            table.put(k, -rand.nextFloat() * 8);
+        }
+        NGramModel model = new NGramModel(UPPER, 4, table);
+        Machine machine = standardMachine();
+        HillClimb climb = new HillClimb(machine.catalog(),
+                                        new String(randomMessage(length,
+                                                                 rand)),
+                                        model);
+        HillClimb.Decryptor decryptor =
+            climb.decryptor(new String[] { "B", "Beta", "I", "II", "III" });
+        decryptor.start(rand.nextInt(26 * 26 * 26 * 26));
+        decryptor.tabulate();
+        int[] plugboard = new int[26];
+        for (int c = 0; c < 26; c++) {
+            plugboard[c] = c ^ (c < 20 ? 1 : 0);
+        }
+        measure("attack.decryptScore", "length=" + length + " n=4", n -> {
+                double sum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += decryptor.score(plugboard);
+                }
+                return (long) sum;
+            });
+    }
+
+    /** Add the benchmarks of converting a message of LENGTH characters
+     *  under many keys with one rotor order: one key at a time through
+     *  Machine, and K keys at a time through KeyBatch for K = 8, 16 and
+     *  64.  One operation is one key. */
+    void batchCases(int length) {
+        if (!selected("keys.")) {
+            return;
+        }
+        Random rand = new Random(length);
+        Machine machine = standardMachine();
+        char[] msg = randomMessage(length, rand);
+        char[] out = new char[length];
+        String[] settings = new String[4096];
+        for (int k = 0; k < settings.length; k++) {
+            settings[k] = new String(randomMessage(4, rand));
+        }
+        measure("keys.scalar", "length=" + length, n -> {
+                for (int i = 0; i < n; i++) {
+                    machine.setRotors(settings[i & 4095]);
+                    machine.convert(msg, 0, length, out, 0);
+                }
+                return out[0];
+            });
+        int[] text = new int[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = UPPER.toInt(msg[i]);
+        }
+        for (int lanes : new int[] { 8, 16, 64 }) {
+            KeyBatch batch = new KeyBatch(machine.catalog(), new String[] {
+                    "B", "Beta", "I", "II", "III" }, lanes);
+            int[] result = new int[length * lanes];
+            measure("keys.batch", "length=" + length + " lanes=" + lanes,
+                    n -> {
+                    for (int done = 0; done < n; done += lanes) {
+                        for (int l = 0; l < lanes; l++) {
+                            batch.setKey(l, settings[(done + l) & 4095],
+                                         null, null);
+                        }
+                        batch.convert(text, length, result);
+                    }
+                    return result[0];
+                }, lanes);
+        }
+    }
+
+    /** Add the benchmarks of CycleIndex on a 3-rotor, 2-pawl catalog of
+     *  the rotors of standardMachine: computing the signature of one start
+     *  position, and looking up the entries with a signature in an index
+     *  of every order and position.  One operation is one position or one
+     *  lookup. */
+    void indexCases() throws IOException {
+        if (!selected("index.")) {
+            return;
+        }
+        RotorCatalog catalog =
+            new RotorCatalog(UPPER, 3, 2,
+                             standardMachine().catalog().rotors());
+        String[] order = { "B", "II", "III" };
+        Rotor[] rotors = new Rotor[order.length];
+        for (int i = 0; i < rotors.length; i++) {
+            rotors[i] = catalog.rotors().get(catalog.indexOf(order[i]));
+        }
+        CycleIndex.Tracer tracer = new CycleIndex.Tracer(rotors);
+        measure("index.signature", "rotors=3", n -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += tracer.signature(i % (26 * 26));
+                }
+                return sum;
+            });
+        File file = File.createTempFile("enigma", ".idx");
+        file.deleteOnExit();
+        file.delete();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CycleIndex.build(catalog, file.getPath(), pool);
+        pool.shutdown();
+        CycleIndex index = CycleIndex.open(file.getPath());
+        int[] signatures = new int[26 * 26];
+        for (int p = 0; p < signatures.length; p++) {
+            signatures[p] = tracer.signature(p);
+        }
+        measure("index.lookup", "entries=" + index.entries(), n -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += index.lookup(signatures[i % signatures.length])
+                        .size();
+                }
+                return sum;
+            });
+    }
+
+    /** Add the benchmarks of reading a configuration of ROTORS random
+     *  rotors on the upper-case alphabet, as text and compiled. */
+    void configCases(int rotors) throws IOException {
+        if (!selected("config.read")) {
+            return;
+        }
+        File text = File.createTempFile("enigma", ".conf");
+        text.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(text)) {
+            out.print(randomConfig(UPPER, rotors, new Random(rotors)));
+        }
+        File binary = File.createTempFile("enigma", ".bin");
+        binary.deleteOnExit();
+        ConfigFile.compile(Main.readCatalog(text.getPath()),
+                           binary.getPath());
+        for (File config : new File[] { text, binary }) {
+            String format = config == text ? "text" : "compiled";
+            measure("config.read", "rotors=" + rotors + " format=" + format,
+                    n -> {
+                    long sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        sum += Main.readCatalog(config.getPath())
+                            .rotors().size();
+                    }
+                    return sum;
+                });
+        }
+    }
+
+    /** Add the benchmarks of Main: processing settings lines, and
+     *  converting a file into another. */
+    void mainCases() throws IOException {
+        if (!selected("main.")) {
+            return;
+        }
+        File dir = File.createTempFile("enigma", "bench");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        File config = tempFile(dir, "naval.conf", NAVAL_CONFIG);
+        Main main = new Main(new String[] { config.getPath() });
+        Machine machine = main.readConfig();
+        String[] settings = {
+            "* B Beta I II III AAAA",
+            "* C Gamma VI VII VIII QDZL AMZB (AZ) (QW) (EX)",
+            "* B Beta III IV I AXLE BCFG (HQ) (EX) (IP) (TR) (BY)",
+        };
+        measure("main.setUp", "", n -> {
+            for (int i = 0; i < n; i++) {
+                main.setUp(machine, settings[i % settings.length]);
+            }
+            return machine.convert(0);
+        });
+
+        for (int lines : new int[] { 1, 1000 }) {
+            int length = 1 << 20;
+            StringBuilder text = new StringBuilder();
+            char[] msg = randomMessage(length / lines, new Random(lines));
+            for (int i = 0; i < lines; i++) {
+                text.append(settings[i % settings.length]).append('\n');
+                text.append(msg).append('\n');
+            }
+            File input = tempFile(dir, "msg" + lines + ".in",
+                                  text.toString());
+            File output = new File(dir, "msg" + lines + ".out");
+            output.deleteOnExit();
+            measure("main.file", "length=" + length + " segments=" + lines,
+                    n -> {
+                    for (int done = 0; done < n; done += length) {
+                        Main.main(config.getPath(), input.getPath(),
+                                  output.getPath());
+                    }
+                    return output.length();
+                }, length);
+        }
+    }
+
+    /** Return a new file NAME in DIR containing TEXT. */
+    private static File tempFile(File dir, String name, String text)
+        throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+    /** Report the throughput of Machine.convertParallel on a message of
+     *  LENGTH characters, with 1 up to the number of available
+     *  processors worker threads, next to the sequential path.  The
+     *  allocation reported is only that of the calling thread. */
+    void parallelScaling(int length) {
+        char[] msg = randomMessage(length, new Random(0));
+        char[] out = new char[length];
+        Machine machine = standardMachine();
+        measure("machine.convertSequential", "length=" + length, n -> {
+            for (int done = 0; done < n; done += length) {
+                machine.setRotors("AAAA");
+                for (int i = 0; i < length; i++) {
+                    out[i] = UPPER.toChar(machine.convert(
+                                              UPPER.toInt(msg[i])));
+                }
+            }
+            return out[0];
+        }, length);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            measure("machine.convertParallel",
+                    "length=" + length + " threads=" + threads, n -> {
+                    for (int done = 0; done < n; done += length) {
+                        machine.setRotors("AAAA");
+                        machine.convertParallel(msg, out, pool);
+                    }
+                    return out[0];
+                }, length);
+            pool.shutdown();
+            if (threads < cores && threads * 2 > cores) {
+                threads = cores / 2;
+            }
+        }
+    }
+
+    /** Return true iff the benchmark NAME is to be run.  NAME may also
+     *  be a prefix of the names of a group of benchmarks. */
+    boolean selected(String name) {
+        if (_filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : _filters) {
+            if (name.startsWith(filter) || filter.startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Measure BODY as the benchmark NAME with parameters PARAMS, where
+     *  each call of BODY.run(1) is one operation. */
+    void measure(String name, String params, Case body) {
+        measure(name, params, body, 1);
+    }
+
+    /** Measure BODY as the benchmark NAME with parameters PARAMS, where
+     *  BODY.run(N) performs N operations in batches of BATCH. */
+    void measure(String name, String params, Case body, int batch) {
+        if (!selected(name)) {
+            return;
+        }
+        int n = batch;
+        long deadline = System.nanoTime() + _millis * 1_000_000 / 2;
+        while (System.nanoTime() < deadline) {
+            _sink += body.run(n);
+            if (n < (1 << 24)) {
+                n *= 2;
+            }
+        }
+        long bestNanos = Long.MAX_VALUE, bestOps = 1;
+        long ops = 0, bytes = 0, gcs = 0, gcMillis = 0;
+        for (int rep = 0; rep < REPETITIONS; rep++) {
+            long runOps = 0;
+            long gc0 = gcCount(), gcTime0 = gcMillis();
+            long bytes0 = allocatedBytes();
+            long start = System.nanoTime();
+            long end = start + _millis * 1_000_000;
+            long now = start;
+            while (now < end) {
+                _sink += body.run(n);
+                runOps += n;
+                now = System.nanoTime();
+            }
+            bytes += allocatedBytes() - bytes0;
+            gcs += gcCount() - gc0;
+            gcMillis += gcMillis() - gcTime0;
+            ops += runOps;
+            if (bestNanos == Long.MAX_VALUE
+                || (double) (now - start) / runOps
+                   < (double) bestNanos / bestOps) {
+                bestNanos = now - start;
+                bestOps = runOps;
+            }
+        }
+        _results.add(new Result(name, params, bestOps * 1e9 / bestNanos,
+                                (double) bestNanos / bestOps,
+                                bytes < 0 ? -1 : (double) bytes / ops,
+                                gcs, gcMillis));
+        System.err.printf("%-28s %-28s %14.1f ops/s%n", name, params,
+                          bestOps * 1e9 / bestNanos);
+    }
+
+    /** One measurement. */
+    static class Result {
+        /** The measurement of benchmark NAME with parameters PARAMS:
+         *  OPSPERSEC operations per second and NANOSPEROP ns per
+         *  operation at best, BYTESPEROP bytes allocated per operation
+         *  (or -1 if unknown), and GCS collections taking GCMILLIS ms in
+         *  all while it was timed. */
+        Result(String name, String params, double opsPerSec,
+               double nanosPerOp, double bytesPerOp, long gcs,
+               long gcMillis) {
+            this.name = name;
+            this.params = params;
+            this.opsPerSec = opsPerSec;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.gcs = gcs;
+            this.gcMillis = gcMillis;
+        }
+
+        /** Benchmark name. */
+        final String name;
+        /** Benchmark parameters, as space-separated KEY=VALUE pairs. */
+        final String params;
+        /** Best throughput. */
+        final double opsPerSec;
+        /** Best time per operation. */
+        final double nanosPerOp;
+        /** Mean allocation per operation. */
+        final double bytesPerOp;
+        /** Number of collections. */
+        final long gcs;
+        /** Time spent in collections. */
+        final long gcMillis;
+    }
+
+    /** Write my results to OUT in the selected format. */
+    void write(PrintStream out) {
+        if (_json) {
+            out.println("[");
+            for (int i = 0; i < _results.size(); i++) {
+                Result r = _results.get(i);
+                out.printf("  {\"benchmark\": \"%s\", \"params\": \"%s\", "
+                           + "\"opsPerSec\": %.1f, \"nsPerOp\": %.3f, "
+                           + "\"bytesPerOp\": %.3f, \"gcCount\": %d, "
+                           + "\"gcMillis\": %d}%s%n",
+                           r.name, r.params, r.opsPerSec, r.nanosPerOp,
+                           r.bytesPerOp, r.gcs, r.gcMillis,
+                           i + 1 < _results.size() ? "," : "");
+            }
+            out.println("]");
+        } else {
+            out.println("benchmark,params,ops_per_sec,ns_per_op,"
+                        + "bytes_per_op,gc_count,gc_millis");
+            for (Result r : _results) {
+                out.printf("%s,%s,%.1f,%.3f,%.3f,%d,%d%n", r.name,
+                           r.params, r.opsPerSec, r.nanosPerOp,
+                           r.bytesPerOp, r.gcs, r.gcMillis);
+            }
+        }
+    }
+
+    /** Return the number of bytes allocated so far by this thread, or
+     *  a negative number if that is not available. */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return Long.MIN_VALUE / 2;
+    }
+
+    /** Return the number of garbage collections so far. */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /** Return the total time spent in garbage collection so far, in
+     *  milliseconds. */
+    private static long gcMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /** Return an alphabet of SIZE characters: the upper-case letters if
+     *  SIZE is 26, and otherwise the first SIZE letters of a range that
+     *  goes past the Latin-1 characters, so that both of Alphabet's
+     *  index tables are used. */
+    static Alphabet alphabet(int size) {
+        if (size == UPPER.size()) {
+            return UPPER;
+        }
+        StringBuilder chars = new StringBuilder();
+        for (char c = 'A'; chars.length() < size; c++) {
+            if (Character.isLetter(c)) {
+                chars.append(c);
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of ALPHA, using RAND. */
+    static Permutation randomPermutation(Alphabet alpha, Random rand) {
+        int[] order = shuffled(alpha.size(), rand);
+        StringBuilder cycle = new StringBuilder("(");
+        for (int k : order) {
+            cycle.append(alpha.toChar(k));
+        }
+        return new Permutation(cycle.append(')').toString(), alpha);
+    }
+
+    /** Return a random reflector named NAME for ALPHA, which has an even
+     *  number of characters, using RAND. */
+    static Reflector randomReflector(String name, Alphabet alpha,
+                                     Random rand) {
+        int[] order = shuffled(alpha.size(), rand);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            cycles.append('(').append(alpha.toChar(order[i]))
+                .append(alpha.toChar(order[i + 1])).append(')');
+        }
+        return new Reflector(name, new Permutation(cycles.toString(),
+                                                   alpha));
+    }
+
+    /** Return the text of a configuration for 5-rotor, 3-pawl machines
+     *  on ALPHA, which has an even number of characters, with ROTORS
+     *  rotors chosen using RAND: a reflector R0, a fixed rotor N1, and
+     *  moving rotors M2 and on. */
+    static String randomConfig(Alphabet alpha, int rotors, Random rand) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i++) {
+            text.append(alpha.toChar(i));
+        }
+        text.append("\n5 3\n");
+        for (int r = 0; r < rotors; r++) {
+            int[] order = shuffled(alpha.size(), rand);
+            if (r == 0) {
+                text.append("R0 R ");
+                for (int i = 0; i + 1 < order.length; i += 2) {
+                    text.append('(').append(alpha.toChar(order[i]))
+                        .append(alpha.toChar(order[i + 1])).append(')');
+                }
+            } else {
+                text.append(r == 1 ? "N" : "M").append(r).append(' ');
+                text.append(r == 1 ? "N" : "M" + alpha.toChar(
+                                rand.nextInt(alpha.size())));
+                text.append(" (");
+                for (int k : order) {
+                    text.append(alpha.toChar(k));
+                }
+                text.append(')');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return 0 .. N-1 in an order chosen using RAND. */
+    private static int[] shuffled(int n, Random rand) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = rand.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /** Return a machine of NUMROTORS rotors, all but the reflector
+     *  moving, on an alphabet of SIZE characters, using RAND for its
+     *  wirings, notches and setting. */
+    static Machine randomMachine(int numRotors, int size, Random rand) {
+        Alphabet alpha = alphabet(size);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(randomReflector("R", alpha, rand));
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < numRotors; i++) {
+            names[i] = "M" + i;
+            rotors.add(new MovingRotor(names[i],
+                                       randomPermutation(alpha, rand),
+                                       "" + alpha.toChar(rand.nextInt(size))));
+            setting.append(alpha.toChar(rand.nextInt(size)));
+        }
+        Machine machine = new Machine(alpha, numRotors, numRotors - 1,
+                                      rotors);
+        machine.insertRotors(names);
+        machine.setRotors(setting.toString());
+        machine.setPlugboard(new Permutation("", alpha));
+        return machine;
+    }
+
+    /** Return a message of LENGTH random upper-case letters from RAND. */
+    static char[] randomMessage(int length, Random rand) {
+        return randomMessage(UPPER, length, rand);
+    }
+
+    /** Return a message of LENGTH random characters of ALPHA from
+     *  RAND. */
+    static char[] randomMessage(Alphabet alpha, int length, Random rand) {
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i++) {
+            msg[i] = alpha.toChar(rand.nextInt(alpha.size()));
+        }
+        return msg;
+    }
+
+    /** Return a machine with the naval rotors B Beta I II III, set to
+     *  AAAA with no plugboard. */
+    static Machine standardMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+            + "(TV)", UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", UPPER), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(
+            "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)", UPPER),
+            "E"));
+        rotors.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", UPPER), "V"));
+        Machine machine = new Machine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        machine.setRotors("AAAA");
+        machine.setPlugboard(new Permutation("", UPPER));
+        return machine;
+    }
+
+    /** A configuration of the naval rotors. */
+    static final String NAVAL_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + " VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " VII MZM (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + " VIII MZM (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n"
+        + " C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "     (QZ) (SX) (UY)\n";
+
+    /** The upper-case alphabet. */
+    static final Alphabet UPPER = new Alphabet();
+
+    /** Number of timed runs of each benchmark. */
+    static final int REPETITIONS = 3;
+
+    /** True to write results as JSON rather than CSV. */
+    private boolean _json;
+    /** Name prefixes of the benchmarks to run, or empty for all. */
+    private final List<String> _filters = new ArrayList<>();
+    /** Message length of the parallel benchmarks. */
+    private int _length = 1 << 26;
+    /** Duration of each timed run, in milliseconds. */
+    private long _millis = 500;
+    /** Results so far. */
+    private final List<Result> _results = new ArrayList<>();
+    /** Accumulates results of benchmark operations. */
+    private long _sink;
+}
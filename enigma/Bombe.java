@@ -0,0 +1,609 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack in the manner of the Turing-Welchman Bombe,
+ *  run as
+ *
+ *      java enigma.Bombe [--threads N] [--first] [--offset K]
+ *                        CONFIG CIPHERTEXT CRIB
+ *
+ *  where CONFIG is a configuration file (text or compiled), CIPHERTEXT a
+ *  file of messages in the form Main writes them (lines containing '*'
+ *  are skipped and blanks ignored), and CRIB plaintext believed to
+ *  start at character K (default 0) of the ciphertext.  Each stop is
+ *  printed as a settings line that Main accepts.
+ *
+ *  The crib and ciphertext make a menu: a graph on the letters with an
+ *  edge between each crib letter and its ciphertext letter, labeled with
+ *  its position.  If the plugboard sends crib letter P to P' and cipher
+ *  letter C to C', the rotors at that position send P' to C' and back.
+ *  For every rotor order and start position, the Bombe takes the most
+ *  connected letter T of the menu, supposes in turn that the plugboard
+ *  sends it to each letter, and follows the consequences through the
+ *  menu (and, as the diagonal board did, through the symmetry of the
+ *  plugboard) until two letters are found plugged to the same one.  A
+ *  supposition with no contradiction is a stop: a candidate key, with
+ *  the plugboard pairs it implies.
+ *
+ *  As with the original, ring settings are taken to be 0, so a stop
+ *  gives the start positions less the ring settings; the key is found
+ *  provided the true ring settings do not move a turnover of the middle
+ *  rotors into or out of the crib.  Rotors are driven through their
+ *  compiled tables, not through Machine.  Rotor orders and ranges of
+ *  start positions are searched as ForkJoin tasks, so idle workers
+ *  steal work from busy ones.
+ *  @author Pranav Bhimani
+ */
+public class Bombe {
+
+    /** Largest number of start positions searched by one task. */
+    static final int TASK_POSITIONS = 1 << 12;
+
+    /** Run the attack described by ARGS (see above). */
+    public static void main(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int offset = 0;
+        boolean first = false;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k++) {
+            switch (args[k]) {
+            case "--threads":
+                threads = Integer.parseInt(args[++k]);
+                break;
+            case "--offset":
+                offset = Integer.parseInt(args[++k]);
+                break;
+            case "--first":
+                first = true;
+                break;
+            default:
+                usage();
+            }
+        }
+        if (args.length - k != 3) {
+            usage();
+        }
+        try {
+            RotorCatalog catalog = Main.readCatalog(args[k]);
+            Bombe bombe = new Bombe(catalog, readCiphertext(args[k + 1]),
+                                    args[k + 2], offset);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Result result = bombe.run(pool, first);
+            pool.shutdown();
+            for (Stop stop : result.stops()) {
+                System.out.println(stop.settingsLine());
+            }
+            System.err.printf("%d candidates in %.3f s (%.0f/s), %d stops%n",
+                              result.candidates(), result.nanos() / 1e9,
+                              result.rate(), result.stops().size());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Report the correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: java enigma.Bombe [--threads N] [--first]"
+                           + " [--offset K] CONFIG CIPHERTEXT CRIB");
+        System.exit(1);
+    }
+
+    /** Return the ciphertext in the file NAME: the characters other than
+     *  blanks of its lines that are not settings lines. */
+    static String readCiphertext(String name) {
+        MessageReader input = MessageReader.open(name);
+        StringBuilder text = new StringBuilder();
+        try {
+            while (input.readLine()) {
+                if (!Main.isSettings(input.line(), input.length())) {
+                    text.append(input.line(), 0, input.length());
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return text.toString();
+    }
+
+    /** An attack on CIPHERTEXT, given that CRIB is the plaintext of its
+     *  characters from OFFSET on, with machines built from CATALOG.
+     *  Blanks in both are ignored. */
+    Bombe(RotorCatalog catalog, String ciphertext, String crib, int offset) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        String cipher = ciphertext.replace(" ", "");
+        String plain = crib.replace(" ", "");
+        if (plain.isEmpty() || offset < 0
+            || offset + plain.length() > cipher.length()) {
+            throw error("crib does not fit in the ciphertext");
+        }
+        _offset = offset;
+        _length = plain.length();
+        int[] from = new int[_length];
+        int[] to = new int[_length];
+        int[] degree = new int[_size + 1];
+        for (int i = 0; i < _length; i++) {
+            from[i] = index(plain.charAt(i));
+            to[i] = index(cipher.charAt(offset + i));
+            degree[from[i] + 1] += 1;
+            degree[to[i] + 1] += 1;
+        }
+        int test = 0;
+        for (int a = 0; a < _size; a++) {
+            if (degree[a + 1] > degree[test + 1]) {
+                test = a;
+            }
+        }
+        _test = test;
+        _edgeStart = degree;
+        for (int a = 0; a < _size; a++) {
+            _edgeStart[a + 1] += _edgeStart[a];
+        }
+        _edgeTo = new int[2 * _length];
+        _edgeStep = new int[2 * _length];
+        int[] fill = Arrays.copyOf(_edgeStart, _size);
+        for (int i = 0; i < _length; i++) {
+            _edgeTo[fill[from[i]]] = to[i];
+            _edgeStep[fill[from[i]]++] = i;
+            _edgeTo[fill[to[i]]] = from[i];
+            _edgeStep[fill[to[i]]++] = i;
+        }
+        _orders = orders(catalog);
+    }
+
+    /** Return the index of C in my alphabet. */
+    private int index(char c) {
+        if (!_alphabet.contains(c)) {
+            throw error("character %c is not in the alphabet", c);
+        }
+        return _alphabet.toInt(c);
+    }
+
+    /** Return every rotor order allowed by CATALOG: a reflector, then
+     *  distinct non-moving rotors in the slots without pawls, then
+     *  distinct moving rotors in the others. */
+    static List<String[]> orders(RotorCatalog catalog) {
+        List<Rotor> reflectors = new ArrayList<>();
+        List<Rotor> fixed = new ArrayList<>();
+        List<Rotor> moving = new ArrayList<>();
+        for (Rotor rotor : catalog.rotors()) {
+            if (rotor instanceof Reflector) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                moving.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[catalog.numRotors()];
+        for (Rotor reflector : reflectors) {
+            order[0] = reflector.name();
+            addOrders(order, 1, catalog.numRotors() - catalog.numPawls(),
+                      fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT each completion of ORDER from slot SLOT on, filling
+     *  the slots before FIRSTMOVING from FIXED and the rest from MOVING,
+     *  without repeating a rotor. */
+    private static void addOrders(String[] order, int slot, int firstMoving,
+                                  List<Rotor> fixed, List<Rotor> moving,
+                                  List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        outer:
+        for (Rotor rotor : slot < firstMoving ? fixed : moving) {
+            for (int i = 1; i < slot; i++) {
+                if (order[i].equals(rotor.name())) {
+                    continue outer;
+                }
+            }
+            order[slot] = rotor.name();
+            addOrders(order, slot + 1, firstMoving, fixed, moving, result);
+        }
+    }
+
+    /** Search only the rotor orders ORDERS, each an array of rotor names
+     *  as for Machine.insertRotors. */
+    void setOrders(List<String[]> orders) {
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Return the number of start positions of each rotor order. */
+    long positions() {
+        long result = 1;
+        for (int i = 1; i < _catalog.numRotors(); i++) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Search every rotor order and start position with the workers of
+     *  POOL, stopping at the first stop if FIRST. */
+    Result run(ForkJoinPool pool, boolean first) {
+        Search search = new Search(first);
+        long start = System.nanoTime();
+        List<Task> tasks = new ArrayList<>();
+        for (int k = 0; k < _orders.size(); k++) {
+            Rotor[] rotors = new Rotor[_catalog.numRotors()];
+            for (int i = 0; i < rotors.length; i++) {
+                int index = _catalog.indexOf(_orders.get(k)[i]);
+                if (index == RotorCatalog.NOT_PRESENT) {
+                    throw error("Rotor %s is not in the configuration!",
+                                _orders.get(k)[i]);
+                }
+                rotors[i] = _catalog.rotors().get(index);
+            }
+            tasks.add(new Task(search, k, rotors, 0, positions()));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        List<Stop> stops = new ArrayList<>(search._stops);
+        stops.sort(Comparator.comparingInt((Stop s) -> s._order)
+                   .thenComparingLong(s -> s._position));
+        return new Result(stops, search._candidates.get(),
+                          System.nanoTime() - start);
+    }
+
+    /** The state shared by the tasks of one search. */
+    private static class Search {
+        /** A search that ends at the first stop if FIRST. */
+        Search(boolean first) {
+            _first = first;
+        }
+
+        /** True iff the search ends at the first stop. */
+        private final boolean _first;
+        /** Set once the search should end. */
+        private final AtomicBoolean _done = new AtomicBoolean();
+        /** Number of candidates tested. */
+        private final AtomicLong _candidates = new AtomicLong();
+        /** Stops found. */
+        private final ConcurrentLinkedQueue<Stop> _stops =
+            new ConcurrentLinkedQueue<>();
+    }
+
+    /** The search of a range of start positions for one rotor order. */
+    private class Task extends RecursiveAction {
+
+        /** A task of SEARCH covering start positions FROM .. TO-1 of
+         *  ROTORS, rotor order number ORDER. */
+        Task(Search search, int order, Rotor[] rotors, long from, long to) {
+            _search = search;
+            _order = order;
+            _rotors = rotors;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > TASK_POSITIONS) {
+                long mid = (_from + _to) >>> 1;
+                invokeAll(new Task(_search, _order, _rotors, _from, mid),
+                          new Task(_search, _order, _rotors, mid, _to));
+                return;
+            }
+            Tester tester = new Tester(_rotors);
+            long tested = 0;
+            for (long p = _from; p < _to && !_search._done.get(); p++) {
+                tested += 1;
+                if (tester.test(p)) {
+                    _search._stops.add(tester.stop(_order, p));
+                    if (_search._first) {
+                        _search._done.set(true);
+                    }
+                }
+            }
+            _search._candidates.addAndGet(tested);
+        }
+
+        /** The search I am part of. */
+        private final Search _search;
+        /** Number of my rotor order. */
+        private final int _order;
+        /** My rotor order. */
+        private final Rotor[] _rotors;
+        /** First start position. */
+        private final long _from;
+        /** Start position just past my range. */
+        private final long _to;
+    }
+
+    /** The working storage used to test candidates of one rotor order
+     *  on one thread. */
+    private class Tester {
+
+        /** A tester of start positions of ROTORS. */
+        Tester(Rotor[] rotors) {
+            _rotors = rotors;
+            int n = rotors.length;
+            _settings = new int[n];
+            _offsets = new int[_length * n];
+            _wire = new int[_size];
+            _touched = new int[_size];
+            _stack = new int[2 * (1 + _size * (1 + maxDegree()))];
+            _images = new int[_length * _size];
+            _stamps = new int[_length * _size];
+        }
+
+        /** Return the largest number of menu edges at one letter. */
+        private int maxDegree() {
+            int result = 0;
+            for (int a = 0; a < _size; a++) {
+                result = Math.max(result, _edgeStart[a + 1] - _edgeStart[a]);
+            }
+            return result;
+        }
+
+        /** Return true iff start position POSITION is a stop, leaving the
+         *  plugboard wiring it implies in _wire. */
+        boolean test(long position) {
+            int n = _rotors.length;
+            for (int i = n - 1; i > 0; i--) {
+                _settings[i] = (int) (position % _size);
+                position /= _size;
+            }
+            _settings[0] = 0;
+            for (int k = 0; k < _offset; k++) {
+                Machine.step(_rotors, _settings, _size);
+            }
+            for (int k = 0; k < _length; k++) {
+                Machine.step(_rotors, _settings, _size);
+                System.arraycopy(_settings, 0, _offsets, k * n, n);
+            }
+            Arrays.fill(_wire, NONE);
+            _stamp += 1;
+            if (_stamp == 0) {
+                Arrays.fill(_stamps, 0);
+                _stamp = 1;
+            }
+            for (int x = 0; x < _size; x++) {
+                if (consistent(x)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Return true iff supposing that the plugboard sends the test
+         *  letter to X leads to no contradiction. */
+        private boolean consistent(int x) {
+            for (int i = 0; i < _touchedCount; i++) {
+                _wire[_touched[i]] = NONE;
+            }
+            _touchedCount = 0;
+            int top = 0;
+            _stack[top++] = _test;
+            _stack[top++] = x;
+            while (top > 0) {
+                int y = _stack[--top];
+                int a = _stack[--top];
+                if (_wire[a] == y) {
+                    continue;
+                }
+                if (_wire[a] != NONE) {
+                    return false;
+                }
+                _wire[a] = y;
+                _touched[_touchedCount++] = a;
+                _stack[top++] = y;
+                _stack[top++] = a;
+                for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e++) {
+                    _stack[top++] = _edgeTo[e];
+                    _stack[top++] = scramble(_edgeStep[e], y);
+                }
+            }
+            return true;
+        }
+
+        /** Return the image of C under the rotors alone at crib position
+         *  STEP, computing it only the first time it is needed for the
+         *  current start position. */
+        private int scramble(int step, int c) {
+            int k = step * _size + c;
+            if (_stamps[k] != _stamp) {
+                int image = convert(step, c);
+                _images[k] = image;
+                _stamps[k] = _stamp;
+                _images[step * _size + image] = c;
+                _stamps[step * _size + image] = _stamp;
+            }
+            return _images[k];
+        }
+
+        /** Return the image of C under the rotors at crib position STEP,
+         *  computed through the rotors' tables. */
+        private int convert(int step, int c) {
+            int n = _rotors.length;
+            int base = step * n;
+            for (int i = n - 1; i >= 0; i--) {
+                c = _rotors[i].convertForward(c, _offsets[base + i]);
+            }
+            for (int i = 1; i < n; i++) {
+                c = _rotors[i].convertBackward(c, _offsets[base + i]);
+            }
+            return c;
+        }
+
+        /** Return the stop found by the last successful test, at start
+         *  position POSITION of rotor order number ORDER. */
+        Stop stop(int order, long position) {
+            long start = position;
+            String[] names = new String[_rotors.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = _rotors[i].name();
+            }
+            char[] setting = new char[names.length - 1];
+            for (int i = setting.length - 1; i >= 0; i--) {
+                setting[i] = _alphabet.toChar((int) (position % _size));
+                position /= _size;
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < _size; a++) {
+                if (_wire[a] > a) {
+                    plugboard.append(plugboard.length() > 0 ? " (" : "(")
+                        .append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_wire[a])).append(')');
+                }
+            }
+            return new Stop(order, start, names, new String(setting),
+                            plugboard.toString());
+        }
+
+        /** The rotor order being tested. */
+        private final Rotor[] _rotors;
+        /** Settings of the rotors as they are stepped. */
+        private final int[] _settings;
+        /** Settings of the rotors at each crib position, one after
+         *  another. */
+        private final int[] _offsets;
+        /** The letter to which the plugboard sends each letter under
+         *  the current supposition, or NONE. */
+        private final int[] _wire;
+        /** Letters whose _wire entries are set. */
+        private final int[] _touched;
+        /** Number of entries in _touched. */
+        private int _touchedCount;
+        /** Pairs (letter, wire) still to be followed. */
+        private final int[] _stack;
+        /** Images of the letters at each crib position, where the
+         *  corresponding entry of _stamps is _stamp. */
+        private final int[] _images;
+        /** Start position number (_stamp) for which each entry of
+         *  _images was computed. */
+        private final int[] _stamps;
+        /** Number of the start position being tested. */
+        private int _stamp;
+    }
+
+    /** A candidate key. */
+    static class Stop {
+        /** A stop at start position POSITION of rotor order number ORDER,
+         *  with rotors ROTORS at SETTING, and plugboard PLUGBOARD. */
+        Stop(int order, long position, String[] rotors, String setting,
+             String plugboard) {
+            _order = order;
+            _position = position;
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return my rotor setting (less the ring settings). */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied by my stop, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return a settings line for my key. */
+        String settingsLine() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Number of my rotor order. */
+        private final int _order;
+        /** Number of my start position. */
+        private final long _position;
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor setting. */
+        private final String _setting;
+        /** My plugboard pairs. */
+        private final String _plugboard;
+    }
+
+    /** The outcome of a search. */
+    static class Result {
+        /** A search that found STOPS after testing CANDIDATES candidates
+         *  in NANOS nanoseconds. */
+        Result(List<Stop> stops, long candidates, long nanos) {
+            _stops = Collections.unmodifiableList(stops);
+            _candidates = candidates;
+            _nanos = nanos;
+        }
+
+        /** Return the stops, by rotor order and start position. */
+        List<Stop> stops() {
+            return _stops;
+        }
+
+        /** Return the number of candidates tested. */
+        long candidates() {
+            return _candidates;
+        }
+
+        /** Return the duration of the search in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the number of candidates tested per second. */
+        double rate() {
+            return _candidates * 1e9 / Math.max(1, _nanos);
+        }
+
+        /** The stops. */
+        private final List<Stop> _stops;
+        /** Number of candidates tested. */
+        private final long _candidates;
+        /** Duration in nanoseconds. */
+        private final long _nanos;
+    }
+
+    /** Value of _wire for a letter whose wire is unknown. */
+    private static final int NONE = -1;
+
+    /** Source of the rotors. */
+    private final RotorCatalog _catalog;
+    /** Alphabet of the rotors. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Position of the crib in the ciphertext. */
+    private final int _offset;
+    /** Length of the crib. */
+    private final int _length;
+    /** The most connected letter of the menu. */
+    private final int _test;
+    /** Menu edges at letter A are _edgeStart[A] .. _edgeStart[A+1]-1. */
+    private final int[] _edgeStart;
+    /** Other letter of each menu edge. */
+    private final int[] _edgeTo;
+    /** Crib position of each menu edge. */
+    private final int[] _edgeStep;
+    /** Rotor orders to search. */
+    private List<String[]> _orders;
+}
@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Pranav Bhimani
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext of the test message, whose start is the crib. */
+    private static final String PLAIN =
+        "WETTERVORHERSAGEBISKAYAHEUTEREGENUNDWINDAUSWEST";
+
+    /** Length of the crib. */
+    private static final int CRIB = 26;
+
+    /** The key of the test message. */
+    private static final String[] ORDER = { "B", "Beta", "II", "IV" };
+
+    /** Return a 4-rotor, 2-pawl catalog of the naval rotors. */
+    private static RotorCatalog catalog() {
+        return new RotorCatalog(UPPER, 4, 2, navalRotors());
+    }
+
+    /** Return PLAIN enciphered with ORDER at SETTING and plugboard
+     *  CYCLES, with machines from CATALOG. */
+    private static String encipher(RotorCatalog catalog, String setting,
+                                   String cycles) {
+        Machine m = new Machine(catalog);
+        m.insertRotors(ORDER);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m.convert(PLAIN);
+    }
+
+    /** Return the stop of RESULT at SETTING with rotors ORDER, or null. */
+    private static Bombe.Stop find(Bombe.Result result, String setting) {
+        for (Bombe.Stop stop : result.stops()) {
+            if (Arrays.equals(stop.rotors(), ORDER)
+                && stop.setting().equals(setting)) {
+                return stop;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void checkFindsKey() {
+        RotorCatalog catalog = catalog();
+        String cipher = encipher(catalog, "KDV", "(AE) (RT) (SW) (HO)");
+        Bombe bombe = new Bombe(catalog, cipher, PLAIN.substring(0, CRIB), 0);
+        bombe.setOrders(List.of(ORDER, new String[] { "C", "Gamma", "I", "V" },
+                                new String[] { "B", "Gamma", "IV", "II" }));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Bombe.Result result = bombe.run(pool, false);
+        pool.shutdown();
+        assertEquals(3 * bombe.positions(), result.candidates());
+        Bombe.Stop stop = find(result, "KDV");
+        assertNotNull(stop);
+        for (String pair : new String[] { "(AE)", "(RT)", "(SW)", "(HO)" }) {
+            assertTrue(stop.plugboard().contains(pair));
+        }
+        assertTrue(result.stops().size() < 10);
+        Machine m = new Machine(catalog);
+        new Main(catalog, null, null).applySettings(m, stop.settingsLine());
+        assertEquals(PLAIN, m.convert(cipher));
+    }
+
+    @Test
+    public void checkOffset() {
+        RotorCatalog catalog = catalog();
+        String cipher = encipher(catalog, "QEZ", "(BN) (CY)");
+        Bombe bombe = new Bombe(catalog, cipher,
+                                PLAIN.substring(12, 12 + CRIB), 12);
+        bombe.setOrders(List.<String[]>of(ORDER));
+        ForkJoinPool pool = new ForkJoinPool(1);
+        Bombe.Result result = bombe.run(pool, false);
+        pool.shutdown();
+        assertNotNull(find(result, "QEZ"));
+    }
+
+    @Test
+    public void checkFirstStops() {
+        RotorCatalog catalog = catalog();
+        String cipher = encipher(catalog, "AAB", "");
+        Bombe bombe = new Bombe(catalog, cipher, PLAIN.substring(0, CRIB), 0);
+        bombe.setOrders(List.<String[]>of(ORDER));
+        ForkJoinPool pool = new ForkJoinPool(1);
+        Bombe.Result result = bombe.run(pool, true);
+        pool.shutdown();
+        assertEquals(1, result.stops().size());
+        assertTrue(result.candidates() < bombe.positions());
+    }
+
+    @Test
+    public void checkOrders() {
+        List<String[]> orders = Bombe.orders(catalog());
+        assertEquals(2 * 2 * 8 * 7, orders.size());
+        for (String[] order : orders) {
+            assertEquals(4, order.length);
+            assertTrue(!order[2].equals(order[3]));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCribTooLong() {
+        new Bombe(catalog(), "ABC", "ABCD", 0);
+    }
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** A front end for Daemon, run exactly as Main is:
+ *
+ *      java enigma.Client CONFIG [INPUT [OUTPUT]]
+ *      java enigma.Client --compile CONFIG OUTPUT
+ *
+ *  It hands its arguments, and its standard input if there is no INPUT,
+ *  to the daemon at the address given by the enigma.daemon property (see
+ *  Daemon), copies the daemon's output to its standard output, and
+ *  reports errors and exits as Main would.  If there is no daemon, it
+ *  runs Main itself.
+ *  @author Pranav Bhimani
+ */
+public class Client {
+
+    /** Run Main with arguments ARGS through a daemon. */
+    public static void main(String... args) {
+        int code;
+        try {
+            code = run(Daemon.defaultAddress(), args, System.in, System.out,
+                       System.err);
+        } catch (IOException excp) {
+            code = Main.run(args);
+        }
+        System.out.flush();
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Run Main with arguments ARGS on the daemon at ADDRESS, with
+     *  standard input IN, standard output OUT and standard error ERR,
+     *  returning the exit code.  Throws IOException, before sending
+     *  anything, if there is no daemon at ADDRESS; a failure after that
+     *  is reported on ERR, with exit code 1, since part of the output
+     *  may already be on OUT and IN may have been consumed. */
+    static int run(String address, String[] args, InputStream in,
+                   OutputStream out, PrintStream err) throws IOException {
+        SocketChannel daemon = Daemon.connect(Daemon.address(address));
+        try (daemon) {
+            DataOutputStream request =
+                new DataOutputStream(Daemon.outputStream(daemon));
+            request.writeInt(args.length);
+            request.writeUTF(Path.of("").toAbsolutePath().toString());
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            if (args.length > 1) {
+                daemon.shutdownOutput();
+            } else {
+                Thread copier = new Thread(() -> copyInput(in, daemon));
+                copier.setDaemon(true);
+                copier.start();
+            }
+            return readReply(new DataInputStream(
+                                 Daemon.inputStream(daemon)), out, err);
+        } catch (IOException excp) {
+            out.flush();
+            err.printf("Error: lost the daemon: %s%n", excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Send the contents of IN to DAEMON, and then end its input. */
+    private static void copyInput(InputStream in, SocketChannel daemon) {
+        try {
+            in.transferTo(Daemon.outputStream(daemon));
+            daemon.shutdownOutput();
+        } catch (IOException excp) {
+            /* The daemon has stopped reading (after an error). */
+        }
+    }
+
+    /** Copy the output frames from REPLY to OUT, report any error on ERR,
+     *  and return the exit code. */
+    private static int readReply(DataInputStream reply, OutputStream out,
+                                 PrintStream err) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        while (true) {
+            byte tag = reply.readByte();
+            if (tag == Daemon.OUTPUT_FRAME) {
+                int len = reply.readInt();
+                while (len > 0) {
+                    int n = reply.read(buffer, 0,
+                                       Math.min(len, buffer.length));
+                    if (n < 0) {
+                        throw new IOException("daemon stopped");
+                    }
+                    out.write(buffer, 0, n);
+                    len -= n;
+                }
+            } else if (tag == Daemon.EXIT_FRAME) {
+                int code = reply.readInt();
+                String message = reply.readUTF();
+                boolean enigmaError = reply.readBoolean();
+                out.flush();
+                if (code != 0) {
+                    err.printf(enigmaError ? "Error: %s%n" : "%s%n",
+                               message);
+                }
+                return code;
+            } else {
+                throw new IOException("bad reply from daemon");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Compiled configurations: a binary form of a configuration file that
+ *  is loaded with one memory-mapped read and no parsing.  Produce one
+ *  with
+ *
+ *      java enigma.Main --compile CONFIG OUTPUT
+ *
+ *  and use it wherever a configuration file is expected; Main tells the
+ *  two apart by the first four bytes.
+ *
+ *  Format (big-endian): the int MAGIC and the int VERSION; the alphabet
+ *  as an int length and that many chars; the ints numRotors, numPawls
+ *  and the number of rotors; for each rotor, its type as a byte ('M',
+ *  'N' or 'R', as in the text form), its name as a short length and that
+ *  many chars, its permutation and the inverse as one char per alphabet
+ *  index each, and, for a moving rotor, its notches as a bit set of
+ *  (size + 63) / 64 longs; and last, the CRC-32 of everything before it
+ *  as an int.
+ *  @author Pranav Bhimani
+ */
+class ConfigFile {
+
+    /** First four bytes of a compiled configuration: "ENGC". */
+    static final int MAGIC = 0x454e4743;
+
+    /** Version of the format written by compile. */
+    static final int VERSION = 1;
+
+    /** Return true iff the file NAME exists and starts like a compiled
+     *  configuration: MAGIC followed by a version whose high bytes are
+     *  zero, which no text configuration contains. */
+    static boolean isCompiled(String name) {
+        try (FileChannel file = FileChannel.open(Path.of(name))) {
+            ByteBuffer start = ByteBuffer.allocate(2 * Integer.BYTES);
+            while (start.hasRemaining() && file.read(start) >= 0) {
+                continue;
+            }
+            return !start.hasRemaining() && start.getInt(0) == MAGIC
+                && start.getChar(Integer.BYTES) == 0;
+        } catch (IOException | RuntimeException excp) {
+            return false;
+        }
+    }
+
+    /** Write CATALOG in compiled form to the file NAME. */
+    static void compile(RotorCatalog catalog, String name) {
+        Alphabet alphabet = catalog.alphabet();
+        int size = alphabet.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(alphabet.toChar(i));
+            }
+            out.writeInt(catalog.numRotors());
+            out.writeInt(catalog.numPawls());
+            out.writeInt(catalog.rotors().size());
+            for (Rotor rotor : catalog.rotors()) {
+                out.writeByte(rotor instanceof Reflector ? 'R'
+                              : rotor.rotates() ? 'M' : 'N');
+                out.writeShort(rotor.name().length());
+                out.writeChars(rotor.name());
+                Permutation perm = rotor.permutation();
+                for (int i = 0; i < size; i++) {
+                    out.writeChar(perm.permute(i));
+                }
+                for (int i = 0; i < size; i++) {
+                    out.writeChar(perm.invert(i));
+                }
+                if (rotor.rotates()) {
+                    long[] notches = new long[(size + 63) / 64];
+                    for (int i = 0; i < size; i++) {
+                        if (rotor.atNotch(i)) {
+                            notches[i / 64] |= 1L << (i % 64);
+                        }
+                    }
+                    for (long word : notches) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            Files.write(Path.of(name), bytes.toByteArray());
+        } catch (IOException | RuntimeException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the catalog in the compiled configuration NAME. */
+    static RotorCatalog load(String name) {
+        ByteBuffer data;
+        try (FileChannel file = FileChannel.open(Path.of(name))) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large", name);
+            }
+            data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            return read(data);
+        } catch (EnigmaException excp) {
+            throw error("bad compiled configuration %s: %s", name,
+                        excp.getMessage());
+        } catch (RuntimeException excp) {
+            throw error("bad compiled configuration %s", name);
+        }
+    }
+
+    /** Return the catalog in DATA, the contents of a compiled
+     *  configuration. */
+    private static RotorCatalog read(ByteBuffer data) {
+        int end = data.limit() - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate().limit(end));
+        if (data.getInt() != MAGIC
+            || data.getInt(end) != (int) crc.getValue()) {
+            throw error("checksum mismatch");
+        }
+        if (data.getInt() != VERSION) {
+            throw error("unsupported version");
+        }
+        char[] chars = new char[data.getInt()];
+        data.asCharBuffer().get(chars);
+        data.position(data.position() + chars.length * Character.BYTES);
+        Alphabet alphabet = new Alphabet(new String(chars));
+        int size = chars.length;
+        int numRotors = data.getInt();
+        int numPawls = data.getInt();
+        int count = data.getInt();
+        ArrayList<Rotor> rotors = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            byte type = data.get();
+            char[] rotorName = new char[data.getShort()];
+            for (int i = 0; i < rotorName.length; i++) {
+                rotorName[i] = data.getChar();
+            }
+            Permutation perm = readPermutation(data, alphabet);
+            String name = new String(rotorName);
+            switch (type) {
+            case 'M':
+                StringBuilder notches = new StringBuilder();
+                for (int w = 0; w < (size + 63) / 64; w++) {
+                    long word = data.getLong();
+                    while (word != 0) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        notches.append(alphabet.toChar(w * 64 + bit));
+                        word &= word - 1;
+                    }
+                }
+                rotors.add(new MovingRotor(name, perm, notches.toString()));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(name, perm));
+                break;
+            case 'R':
+                rotors.add(new Reflector(name, perm));
+                break;
+            default:
+                throw error("unknown rotor type");
+            }
+        }
+        if (data.position() != end) {
+            throw error("trailing data");
+        }
+        return new RotorCatalog(alphabet, numRotors, numPawls, rotors);
+    }
+
+    /** Return the permutation of ALPHABET next in DATA, as a table and
+     *  its inverse, checking that they are consistent. */
+    private static Permutation readPermutation(ByteBuffer data,
+                                               Alphabet alphabet) {
+        int size = alphabet.size();
+        int[] forward = new int[size];
+        int[] inverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            forward[i] = data.getChar();
+        }
+        for (int i = 0; i < size; i++) {
+            inverse[i] = data.getChar();
+        }
+        for (int i = 0; i < size; i++) {
+            if (forward[i] >= size || inverse[forward[i]] != i) {
+                throw error("inconsistent permutation");
+            }
+        }
+        return new Permutation(forward, inverse, alphabet);
+    }
+}
@@ -0,0 +1,127 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ConfigFile class.
+ *  @author Pranav Bhimani
+ */
+public class ConfigFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file containing TEXT. */
+    private static File tempFile(String text) throws IOException {
+        File file = File.createTempFile("config", ".conf");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+    /** Return the name of a new temporary file holding CONFIG compiled. */
+    private static String compiled(File config) throws IOException {
+        File file = File.createTempFile("config", ".bin");
+        file.deleteOnExit();
+        assertEquals(0, Main.run(Main.COMPILE_OPTION, config.getPath(),
+                                 file.getPath()));
+        return file.getPath();
+    }
+
+    /** Return the result of converting MSG with the rotors ROTORS of
+     *  CATALOG at SETTING, ring settings RINGS and plugboard CYCLES. */
+    private static String convert(RotorCatalog catalog, String[] rotors,
+                                  String setting, String rings,
+                                  String cycles, String msg) {
+        Machine m = new Machine(catalog);
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setRingSettings(rings);
+        m.setPlugboard(new Permutation(cycles, catalog.alphabet()));
+        return m.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkNavalRoundTrip() throws IOException {
+        File text = tempFile(Benchmark.NAVAL_CONFIG);
+        String binary = compiled(text);
+        assertFalse(ConfigFile.isCompiled(text.getPath()));
+        assertTrue(ConfigFile.isCompiled(binary));
+        RotorCatalog original = Main.readCatalog(text.getPath());
+        RotorCatalog loaded = Main.readCatalog(binary);
+        assertEquals(original.rotors().size(), loaded.rotors().size());
+        assertEquals(original.numPawls(), loaded.numPawls());
+        String msg = "FROMHISSHOULDERHIAWATHA".repeat(100);
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "C", "Gamma", "VI", "VII", "VIII" },
+        };
+        for (String[] order : orders) {
+            assertEquals(convert(original, order, "AXLE", "BCFG", "(HQ)",
+                                 msg),
+                         convert(loaded, order, "AXLE", "BCFG", "(HQ)",
+                                 msg));
+        }
+    }
+
+    @Test
+    public void checkLargeAlphabet() throws IOException {
+        Machine machine = Benchmark.randomMachine(5, 200, new Random(3));
+        RotorCatalog original = machine.catalog();
+        File binary = File.createTempFile("config", ".bin");
+        binary.deleteOnExit();
+        ConfigFile.compile(original, binary.getPath());
+        RotorCatalog loaded = ConfigFile.load(binary.getPath());
+        Alphabet alpha = original.alphabet();
+        String msg = new String(Benchmark.randomMessage(alpha, 5000,
+                                                        new Random(4)));
+        String[] order = { "R", "M1", "M2", "M3", "M4" };
+        String setting = "" + alpha.toChar(7) + alpha.toChar(150)
+            + alpha.toChar(199) + alpha.toChar(0);
+        assertEquals(convert(original, order, setting, setting, "", msg),
+                     convert(loaded, order, setting, setting, "", msg));
+    }
+
+    @Test
+    public void checkManyRotors() throws IOException {
+        Random rand = new Random(5);
+        File text = tempFile(Benchmark.randomConfig(Benchmark.UPPER, 300,
+                                                    rand));
+        RotorCatalog original = Main.readCatalog(text.getPath());
+        RotorCatalog loaded = Main.readCatalog(compiled(text));
+        String msg = new String(Benchmark.randomMessage(1000, rand));
+        String[] order = { "R0", "N1", "M299", "M17", "M2" };
+        assertEquals(convert(original, order, "QWER", "ASDF", "(AB)", msg),
+                     convert(loaded, order, "QWER", "ASDF", "(AB)", msg));
+    }
+
+    @Test
+    public void checkCorruption() throws IOException {
+        String binary = compiled(tempFile(Benchmark.NAVAL_CONFIG));
+        byte[] bytes = Files.readAllBytes(new File(binary).toPath());
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(new File(binary).toPath(), bytes);
+        try {
+            Main.readCatalog(binary);
+            fail("loaded a corrupt configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("checksum"));
+        }
+    }
+
+}
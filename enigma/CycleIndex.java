@@ -0,0 +1,829 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** An index of the characteristics of every rotor order and start
+ *  position of a configuration, in the manner of Rejewski's card
+ *  catalog, run as
+ *
+ *      java enigma.CycleIndex [--threads N] --build CONFIG INDEX
+ *      java enigma.CycleIndex --lookup CONFIG INDEX INDICATORS
+ *
+ *  If message keys are enciphered twice at a common start position, as
+ *  the first six characters of each message, the rotors alone take the
+ *  six characters through permutations S1 ... S6.  The products S1 S4,
+ *  S2 S5 and S3 S6 can be read off a day's indicators, and their cycle
+ *  lengths, the characteristic, do not depend on the plugboard (which
+ *  only conjugates them) and almost determine the rotor order and start
+ *  position.  --build writes the characteristic of every order and
+ *  position of CONFIG to INDEX; --lookup reads the first six characters
+ *  of each line of INDICATORS (other than settings lines), which must
+ *  determine the products completely, and prints the orders and start
+ *  positions with that characteristic as settings lines.
+ *
+ *  As with Rejewski's catalog, ring settings are taken to be 0, so a
+ *  start position is found less the ring settings.
+ *
+ *  An index file holds, big-endian: the int MAGIC and the int VERSION;
+ *  the alphabet, as an int length and that many chars; the int number
+ *  of start positions of each order; the int number of rotor orders,
+ *  and for each its fingerprint (see fingerprint) as a long, and its
+ *  rotor names, as an int count and, for each, a short length and that
+ *  many chars; and then, for each order in turn, its section: an entry
+ *  of ENTRY_BYTES for each start position, sorted by signature, holding
+ *  the signature (a hash of the characteristic) and the start position
+ *  number as ints.  The sections are mapped into memory in segments of
+ *  at most SEGMENT_BYTES, so an index may be larger than one buffer,
+ *  and a lookup is a binary search of each section that reads only the
+ *  pages it needs.  Any configuration whose orders have at most
+ *  SEGMENT_BYTES / ENTRY_BYTES start positions can be indexed; that
+ *  includes every order of 6 rotors on 26 letters.
+ *
+ *  Building is incremental: orders whose fingerprints are already in
+ *  an existing index are copied from it rather than recomputed, so
+ *  adding a rotor to a configuration costs only the orders that use it.
+ *  The others are computed as ForkJoin tasks, at most BATCH_ENTRIES
+ *  signatures (or one order) at a time, and each order's section is
+ *  sorted and written as it is finished, so the memory used does not
+ *  grow with the number of orders.
+ *  @author Pranav Bhimani
+ */
+public class CycleIndex {
+
+    /** First four bytes of an index: "ENGX". */
+    static final int MAGIC = 0x454e4758;
+
+    /** Version of the format written by build. */
+    static final int VERSION = 2;
+
+    /** Bytes in one entry. */
+    static final int ENTRY_BYTES = 2 * Integer.BYTES;
+
+    /** Largest number of bytes of the file mapped as one buffer. */
+    static final int SEGMENT_BYTES = 1 << 30;
+
+    /** Largest number of signatures build holds in memory at once
+     *  (unless one order has more start positions). */
+    static final int BATCH_ENTRIES = 1 << 22;
+
+    /** Number of characters of an indicator. */
+    static final int INDICATOR = 6;
+
+    /** Number of products making up a characteristic. */
+    static final int PRODUCTS = INDICATOR / 2;
+
+    /** Largest number of start positions searched by one task. */
+    static final int TASK_POSITIONS = 1 << 12;
+
+    /** Run the command described by ARGS (see above). */
+    public static void main(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int k = 0;
+        if (args.length > 1 && args[0].equals("--threads")) {
+            threads = Integer.parseInt(args[1]);
+            k = 2;
+        }
+        try {
+            if (args.length - k == 3 && args[k].equals("--build")) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long start = System.nanoTime();
+                Build build = build(Main.readCatalog(args[k + 1]),
+                                    args[k + 2], pool);
+                pool.shutdown();
+                System.err.printf("%d orders computed, %d reused, "
+                                  + "%d entries in %.3f s%n",
+                                  build.computed(), build.reused(),
+                                  build.entries(),
+                                  (System.nanoTime() - start) / 1e9);
+            } else if (args.length - k == 4
+                       && args[k].equals("--lookup")) {
+                RotorCatalog catalog = Main.readCatalog(args[k + 1]);
+                CycleIndex index = open(args[k + 2]);
+                int[][] characteristic =
+                    characteristic(readIndicators(args[k + 3],
+                                                  catalog.alphabet()),
+                                   catalog.alphabet());
+                System.err.printf("characteristic %s%n",
+                                  format(characteristic));
+                for (Hit hit : index.lookup(catalog, characteristic)) {
+                    System.out.println(hit.settingsLine());
+                }
+            } else {
+                usage();
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Report the correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: java enigma.CycleIndex [--threads N]"
+                           + " --build CONFIG INDEX");
+        System.err.println("       java enigma.CycleIndex --lookup CONFIG"
+                           + " INDEX INDICATORS");
+        System.exit(1);
+    }
+
+    /** Return the indicators in the file NAME: the first six characters
+     *  of ALPHABET, ignoring blanks, of each line that is not a settings
+     *  line and has that many. */
+    static List<String> readIndicators(String name, Alphabet alphabet) {
+        List<String> result = new ArrayList<>();
+        MessageReader input = MessageReader.open(name);
+        try {
+            while (input.readLine()) {
+                char[] line = input.line();
+                if (Main.isSettings(line, input.length())) {
+                    continue;
+                }
+                StringBuilder indicator = new StringBuilder();
+                for (int i = 0; i < input.length()
+                         && indicator.length() < INDICATOR; i++) {
+                    if (alphabet.contains(line[i])) {
+                        indicator.append(line[i]);
+                    }
+                }
+                if (indicator.length() == INDICATOR) {
+                    result.add(indicator.toString());
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return result;
+    }
+
+    /** Return the characteristic determined by INDICATORS, strings of
+     *  six characters of ALPHABET: for each of the three products, the
+     *  lengths of its cycles, longest first. */
+    static int[][] characteristic(List<String> indicators,
+                                  Alphabet alphabet) {
+        int size = alphabet.size();
+        int[][] products = new int[PRODUCTS][size];
+        for (int[] product : products) {
+            Arrays.fill(product, -1);
+        }
+        for (String indicator : indicators) {
+            if (indicator.length() != INDICATOR) {
+                throw error("indicator %s is not %d characters", indicator,
+                            INDICATOR);
+            }
+            for (int k = 0; k < PRODUCTS; k++) {
+                int from = alphabet.toInt(indicator.charAt(k));
+                int to = alphabet.toInt(indicator.charAt(k + PRODUCTS));
+                if (products[k][from] != -1 && products[k][from] != to) {
+                    throw error("indicators are inconsistent");
+                }
+                products[k][from] = to;
+            }
+        }
+        int[][] result = new int[PRODUCTS][];
+        for (int k = 0; k < PRODUCTS; k++) {
+            boolean[] seen = new boolean[size];
+            for (int c = 0; c < size; c++) {
+                if (products[k][c] == -1) {
+                    throw error("indicators do not determine the cycles");
+                }
+                if (seen[products[k][c]]) {
+                    throw error("indicators are inconsistent");
+                }
+                seen[products[k][c]] = true;
+            }
+            int[] lengths = new int[size];
+            result[k] = Arrays.copyOf(lengths,
+                                      cycles(products[k], seen, lengths));
+        }
+        return result;
+    }
+
+    /** Set LENGTHS to the lengths of the cycles of PERM, longest first,
+     *  using SEEN (at least as long as PERM) as scratch, and return
+     *  their number. */
+    private static int cycles(int[] perm, boolean[] seen, int[] lengths) {
+        int size = perm.length;
+        Arrays.fill(seen, 0, size, false);
+        int count = 0;
+        for (int c = 0; c < size; c++) {
+            if (seen[c]) {
+                continue;
+            }
+            int length = 0;
+            for (int e = c; !seen[e]; e = perm[e]) {
+                seen[e] = true;
+                length += 1;
+            }
+            int i = count++;
+            while (i > 0 && lengths[i - 1] < length) {
+                lengths[i] = lengths[i - 1];
+                i -= 1;
+            }
+            lengths[i] = length;
+        }
+        return count;
+    }
+
+    /** Return the signature of the characteristic whose K-th product has
+     *  cycles of lengths LENGTHS[K][0 .. COUNTS[K]-1]. */
+    private static int signature(int[][] lengths, int[] counts) {
+        int h = 17;
+        for (int k = 0; k < PRODUCTS; k++) {
+            for (int i = 0; i < counts[k]; i++) {
+                h = h * 31 + lengths[k][i];
+            }
+            h = h * 31;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Return the signature of CHARACTERISTIC. */
+    static int signature(int[][] characteristic) {
+        int[] counts = new int[PRODUCTS];
+        for (int k = 0; k < PRODUCTS; k++) {
+            counts[k] = characteristic[k].length;
+        }
+        return signature(characteristic, counts);
+    }
+
+    /** Return CHARACTERISTIC in the form "13 13 | 12 12 1 1 | 26". */
+    static String format(int[][] characteristic) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < characteristic.length; k++) {
+            if (k > 0) {
+                result.append(" |");
+            }
+            for (int i = 0; i < characteristic[k].length; i++) {
+                result.append(k > 0 || i > 0 ? " " : "")
+                    .append(characteristic[k][i]);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a hash of the rotors ROTORS, in order: their kinds,
+     *  names, wirings and notches, so that an order whose rotors change
+     *  is recomputed. */
+    static long fingerprint(Rotor[] rotors) {
+        long h = 0xcbf29ce484222325L;
+        for (Rotor rotor : rotors) {
+            h = (h ^ (rotor.reflecting() ? 'R'
+                      : rotor.rotates() ? 'M' : 'N')) * 0x100000001b3L;
+            for (int i = 0; i < rotor.name().length(); i++) {
+                h = (h ^ rotor.name().charAt(i)) * 0x100000001b3L;
+            }
+            for (int i = 0; i < rotor.size(); i++) {
+                h = (h ^ rotor.permutation().permute(i)) * 0x100000001b3L;
+                h = (h ^ (rotor.atNotch(i) ? 1 : 0)) * 0x100000001b3L;
+            }
+            h = (h ^ 0xff) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Return the rotors of CATALOG named ORDER. */
+    private static Rotor[] rotors(RotorCatalog catalog, String[] order) {
+        Rotor[] rotors = new Rotor[order.length];
+        for (int i = 0; i < rotors.length; i++) {
+            int index = catalog.indexOf(order[i]);
+            if (index == RotorCatalog.NOT_PRESENT) {
+                throw error("Rotor %s is not in the configuration!",
+                            order[i]);
+            }
+            rotors[i] = catalog.rotors().get(index);
+        }
+        return rotors;
+    }
+
+    /** Return the number of start positions of each order of CATALOG. */
+    static int positions(RotorCatalog catalog) {
+        long result = 1;
+        for (int i = 1; i < catalog.numRotors(); i++) {
+            result *= catalog.alphabet().size();
+            if (result > SEGMENT_BYTES / ENTRY_BYTES) {
+                throw error("too many start positions to index");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Computes characteristics for one rotor order, into buffers
+     *  allocated once. */
+    static class Tracer {
+
+        /** A tracer of the rotors ROTORS. */
+        Tracer(Rotor[] rotors) {
+            _rotors = rotors;
+            _size = rotors[0].size();
+            _settings = new int[rotors.length];
+            _scramblers = new int[INDICATOR][_size];
+            _product = new int[_size];
+            _seen = new boolean[_size];
+            _lengths = new int[PRODUCTS][_size];
+            _counts = new int[PRODUCTS];
+        }
+
+        /** Return the signature of start position POSITION. */
+        int signature(long position) {
+            trace(position);
+            return CycleIndex.signature(_lengths, _counts);
+        }
+
+        /** Return the characteristic of start position POSITION. */
+        int[][] characteristic(long position) {
+            trace(position);
+            int[][] result = new int[PRODUCTS][];
+            for (int k = 0; k < PRODUCTS; k++) {
+                result[k] = Arrays.copyOf(_lengths[k], _counts[k]);
+            }
+            return result;
+        }
+
+        /** Compute the cycle lengths of the products at start position
+         *  POSITION into _lengths and _counts. */
+        private void trace(long position) {
+            int n = _rotors.length;
+            for (int i = n - 1; i > 0; i--) {
+                _settings[i] = (int) (position % _size);
+                position /= _size;
+            }
+            _settings[0] = 0;
+            for (int j = 0; j < INDICATOR; j++) {
+                Machine.step(_rotors, _settings, _size);
+                int[] scrambler = _scramblers[j];
+                for (int c = 0; c < _size; c++) {
+                    int e = c;
+                    for (int i = n - 1; i >= 0; i--) {
+                        e = _rotors[i].convertForward(e, _settings[i]);
+                    }
+                    for (int i = 1; i < n; i++) {
+                        e = _rotors[i].convertBackward(e, _settings[i]);
+                    }
+                    scrambler[c] = e;
+                }
+            }
+            for (int k = 0; k < PRODUCTS; k++) {
+                int[] first = _scramblers[k];
+                int[] second = _scramblers[k + PRODUCTS];
+                for (int c = 0; c < _size; c++) {
+                    _product[c] = second[first[c]];
+                }
+                _counts[k] = cycles(_product, _seen, _lengths[k]);
+            }
+        }
+
+        /** My rotor order. */
+        private final Rotor[] _rotors;
+        /** Size of my alphabet. */
+        private final int _size;
+        /** Settings of my rotors as they are stepped. */
+        private final int[] _settings;
+        /** The substitution of the rotors at each indicator character. */
+        private final int[][] _scramblers;
+        /** One of the products. */
+        private final int[] _product;
+        /** Scratch for cycles. */
+        private final boolean[] _seen;
+        /** Cycle lengths of each product, longest first. */
+        private final int[][] _lengths;
+        /** Number of cycles of each product. */
+        private final int[] _counts;
+    }
+
+    /** The outcome of build. */
+    static class Build {
+        /** A build that computed COMPUTED orders, copied REUSED, and
+         *  wrote ENTRIES entries. */
+        Build(int computed, int reused, long entries) {
+            _computed = computed;
+            _reused = reused;
+            _entries = entries;
+        }
+
+        /** Return the number of orders computed. */
+        int computed() {
+            return _computed;
+        }
+
+        /** Return the number of orders copied from the old index. */
+        int reused() {
+            return _reused;
+        }
+
+        /** Return the number of entries written. */
+        long entries() {
+            return _entries;
+        }
+
+        /** Number of orders computed. */
+        private final int _computed;
+        /** Number of orders copied. */
+        private final int _reused;
+        /** Number of entries. */
+        private final long _entries;
+    }
+
+    /** Write to the file NAME an index of every rotor order and start
+     *  position of CATALOG, computing with the workers of POOL those not
+     *  already in the index NAME, if there is one. */
+    static Build build(RotorCatalog catalog, String name,
+                       ForkJoinPool pool) {
+        return build(catalog, name, pool, BATCH_ENTRIES);
+    }
+
+    /** As for build(CATALOG, NAME, POOL), computing at most BATCH
+     *  signatures (or one order) at a time. */
+    static Build build(RotorCatalog catalog, String name,
+                       ForkJoinPool pool, int batch) {
+        List<String[]> orders = Bombe.orders(catalog);
+        int positions = positions(catalog);
+        long[] fingerprints = new long[orders.size()];
+        for (int k = 0; k < fingerprints.length; k++) {
+            fingerprints[k] = fingerprint(rotors(catalog, orders.get(k)));
+        }
+        CycleIndex old = null;
+        HashMap<Long, Integer> oldOrders = new HashMap<>();
+        if (new File(name).exists()) {
+            old = open(name);
+            if (old._alphabet.equals(catalog.alphabet().chars())
+                && old._positions == positions) {
+                for (int j = 0; j < old._fingerprints.length; j++) {
+                    oldOrders.put(old._fingerprints[j], j);
+                }
+            }
+        }
+        int perBatch = Math.max(1, batch / positions);
+        int[] signatures =
+            new int[Math.min(perBatch, orders.size()) * positions];
+        long[] keys = new long[positions];
+        ByteBuffer chunk = ByteBuffer.allocateDirect(ENTRY_BYTES << 12);
+        int computed = 0;
+        Path temp = Path.of(name + ".tmp");
+        try (FileChannel file =
+             FileChannel.open(temp, StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE)) {
+            writeFully(file, header(catalog.alphabet().chars(), positions,
+                                    orders, fingerprints));
+            for (int first = 0; first < orders.size();
+                 first += perBatch) {
+                int last = Math.min(first + perBatch, orders.size());
+                List<RecursiveAction> tasks = new ArrayList<>();
+                for (int k = first; k < last; k++) {
+                    if (!oldOrders.containsKey(fingerprints[k])) {
+                        tasks.add(new Task(rotors(catalog, orders.get(k)),
+                                           signatures,
+                                           (k - first) * positions, 0,
+                                           positions));
+                    }
+                }
+                computed += tasks.size();
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+                for (int k = first; k < last; k++) {
+                    Integer j = oldOrders.get(fingerprints[k]);
+                    if (j != null) {
+                        writeFully(file, old.section(j));
+                        continue;
+                    }
+                    int base = (k - first) * positions;
+                    for (int p = 0; p < positions; p++) {
+                        keys[p] = (long) signatures[base + p] << 32 | p;
+                    }
+                    Arrays.parallelSort(keys);
+                    for (long key : keys) {
+                        chunk.putInt((int) (key >>> 32)).putInt((int) key);
+                        if (!chunk.hasRemaining()) {
+                            chunk.flip();
+                            writeFully(file, chunk);
+                            chunk.clear();
+                        }
+                    }
+                    chunk.flip();
+                    writeFully(file, chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+        try {
+            Files.move(temp, Path.of(name),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+        return new Build(computed, orders.size() - computed,
+                         (long) orders.size() * positions);
+    }
+
+    /** Return the header of an index of POSITIONS start positions of
+     *  each rotor order of ORDERS, with fingerprints FINGERPRINTS, on the
+     *  alphabet CHARS. */
+    private static ByteBuffer header(String chars, int positions,
+                                     List<String[]> orders,
+                                     long[] fingerprints) {
+        int bytes = 5 * Integer.BYTES + chars.length() * Character.BYTES;
+        for (String[] order : orders) {
+            bytes += Long.BYTES + Integer.BYTES;
+            for (String rotor : order) {
+                bytes += Short.BYTES + rotor.length() * Character.BYTES;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(bytes);
+        header.putInt(MAGIC).putInt(VERSION).putInt(chars.length());
+        for (int i = 0; i < chars.length(); i++) {
+            header.putChar(chars.charAt(i));
+        }
+        header.putInt(positions).putInt(orders.size());
+        for (int k = 0; k < orders.size(); k++) {
+            header.putLong(fingerprints[k]).putInt(orders.get(k).length);
+            for (String rotor : orders.get(k)) {
+                header.putShort((short) rotor.length());
+                for (int i = 0; i < rotor.length(); i++) {
+                    header.putChar(rotor.charAt(i));
+                }
+            }
+        }
+        return header.flip();
+    }
+
+    /** The computation of the signatures of a range of start positions of
+     *  one order. */
+    private static class Task extends RecursiveAction {
+
+        /** A task storing in SIGNATURES[BASE + P] the signature of start
+         *  position P of ROTORS for P in FROM .. TO-1. */
+        Task(Rotor[] rotors, int[] signatures, int base, int from,
+             int to) {
+            _rotors = rotors;
+            _signatures = signatures;
+            _base = base;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > TASK_POSITIONS) {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new Task(_rotors, _signatures, _base, _from, mid),
+                          new Task(_rotors, _signatures, _base, mid, _to));
+                return;
+            }
+            Tracer tracer = new Tracer(_rotors);
+            for (int p = _from; p < _to; p++) {
+                _signatures[_base + p] = tracer.signature(p);
+            }
+        }
+
+        /** The rotor order. */
+        private final Rotor[] _rotors;
+        /** Where signatures are stored. */
+        private final int[] _signatures;
+        /** Index in _signatures of start position 0. */
+        private final int _base;
+        /** First start position. */
+        private final int _from;
+        /** Start position just past my range. */
+        private final int _to;
+    }
+
+    /** Write all of DATA to FILE. */
+    private static void writeFully(FileChannel file, ByteBuffer data)
+        throws IOException {
+        while (data.hasRemaining()) {
+            file.write(data);
+        }
+    }
+
+    /** Return the index in the file NAME. */
+    static CycleIndex open(String name) {
+        return open(name, SEGMENT_BYTES);
+    }
+
+    /** Return the index in the file NAME, mapped in segments of at most
+     *  SEGMENT bytes (or one order). */
+    static CycleIndex open(String name, int segment) {
+        try (FileChannel file = FileChannel.open(Path.of(name))) {
+            return new CycleIndex(file, segment);
+        } catch (EOFException excp) {
+            throw error("bad index %s: header is truncated", name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        } catch (EnigmaException excp) {
+            throw error("bad index %s: %s", name, excp.getMessage());
+        } catch (RuntimeException excp) {
+            throw error("bad index %s", name);
+        }
+    }
+
+    /** The index whose contents are those of FILE, mapped in segments of
+     *  at most SEGMENT bytes (or one order). */
+    private CycleIndex(FileChannel file, int segment) throws IOException {
+        DataInputStream header = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(file)));
+        if (header.readInt() != MAGIC) {
+            throw error("not an index");
+        }
+        if (header.readInt() != VERSION) {
+            throw error("unsupported version");
+        }
+        long start = 5 * Integer.BYTES;
+        char[] chars = new char[header.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = header.readChar();
+        }
+        start += chars.length * Character.BYTES;
+        _alphabet = new String(chars);
+        _positions = header.readInt();
+        if (_positions < 1 || _positions > SEGMENT_BYTES / ENTRY_BYTES) {
+            throw error("bad number of start positions");
+        }
+        int orders = header.readInt();
+        _fingerprints = new long[orders];
+        _orders = new String[orders][];
+        for (int k = 0; k < orders; k++) {
+            _fingerprints[k] = header.readLong();
+            _orders[k] = new String[header.readInt()];
+            start += Long.BYTES + Integer.BYTES;
+            for (int i = 0; i < _orders[k].length; i++) {
+                char[] rotor = new char[header.readShort()];
+                for (int j = 0; j < rotor.length; j++) {
+                    rotor[j] = header.readChar();
+                }
+                _orders[k][i] = new String(rotor);
+                start += Short.BYTES + rotor.length * Character.BYTES;
+            }
+        }
+        _sectionBytes = _positions * ENTRY_BYTES;
+        _sectionsPerSegment = Math.max(1, segment / _sectionBytes);
+        if (file.size() - start != (long) orders * _sectionBytes) {
+            throw error("entries have the wrong length");
+        }
+        _segments = new ByteBuffer[(orders + _sectionsPerSegment - 1)
+                                   / _sectionsPerSegment];
+        for (int s = 0; s < _segments.length; s++) {
+            int sections = Math.min(_sectionsPerSegment,
+                                    orders - s * _sectionsPerSegment);
+            _segments[s] =
+                file.map(FileChannel.MapMode.READ_ONLY,
+                         start + (long) s * _sectionsPerSegment
+                         * _sectionBytes,
+                         (long) sections * _sectionBytes);
+        }
+    }
+
+    /** Return the number of entries. */
+    long entries() {
+        return (long) _orders.length * _positions;
+    }
+
+    /** Return the rotor orders I index. */
+    List<String[]> orders() {
+        return Arrays.asList(_orders);
+    }
+
+    /** Return the entries of order K, as a buffer of its own. */
+    private ByteBuffer section(int k) {
+        int at = (k % _sectionsPerSegment) * _sectionBytes;
+        return _segments[k / _sectionsPerSegment].duplicate()
+            .position(at).limit(at + _sectionBytes);
+    }
+
+    /** Return the orders and start positions with signature SIGNATURE,
+     *  by order and position. */
+    List<Hit> lookup(int signature) {
+        List<Hit> result = new ArrayList<>();
+        for (int k = 0; k < _orders.length; k++) {
+            ByteBuffer segment = _segments[k / _sectionsPerSegment];
+            int base = (k % _sectionsPerSegment) * _sectionBytes;
+            int lo = 0, hi = _positions;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (segment.getInt(base + mid * ENTRY_BYTES) < signature) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int e = lo; e < _positions; e++) {
+                int at = base + e * ENTRY_BYTES;
+                if (segment.getInt(at) != signature) {
+                    break;
+                }
+                int position = segment.getInt(at + Integer.BYTES);
+                result.add(new Hit(_orders[k], position,
+                                   setting(position)));
+            }
+        }
+        return result;
+    }
+
+    /** Return the orders and start positions of the rotors of CATALOG
+     *  whose characteristic is CHARACTERISTIC, checking each against
+     *  CATALOG so that signatures that merely collide are dropped. */
+    List<Hit> lookup(RotorCatalog catalog, int[][] characteristic) {
+        if (!_alphabet.equals(catalog.alphabet().chars())) {
+            throw error("index has a different alphabet");
+        }
+        List<Hit> result = new ArrayList<>();
+        for (Hit hit : lookup(signature(characteristic))) {
+            Tracer tracer = new Tracer(rotors(catalog, hit.rotors()));
+            if (Arrays.deepEquals(tracer.characteristic(hit._position),
+                                  characteristic)) {
+                result.add(hit);
+            }
+        }
+        return result;
+    }
+
+    /** Return the rotor setting of start position POSITION. */
+    private String setting(int position) {
+        int size = _alphabet.length();
+        char[] result = new char[_orders[0].length - 1];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = _alphabet.charAt(position % size);
+            position /= size;
+        }
+        return new String(result);
+    }
+
+    /** A rotor order and start position found by lookup. */
+    static class Hit {
+        /** The start position numbered POSITION, or SETTING, of the
+         *  rotors named ROTORS. */
+        Hit(String[] rotors, int position, String setting) {
+            _rotors = rotors;
+            _position = position;
+            _setting = setting;
+        }
+
+        /** Return the names of my rotors. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return my rotor setting (less the ring settings). */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return a settings line for my order and start position. */
+        String settingsLine() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** Number of my start position. */
+        private final int _position;
+        /** My rotor setting. */
+        private final String _setting;
+    }
+
+    /** Characters of the alphabet. */
+    private final String _alphabet;
+    /** Fingerprint of each order. */
+    private final long[] _fingerprints;
+    /** Rotor names of each order. */
+    private final String[][] _orders;
+    /** Number of start positions of each order. */
+    private final int _positions;
+    /** Bytes of the entries of one order. */
+    private final int _sectionBytes;
+    /** Number of orders whose entries are in each of _segments. */
+    private final int _sectionsPerSegment;
+    /** The entries of the file, mapped into memory in pieces of whole
+     *  orders. */
+    private final ByteBuffer[] _segments;
+}
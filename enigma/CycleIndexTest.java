@@ -0,0 +1,238 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleIndex class.
+ *  @author Pranav Bhimani
+ */
+public class CycleIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 3-rotor, 2-pawl catalog of the naval rotors named
+     *  NAMES. */
+    private static RotorCatalog catalog(String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : navalRotors()) {
+            if (Arrays.asList(names).contains(rotor.name())) {
+                rotors.add(rotor);
+            }
+        }
+        return new RotorCatalog(UPPER, 3, 2, rotors);
+    }
+
+    /** Return a tracer of the rotors of CATALOG named ORDER. */
+    private static CycleIndex.Tracer tracer(RotorCatalog catalog,
+                                            String... order) {
+        Rotor[] rotors = new Rotor[order.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i] = catalog.rotors().get(catalog.indexOf(order[i]));
+        }
+        return new CycleIndex.Tracer(rotors);
+    }
+
+    /** Return the name of a new temporary file that does not exist. */
+    private static String indexFile() throws IOException {
+        File file = File.createTempFile("cycles", ".idx");
+        file.deleteOnExit();
+        file.delete();
+        return file.getPath();
+    }
+
+    /** Return the indicators of the message keys "AAA" to "ZZZ", each
+     *  enciphered twice with rotors ORDER of CATALOG at SETTING and
+     *  plugboard CYCLES. */
+    private static List<String> indicators(RotorCatalog catalog,
+                                           String[] order, String setting,
+                                           String cycles) {
+        List<String> result = new ArrayList<>();
+        for (int c = 0; c < 26; c += 1) {
+            Machine m = new Machine(catalog);
+            m.insertRotors(order);
+            m.setRotors(setting);
+            m.setPlugboard(new Permutation(cycles, UPPER));
+            String key = String.valueOf(UPPER.toChar(c)).repeat(3);
+            result.add(m.convert(key + key));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkFindsPosition() throws IOException {
+        RotorCatalog catalog = catalog("B", "I", "II", "III");
+        String name = indexFile();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CycleIndex.Build build = CycleIndex.build(catalog, name, pool);
+        pool.shutdown();
+        assertEquals(6, build.computed());
+        assertEquals(0, build.reused());
+        assertEquals(6 * 26 * 26, build.entries());
+        CycleIndex index = CycleIndex.open(name);
+        assertEquals(6 * 26 * 26, index.entries());
+        assertEquals(6, index.orders().size());
+
+        String[] order = { "B", "II", "I" };
+        int[][] characteristic =
+            CycleIndex.characteristic(indicators(catalog, order, "QX",
+                                                 "(AZ) (QW) (EX) (RT)"),
+                                      UPPER);
+        for (int[] lengths : characteristic) {
+            assertEquals(26, Arrays.stream(lengths).sum());
+        }
+        int position = UPPER.toInt('Q') * 26 + UPPER.toInt('X');
+        CycleIndex.Tracer tracer = tracer(catalog, order);
+        assertTrue(Arrays.deepEquals(characteristic,
+                                     tracer.characteristic(position)));
+        assertEquals(CycleIndex.signature(characteristic),
+                     tracer.signature(position));
+
+        List<CycleIndex.Hit> hits = index.lookup(catalog, characteristic);
+        boolean found = false;
+        for (CycleIndex.Hit hit : hits) {
+            String setting = hit.setting();
+            assertTrue(Arrays.deepEquals(characteristic,
+                                         tracer(catalog, hit.rotors())
+                                         .characteristic(
+                                             UPPER.toInt(setting.charAt(0))
+                                             * 26 + UPPER.toInt(
+                                                 setting.charAt(1)))));
+            if (hit.settingsLine().equals("* B II I QX")) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertTrue(hits.size() <= index.lookup(
+                       CycleIndex.signature(characteristic)).size());
+    }
+
+    @Test
+    public void checkIncremental() throws IOException {
+        String name = indexFile();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        CycleIndex.build(catalog("B", "I", "II", "III"), name, pool);
+        RotorCatalog larger = catalog("B", "I", "II", "III", "IV");
+        CycleIndex.Build build = CycleIndex.build(larger, name, pool);
+        assertEquals(6, build.reused());
+        assertEquals(6, build.computed());
+        String other = indexFile();
+        CycleIndex.build(larger, other, pool);
+        assertTrue(Arrays.equals(Files.readAllBytes(new File(name).toPath()),
+                                 Files.readAllBytes(new File(other)
+                                                    .toPath())));
+
+        build = CycleIndex.build(catalog("C", "I", "II", "III", "IV"), name,
+                                 pool);
+        assertEquals(0, build.reused());
+        assertEquals(12, build.computed());
+        build = CycleIndex.build(catalog("C", "I", "II"), name, pool);
+        assertEquals(2, build.reused());
+        assertEquals(0, build.computed());
+        assertEquals(2, CycleIndex.open(name).orders().size());
+        pool.shutdown();
+    }
+
+    @Test
+    public void checkBatchesAndSegments() throws IOException {
+        RotorCatalog catalog = catalog("B", "C", "I", "II", "III", "IV");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        String whole = indexFile();
+        CycleIndex.build(catalog, whole, pool);
+        String batched = indexFile();
+        CycleIndex.Build build =
+            CycleIndex.build(catalog, batched, pool, 5 * 26 * 26);
+        pool.shutdown();
+        assertEquals(24, build.computed());
+        assertTrue(Arrays.equals(Files.readAllBytes(new File(whole)
+                                                    .toPath()),
+                                 Files.readAllBytes(new File(batched)
+                                                    .toPath())));
+        CycleIndex index = CycleIndex.open(whole);
+        CycleIndex segmented = CycleIndex.open(whole, 7 * 26 * 26
+                                                   * CycleIndex.ENTRY_BYTES);
+        CycleIndex.Tracer tracer = tracer(catalog, "C", "IV", "II");
+        for (int p = 0; p < 26 * 26; p += 25) {
+            List<CycleIndex.Hit> hits = index.lookup(tracer.signature(p));
+            List<CycleIndex.Hit> others =
+                segmented.lookup(tracer.signature(p));
+            assertEquals(hits.size(), others.size());
+            for (int i = 0; i < hits.size(); i += 1) {
+                assertEquals(hits.get(i).settingsLine(),
+                             others.get(i).settingsLine());
+            }
+        }
+    }
+
+    @Test
+    public void checkSignatureCreatesNothing() {
+        RotorCatalog catalog = catalog("B", "I", "II", "III");
+        CycleIndex.Tracer tracer = tracer(catalog, "B", "III", "I");
+        int[] position = new int[1];
+        assertEquals(0, allocatedPerRun(2000, () -> {
+            tracer.signature(position[0]);
+            position[0] = (position[0] + 1) % 676;
+        }));
+    }
+
+    @Test
+    public void checkBadIndicators() {
+        try {
+            CycleIndex.characteristic(List.of("ABCDEF"), UPPER);
+            fail("characteristic of too few indicators");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("do not determine"));
+        }
+        try {
+            CycleIndex.characteristic(List.of("ABCDEF", "AXYZUV"), UPPER);
+            fail("characteristic of inconsistent indicators");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("inconsistent"));
+        }
+    }
+
+    @Test
+    public void checkBadFiles() throws IOException {
+        String name = indexFile();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        CycleIndex.build(catalog("B", "I", "II"), name, pool);
+        pool.shutdown();
+        byte[] bytes = Files.readAllBytes(new File(name).toPath());
+        Files.write(new File(name).toPath(),
+                    Arrays.copyOf(bytes, bytes.length - 4));
+        try {
+            CycleIndex.open(name);
+            fail("opened a truncated index");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("wrong length"));
+        }
+        bytes[0] ^= 1;
+        Files.write(new File(name).toPath(), bytes);
+        try {
+            CycleIndex.open(name);
+            fail("opened a file that is not an index");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not an index"));
+        }
+    }
+}
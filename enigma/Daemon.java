@@ -0,0 +1,413 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.lang.reflect.Method;
+
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jdk.net.ExtendedSocketOptions;
+
+import static enigma.EnigmaException.*;
+
+/** A resident Enigma simulator, which saves a client (see Client) the
+ *  cost of starting a JVM and of reading a configuration for each run.
+ *  Run as
+ *
+ *      java enigma.Daemon [ADDRESS]
+ *
+ *  where ADDRESS is the path of a Unix-domain socket, by default that
+ *  given by DEFAULT_ADDRESS.
+ *  Each request carries the arguments of one run of Main, which are
+ *  handled as Main would (including --compile), except that
+ *  configurations are kept, keyed by path and modification time, and
+ *  reused while their files do not change.
+ *
+ *  A daemon opens, creates and truncates the files its clients name
+ *  with the permissions of the user running it, so only that user may
+ *  use it: its socket file is readable and writable by its owner alone,
+ *  and it refuses a connection from any other user (where the platform
+ *  reports the peer of a socket, see ExtendedSocketOptions.SO_PEERCRED;
+ *  elsewhere, the socket file's permissions alone keep others out).
+ *
+ *  Protocol: a client sends an int argument count, its working
+ *  directory and each argument (as writeUTF strings), followed, if it
+ *  gives no input file, by the input itself up to the end of its
+ *  output stream.  The daemon replies with any number of output frames
+ *  ('o', an int length, and that many bytes), and then an exit frame
+ *  ('x', an int exit code, a writeUTF error message, and a boolean
+ *  that is true if the error is an EnigmaException).
+ *  @author Pranav Bhimani
+ */
+public class Daemon {
+
+    /** Tag of an output frame. */
+    static final byte OUTPUT_FRAME = 'o';
+
+    /** Tag of an exit frame. */
+    static final byte EXIT_FRAME = 'x';
+
+    /** System property giving the address used by Daemon and Client if
+     *  none is given. */
+    static final String ADDRESS_PROPERTY = "enigma.daemon";
+
+    /** Default address: a socket in the temporary directory. */
+    static final String DEFAULT_ADDRESS =
+        Path.of(System.getProperty("java.io.tmpdir"),
+                "enigma-" + System.getProperty("user.name") + ".sock")
+        .toString();
+
+    /** Serve requests on the address given by ARGS[0], if present. */
+    public static void main(String... args) throws IOException {
+        String spec = args.length > 0 ? args[0] : defaultAddress();
+        Daemon daemon = new Daemon(address(spec));
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        daemon.serve();
+    }
+
+    /** Return the address to use when none is given. */
+    static String defaultAddress() {
+        return System.getProperty(ADDRESS_PROPERTY, DEFAULT_ADDRESS);
+    }
+
+    /** Return the socket address described by SPEC, the path of a
+     *  Unix-domain socket. */
+    static UnixDomainSocketAddress address(String spec) {
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return a channel connected to a daemon at ADDRESS. */
+    static SocketChannel connect(SocketAddress address) throws IOException {
+        return SocketChannel.open(address);
+    }
+
+    /** A daemon listening at ADDRESS, replacing any stale socket file
+     *  there, and accepting requests only from the user running it. */
+    Daemon(UnixDomainSocketAddress address) throws IOException {
+        _address = address;
+        Path path = address.getPath();
+        Files.deleteIfExists(path);
+        _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            _server.bind(address);
+            try {
+                Files.setPosixFilePermissions(
+                    path, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException excp) {
+                /* Not a POSIX file system: it keeps its own permissions. */
+            }
+            _owner = Files.getOwner(path);
+        } catch (IOException excp) {
+            _server.close();
+            throw excp;
+        }
+        _requests = requestExecutor();
+    }
+
+    /** Return an executor that runs each request on a new virtual
+     *  thread, or, where virtual threads are not available, on a pooled
+     *  daemon thread. */
+    static ExecutorService requestExecutor() {
+        try {
+            Method virtual =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Accept and handle requests until I am closed. */
+    void serve() {
+        while (_server.isOpen()) {
+            try {
+                SocketChannel client = _server.accept();
+                _requests.execute(() -> handle(client));
+            } catch (IOException excp) {
+                if (_server.isOpen()) {
+                    System.err.printf("Error: %s%n", excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Stop accepting requests. */
+    void close() {
+        try {
+            _server.close();
+            Files.deleteIfExists(_address.getPath());
+        } catch (IOException excp) {
+            /* Ignore: we are going away. */
+        }
+        _requests.shutdown();
+    }
+
+    /** Handle the request arriving on CLIENT. */
+    private void handle(SocketChannel client) {
+        try (client) {
+            if (!fromOwner(client)) {
+                System.err.printf("Error: refused a request from another "
+                                  + "user%n");
+                return;
+            }
+            DataInputStream in = new DataInputStream(inputStream(client));
+            String[] args = new String[in.readInt()];
+            String dir = in.readUTF();
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            int code = 0;
+            String message = "";
+            boolean enigmaError = false;
+            try {
+                run(Path.of(dir), args, in, new FrameChannel(client));
+            } catch (EnigmaException excp) {
+                code = 1;
+                message = String.valueOf(excp.getMessage());
+                enigmaError = true;
+            } catch (RuntimeException excp) {
+                code = 1;
+                message = excp.toString();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream exit = new DataOutputStream(bytes);
+            exit.writeByte(EXIT_FRAME);
+            exit.writeInt(code);
+            exit.writeUTF(message);
+            exit.writeBoolean(enigmaError);
+            writeFully(client, ByteBuffer.wrap(bytes.toByteArray()));
+            client.shutdownOutput();
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            /* The client has gone away. */
+        }
+    }
+
+    /** Return true iff CLIENT is run by the owner of my socket file, or
+     *  if the platform cannot tell. */
+    private boolean fromOwner(SocketChannel client) throws IOException {
+        try {
+            return client.getOption(ExtendedSocketOptions.SO_PEERCRED)
+                .user().equals(_owner);
+        } catch (UnsupportedOperationException excp) {
+            return true;
+        }
+    }
+
+    /** Do what Main would with arguments ARGS in directory DIR, taking
+     *  messages from IN if ARGS names no input file and writing output
+     *  to OUT if ARGS names no output file. */
+    private void run(Path dir, String[] args, InputStream in,
+                     WritableByteChannel out) {
+        if (Main.isCompile(args)) {
+            ConfigFile.compile(catalog(readable(dir, args[1]), args[1]),
+                               dir.resolve(args[2]).toString());
+            return;
+        }
+        if (args.length < 1 || args.length > 3) {
+            throw error("Only 1, 2, or 3 command-line arguments allowed");
+        }
+        Path config = readable(dir, args[0]);
+        MessageReader input = args.length > 1
+            ? open(dir, args[1]) : new MessageReader(in);
+        GroupWriter output = null;
+        try {
+            output = args.length > 2
+                ? create(dir, args[2]) : new GroupWriter(out);
+            new Main(catalog(config, args[0]), input, output).process();
+        } finally {
+            input.close();
+            if (output != null && args.length > 2) {
+                output.close();
+            }
+        }
+    }
+
+    /** Return the path of the file NAME in DIR, reporting an error if
+     *  it cannot be read. */
+    private static Path readable(Path dir, String name) {
+        Path path = dir.resolve(name);
+        if (!Files.isReadable(path)) {
+            throw error("could not open %s", name);
+        }
+        return path;
+    }
+
+    /** Return a reader of the file NAME in DIR. */
+    private static MessageReader open(Path dir, String name) {
+        try {
+            return MessageReader.open(dir.resolve(name).toString());
+        } catch (EnigmaException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a writer to the file NAME in DIR. */
+    private static GroupWriter create(Path dir, String name) {
+        try {
+            return GroupWriter.open(dir.resolve(name).toString());
+        } catch (EnigmaException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the rotors described by the configuration file at PATH,
+     *  named NAME by the client, reading it only if it has changed since
+     *  it was last read. */
+    RotorCatalog catalog(Path path, String name) {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        String key = path.toAbsolutePath().normalize().toString();
+        CachedConfig cached = _configs.get(key);
+        if (cached == null || cached._modified != modified) {
+            cached = new CachedConfig(modified,
+                                      Main.readCatalog(path.toString()));
+            _configs.put(key, cached);
+            _configReads.incrementAndGet();
+        }
+        return cached._catalog;
+    }
+
+    /** Return the number of times a configuration has been read. */
+    int configReads() {
+        return _configReads.get();
+    }
+
+    /** A configuration that has been read. */
+    private static class CachedConfig {
+        /** A configuration read as CATALOG from a file last modified at
+         *  MODIFIED. */
+        CachedConfig(long modified, RotorCatalog catalog) {
+            _modified = modified;
+            _catalog = catalog;
+        }
+
+        /** Modification time of the file when it was read. */
+        private final long _modified;
+        /** The rotors it describes. */
+        private final RotorCatalog _catalog;
+    }
+
+    /** A channel that sends what is written to it to a client as output
+     *  frames. */
+    private static class FrameChannel implements WritableByteChannel {
+
+        /** A channel writing frames to CLIENT. */
+        FrameChannel(ByteChannel client) {
+            _client = client;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int len = src.remaining();
+            ByteBuffer header = ByteBuffer.allocate(5);
+            header.put(OUTPUT_FRAME).putInt(len).flip();
+            writeFully(_client, header);
+            writeFully(_client, src);
+            return len;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _client.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Where frames go. */
+        private final ByteChannel _client;
+    }
+
+    /** Write all of SRC to CHANNEL. */
+    static void writeFully(WritableByteChannel channel, ByteBuffer src)
+        throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /** Return a stream reading from CHANNEL.  (Unlike the stream from
+     *  Channels.newInputStream, it does not block writes to CHANNEL
+     *  while waiting to read.) */
+    static InputStream inputStream(ByteChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    /** Return a stream writing to CHANNEL.  (Unlike the stream from
+     *  Channels.newOutputStream, it does not block reads from CHANNEL
+     *  while writing.) */
+    static OutputStream outputStream(ByteChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                throws IOException {
+                writeFully(channel, ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    /** Where I listen. */
+    private final UnixDomainSocketAddress _address;
+    /** The user running me, who owns my socket file. */
+    private final UserPrincipal _owner;
+    /** The listening socket. */
+    private final ServerSocketChannel _server;
+    /** Runs requests. */
+    private final ExecutorService _requests;
+    /** Configurations read so far, keyed by their absolute paths. */
+    private final ConcurrentHashMap<String, CachedConfig> _configs =
+        new ConcurrentHashMap<>();
+    /** Number of times a configuration has been read. */
+    private final AtomicInteger _configReads = new AtomicInteger();
+}
@@ -0,0 +1,193 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.net.StandardProtocolFamily;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/** The suite of all JUnit tests for the Daemon and Client classes.
+ *  @author Pranav Bhimani
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file containing TEXT. */
+    private static File tempFile(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+    /** Return the output that Main produces for a configuration in the
+     *  file CONFIG and input INPUT. */
+    private static String expected(File config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Main(Main.readCatalog(config.getPath()),
+                 new MessageReader(new ByteArrayInputStream(input.getBytes())),
+                 new GroupWriter(bytes)).process();
+        return bytes.toString();
+    }
+
+    /** The standard output and standard error of a client run. */
+    private ByteArrayOutputStream _out, _err;
+
+    /** Run a client at ADDRESS with arguments ARGS and standard input
+     *  INPUT, returning its exit code and leaving its output in _out and
+     *  _err. */
+    private int client(String address, String input, String... args)
+        throws IOException {
+        _out = new ByteArrayOutputStream();
+        _err = new ByteArrayOutputStream();
+        return Client.run(address, args,
+                          new ByteArrayInputStream(input.getBytes()), _out,
+                          new PrintStream(_err, true));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRequests() throws IOException {
+        File socket = File.createTempFile("enigma", ".sock");
+        String address = socket.getPath();
+        Daemon daemon = new Daemon(Daemon.address(address));
+        Thread server = new Thread(daemon::serve);
+        server.setDaemon(true);
+        server.start();
+        try {
+            assertEquals(PosixFilePermissions.fromString("rw-------"),
+                         Files.getPosixFilePermissions(socket.toPath()));
+            File config = tempFile(Benchmark.NAVAL_CONFIG);
+            String input = "* B Beta III IV I AXLE BCFG (YF) (ZH)\n"
+                + "HYIHL BKOML IUYDC MPPSF SZW\n\n"
+                + "* C Gamma VI VII VIII QDZL (AZ)\nTHEQUICKBROWNFOX\n";
+            String expected = expected(config, input);
+
+            assertEquals(0, client(address, input, config.getPath()));
+            assertEquals(expected, _out.toString());
+            assertEquals("", _err.toString());
+
+            File in = tempFile(input);
+            File out = new File(in.getPath() + ".out");
+            out.deleteOnExit();
+            assertEquals(0, client(address, "", config.getPath(),
+                                   in.getPath(), out.getPath()));
+            assertEquals(expected, Files.readString(out.toPath()));
+            assertEquals("", _out.toString());
+            assertEquals(1, daemon.configReads());
+
+            assertEquals(1, client(address, "* B Beta I II III AAAA\nAb\n",
+                                   config.getPath()));
+            assertEquals(String.format("Error: Input is not in Alphabet!%n"),
+                         _err.toString());
+            assertEquals(1, client(address, "", "nosuchfile.conf"));
+            assertEquals(String.format("Error: could not open "
+                                       + "nosuchfile.conf%n"),
+                         _err.toString());
+            assertEquals(1, client(address, ""));
+
+            assertTrue(config.setLastModified(config.lastModified()
+                                              - 10000));
+            assertEquals(0, client(address, input, config.getPath()));
+            assertEquals(expected, _out.toString());
+            assertEquals(2, daemon.configReads());
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void checkCompile() throws IOException {
+        File socket = File.createTempFile("enigma", ".sock");
+        String address = socket.getPath();
+        Daemon daemon = new Daemon(Daemon.address(address));
+        Thread server = new Thread(daemon::serve);
+        server.setDaemon(true);
+        server.start();
+        try {
+            File config = tempFile(Benchmark.NAVAL_CONFIG);
+            File compiled = tempFile("");
+            String input = "* B Beta III IV I AXLE BCFG (YF) (ZH)\n"
+                + "HYIHL BKOML IUYDC MPPSF SZW\n";
+            assertEquals(0, client(address, "", Main.COMPILE_OPTION,
+                                   config.getPath(), compiled.getPath()));
+            assertEquals("", _err.toString());
+            assertTrue(ConfigFile.isCompiled(compiled.getPath()));
+            assertEquals(0, client(address, input, compiled.getPath()));
+            assertEquals(expected(config, input), _out.toString());
+
+            assertEquals(1, client(address, "", Main.COMPILE_OPTION,
+                                   config.getPath()));
+            assertTrue(_err.toString().startsWith("Error: Usage:"));
+            assertEquals(1, client(address, "", Main.COMPILE_OPTION,
+                                   "nosuchfile.conf", compiled.getPath()));
+            assertEquals(String.format("Error: could not open "
+                                       + "nosuchfile.conf%n"),
+                         _err.toString());
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void checkNoDaemon() throws IOException {
+        File socket = File.createTempFile("enigma", ".sock");
+        socket.delete();
+        try {
+            client(socket.getPath(), "", "default.conf");
+            fail("ran a request with no daemon");
+        } catch (IOException excp) {
+            assertEquals("", _out.toString());
+        }
+    }
+
+    @Test
+    public void checkLostDaemon() throws IOException {
+        File socket = File.createTempFile("enigma", ".sock");
+        socket.delete();
+        socket.deleteOnExit();
+        try (ServerSocketChannel server =
+             ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(Daemon.address(socket.getPath()));
+            Thread fake = new Thread(() -> {
+                    try (SocketChannel channel = server.accept()) {
+                        Daemon.inputStream(channel).readAllBytes();
+                        ByteBuffer reply = ByteBuffer.allocate(10);
+                        reply.put(Daemon.OUTPUT_FRAME).putInt(10);
+                        reply.put("HELLO".getBytes()).flip();
+                        Daemon.writeFully(channel, reply);
+                    } catch (IOException excp) {
+                        /* The test fails below. */
+                    }
+                });
+            fake.setDaemon(true);
+            fake.start();
+            assertEquals(1, client(socket.getPath(), "", "a.conf", "b.in"));
+            assertEquals("HELLO", _out.toString());
+            assertTrue(_err.toString().startsWith("Error: lost the daemon"));
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package enigma;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A destination for converted messages, which it writes in groups of
+ *  five characters separated by blanks, one message line per output
+ *  line.  Characters may be supplied a few at a time as they are
+ *  converted.  They are gathered in a fixed buffer and encoded into
+ *  another, which is written out only when it fills or on flush, so
+ *  that writing creates no objects.
+ *  @author Pranav Bhimani
+ */
+class GroupWriter {
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** Number of characters gathered before encoding. */
+    static final int CHAR_BUFFER = 1 << 16;
+
+    /** Size of the buffer of encoded bytes. */
+    static final int BYTE_BUFFER = 1 << 18;
+
+    /** A writer to the file named NAME, which is created or emptied. */
+    static GroupWriter open(String name) {
+        try {
+            return new GroupWriter(
+                FileChannel.open(Path.of(name), StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING,
+                                 StandardOpenOption.WRITE));
+        } catch (IOException | RuntimeException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A writer to the standard output. */
+    static GroupWriter standardOutput() {
+        return new GroupWriter(new FileOutputStream(FileDescriptor.out));
+    }
+
+    /** A writer to OUT. */
+    GroupWriter(OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    /** A writer to OUT. */
+    GroupWriter(WritableByteChannel out) {
+        this(out, CHAR_BUFFER, BYTE_BUFFER);
+    }
+
+    /** A writer to OUT that gathers CHARS characters and BYTES encoded
+     *  bytes at a time, for when many writers are open at once. */
+    GroupWriter(WritableByteChannel out, int chars, int bytes) {
+        _out = out;
+        _encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(chars);
+        _bytes = ByteBuffer.allocateDirect(bytes);
+    }
+
+    /** Add C to the current line. */
+    void put(char c) {
+        if (_column > 0 && _column % GROUP == 0) {
+            append(' ');
+        }
+        append(c);
+        _column += 1;
+    }
+
+    /** Add SRC[OFF .. OFF+LEN-1] to the current line. */
+    void put(char[] src, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            if (_column > 0 && _column % GROUP == 0) {
+                append(' ');
+            }
+            int n = Math.min(end - off, GROUP - _column % GROUP);
+            if (_chars.remaining() < n) {
+                encode();
+            }
+            _chars.put(src, off, n);
+            off += n;
+            _column += n;
+        }
+    }
+
+    /** End the current line, if anything has been put on it. */
+    void endLine() {
+        if (_column > 0) {
+            newLine();
+        }
+    }
+
+    /** Write a line terminator, ending the current line. */
+    void newLine() {
+        for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+            append(LINE_SEPARATOR.charAt(i));
+        }
+        _column = 0;
+    }
+
+    /** Add TEXT to the output as it is, without grouping.  It should
+     *  be followed by newLine. */
+    void print(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /** Write BYTES[OFF .. OFF+LEN-1], which are complete lines of output
+     *  already encoded (for example by another GroupWriter), after
+     *  whatever has been written to me so far. */
+    void write(byte[] bytes, int off, int len) {
+        encode();
+        if (_bytes.remaining() < len) {
+            drain();
+        }
+        if (_bytes.remaining() < len) {
+            ByteBuffer whole = ByteBuffer.wrap(bytes, off, len);
+            try {
+                while (whole.hasRemaining()) {
+                    _out.write(whole);
+                }
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        } else {
+            _bytes.put(bytes, off, len);
+        }
+        _column = 0;
+    }
+
+    /** Write out everything written to me so far. */
+    void flush() {
+        encode();
+        drain();
+    }
+
+    /** Write out everything written to me so far, and close my
+     *  destination. */
+    void close() {
+        flush();
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Add C to the output. */
+    private void append(char c) {
+        if (!_chars.hasRemaining()) {
+            encode();
+        }
+        _chars.put(c);
+    }
+
+    /** Encode the characters gathered in _chars, writing out the
+     *  encoded bytes whenever their buffer fills. */
+    private void encode() {
+        _chars.flip();
+        while (true) {
+            CoderResult result = _encoder.encode(_chars, _bytes, false);
+            if (!result.isOverflow()) {
+                break;
+            }
+            drain();
+        }
+        _chars.compact();
+    }
+
+    /** Write out the bytes in _bytes. */
+    private void drain() {
+        _bytes.flip();
+        try {
+            while (_bytes.hasRemaining()) {
+                _out.write(_bytes);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        _bytes.clear();
+    }
+
+    /** Line terminator written at the end of each line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Destination of the output. */
+    private final WritableByteChannel _out;
+    /** Encoder of the output characters. */
+    private final CharsetEncoder _encoder;
+    /** Characters not yet encoded. */
+    private final CharBuffer _chars;
+    /** Encoded bytes not yet written. */
+    private final ByteBuffer _bytes;
+    /** Number of characters put on the current line. */
+    private int _column;
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Pranav Bhimani
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line separator. */
+    private static final String NL = System.lineSeparator();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroups() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes);
+        for (char c : "ABCDEFGHIJ".toCharArray()) {
+            out.put(c);
+        }
+        out.endLine();
+        out.endLine();
+        out.newLine();
+        out.put("ABCDEFGHIJKL".toCharArray(), 0, 3);
+        out.put('Z');
+        out.put("ABCDEFGHIJKL".toCharArray(), 3, 9);
+        out.endLine();
+        out.flush();
+        assertEquals("ABCDE FGHIJ" + NL + NL + "ABCZD EFGHI JKL" + NL,
+                     bytes.toString());
+    }
+
+    @Test
+    public void checkLargeOutput() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(bytes);
+        char[] msg = "ABCDEFG".repeat(100000).toCharArray();
+        out.put(msg, 0, msg.length);
+        out.endLine();
+        out.flush();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < msg.length; i += 5) {
+            if (i > 0) {
+                expected.append(' ');
+            }
+            expected.append(msg, i, Math.min(5, msg.length - i));
+        }
+        assertEquals(expected + NL, bytes.toString());
+    }
+
+}
@@ -0,0 +1,834 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack, run as
+ *
+ *      java enigma.HillClimb [--threads N] [--restarts R] [--pairs P]
+ *                            [--n N] [--seed S] CONFIG CIPHERTEXT CORPUS
+ *
+ *  where CONFIG is a configuration file (text or compiled), CIPHERTEXT a
+ *  file of messages as for Bombe, and CORPUS either a text in the
+ *  language of the plaintext, from which a model of its N-grams (default
+ *  4) is built, or a model file (see NGramModel) written by
+ *
+ *      java enigma.HillClimb --model N CONFIG CORPUS OUTPUT
+ *
+ *  The best key found is printed as a settings line that Main accepts.
+ *
+ *  The attack goes in three stages.  First, every rotor order and start
+ *  position is tried with ring settings 0 and no plugboard, and the R
+ *  (default 16) whose decryptions have the highest index of coincidence
+ *  are kept.  Each of these is then a restart: the ring settings of the
+ *  two rightmost rotors are chosen (adjusting their positions so that
+ *  the first letter is converted the same way) to maximize the index of
+ *  coincidence, and last up to P (default 10) plugboard pairs are found
+ *  by hill-climbing on the N-gram score of the decryption.  Because the
+ *  index of coincidence hardly depends on when the middle rotor steps,
+ *  those ring settings are then tried again one rotor at a time by
+ *  N-gram score, climbing the plugboard again after any change.
+ *  Positions and restarts are searched as ForkJoin tasks.
+ *
+ *  Start positions are tried LANES at a time, in lockstep (see
+ *  KeyBatch).  While the plugboard is climbed, the rotors are fixed, so
+ *  their substitution at each position of the message is tabulated once
+ *  and a decryption is a pair of plugboard lookups around one table
+ *  lookup per character, into buffers reused for the whole restart.
+ *  @author Pranav Bhimani
+ */
+public class HillClimb {
+
+    /** Number of restarts unless another is given. */
+    static final int DEFAULT_RESTARTS = 16;
+
+    /** Largest number of plugboard pairs unless another is given. */
+    static final int DEFAULT_PAIRS = 10;
+
+    /** Length of the n-grams of the model unless another is given. */
+    static final int DEFAULT_N = 4;
+
+    /** Number of start positions whose indices of coincidence are
+     *  computed together (see KeyBatch). */
+    static final int LANES = 16;
+
+    /** First argument asking main to write a model file. */
+    static final String MODEL_OPTION = "--model";
+
+    /** Run the attack described by ARGS (see above). */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals(MODEL_OPTION)) {
+            if (args.length != 5) {
+                usage();
+            }
+            try {
+                Alphabet alphabet = Main.readCatalog(args[2]).alphabet();
+                NGramModel.build(alphabet, Integer.parseInt(args[1]),
+                                 args[3]).save(args[4]);
+            } catch (EnigmaException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int restarts = DEFAULT_RESTARTS, pairs = DEFAULT_PAIRS;
+        int n = DEFAULT_N;
+        long seed = 0;
+        int k;
+        for (k = 0; k + 1 < args.length && args[k].startsWith("--");
+             k += 2) {
+            switch (args[k]) {
+            case "--threads":
+                threads = Integer.parseInt(args[k + 1]);
+                break;
+            case "--restarts":
+                restarts = Integer.parseInt(args[k + 1]);
+                break;
+            case "--pairs":
+                pairs = Integer.parseInt(args[k + 1]);
+                break;
+            case "--n":
+                n = Integer.parseInt(args[k + 1]);
+                break;
+            case "--seed":
+                seed = Long.parseLong(args[k + 1]);
+                break;
+            default:
+                usage();
+            }
+        }
+        if (args.length - k != 3) {
+            usage();
+        }
+        try {
+            RotorCatalog catalog = Main.readCatalog(args[k]);
+            NGramModel model =
+                NGramModel.read(catalog.alphabet(), n, args[k + 2]);
+            HillClimb climb =
+                new HillClimb(catalog, Bombe.readCiphertext(args[k + 1]),
+                              model);
+            climb.setRestarts(restarts);
+            climb.setMaxPairs(pairs);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Result result = climb.run(pool, seed);
+            pool.shutdown();
+            System.out.println(result.best().settingsLine());
+            System.err.printf("%d positions, %d decryptions in %.3f s "
+                              + "(%.0f/s per thread)%n",
+                              result.positions(), result.decryptions(),
+                              result.nanos() / 1e9,
+                              result.rate() / threads);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Report the correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: java enigma.HillClimb [--threads N]"
+                           + " [--restarts R] [--pairs P] [--n N]"
+                           + " [--seed S] CONFIG CIPHERTEXT CORPUS");
+        System.err.printf("       java enigma.HillClimb %s N CONFIG CORPUS"
+                          + " OUTPUT%n", MODEL_OPTION);
+        System.exit(1);
+    }
+
+    /** An attack on CIPHERTEXT, whose blanks are ignored, with machines
+     *  built from CATALOG and decryptions scored by MODEL. */
+    HillClimb(RotorCatalog catalog, String ciphertext, NGramModel model) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        if (!model.alphabet().chars().equals(_alphabet.chars())) {
+            throw error("model and configuration alphabets differ");
+        }
+        _model = model;
+        String cipher = ciphertext.replace(" ", "");
+        if (cipher.length() < 2) {
+            throw error("ciphertext is too short");
+        }
+        _cipher = new int[cipher.length()];
+        for (int i = 0; i < _cipher.length; i++) {
+            char c = cipher.charAt(i);
+            if (!_alphabet.contains(c)) {
+                throw error("character %c is not in the alphabet", c);
+            }
+            _cipher[i] = _alphabet.toInt(c);
+        }
+        _orders = Bombe.orders(catalog);
+    }
+
+    /** Search only the rotor orders ORDERS, each an array of rotor names
+     *  as for Machine.insertRotors. */
+    void setOrders(List<String[]> orders) {
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Make RESTARTS restarts. */
+    void setRestarts(int restarts) {
+        if (restarts < 1) {
+            throw error("there must be at least one restart");
+        }
+        _restarts = restarts;
+    }
+
+    /** Find at most PAIRS plugboard pairs. */
+    void setMaxPairs(int pairs) {
+        _maxPairs = Math.max(0, Math.min(pairs, _size / 2));
+    }
+
+    /** Return the number of start positions of each rotor order. */
+    long positions() {
+        long result = 1;
+        for (int i = 1; i < _catalog.numRotors(); i++) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Return the rotors of ORDER. */
+    Rotor[] rotors(String[] order) {
+        Rotor[] rotors = new Rotor[_catalog.numRotors()];
+        for (int i = 0; i < rotors.length; i++) {
+            int index = _catalog.indexOf(order[i]);
+            if (index == RotorCatalog.NOT_PRESENT) {
+                throw error("Rotor %s is not in the configuration!",
+                            order[i]);
+            }
+            rotors[i] = _catalog.rotors().get(index);
+        }
+        return rotors;
+    }
+
+    /** Return a decryptor of my ciphertext with the rotors of ORDER. */
+    Decryptor decryptor(String[] order) {
+        return new Decryptor(rotors(order));
+    }
+
+    /** Run the attack with the workers of POOL, choosing the order in
+     *  which plugboard pairs are tried with a generator seeded from
+     *  SEED. */
+    Result run(ForkJoinPool pool, long seed) {
+        long start = System.nanoTime();
+        Best best = new Best(_restarts);
+        List<RecursiveAction> tasks = new ArrayList<>();
+        List<Rotor[]> orders = new ArrayList<>();
+        for (int k = 0; k < _orders.size(); k++) {
+            orders.add(rotors(_orders.get(k)));
+            tasks.add(new PositionTask(best, k, _orders.get(k), 0,
+                                       positions()));
+        }
+        invokeAll(pool, tasks);
+        Key[] keys = new Key[best._count];
+        AtomicLong decryptions = new AtomicLong();
+        tasks.clear();
+        for (int r = 0; r < keys.length; r++) {
+            tasks.add(new Restart(keys, r, orders.get(best._orders[r]),
+                                  best._positions[r], seed + r,
+                                  decryptions));
+        }
+        invokeAll(pool, tasks);
+        List<Key> result = new ArrayList<>(Arrays.asList(keys));
+        result.sort((a, b) -> Double.compare(b._score, a._score));
+        return new Result(result, positions() * _orders.size(),
+                          decryptions.get(), System.nanoTime() - start);
+    }
+
+    /** Run TASKS to completion on POOL. */
+    private static void invokeAll(ForkJoinPool pool,
+                                  List<RecursiveAction> tasks) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /** The start positions with the highest indices of coincidence. */
+    private static class Best {
+        /** A list of the best CAPACITY positions. */
+        Best(int capacity) {
+            _scores = new double[capacity];
+            _orders = new int[capacity];
+            _positions = new long[capacity];
+        }
+
+        /** Record that start position POSITION of rotor order number
+         *  ORDER has index of coincidence SCORE. */
+        void offer(double score, int order, long position) {
+            if (_count == _scores.length
+                && score <= _scores[_count - 1]) {
+                return;
+            }
+            int i = Math.min(_count, _scores.length - 1);
+            while (i > 0 && _scores[i - 1] < score) {
+                _scores[i] = _scores[i - 1];
+                _orders[i] = _orders[i - 1];
+                _positions[i] = _positions[i - 1];
+                i -= 1;
+            }
+            _scores[i] = score;
+            _orders[i] = order;
+            _positions[i] = position;
+            _count = Math.min(_count + 1, _scores.length);
+        }
+
+        /** Record all of OTHER's positions. */
+        synchronized void merge(Best other) {
+            for (int i = 0; i < other._count; i++) {
+                offer(other._scores[i], other._orders[i],
+                      other._positions[i]);
+            }
+        }
+
+        /** Scores, highest first. */
+        private final double[] _scores;
+        /** Rotor order number of each position. */
+        private final int[] _orders;
+        /** Number of each position. */
+        private final long[] _positions;
+        /** Number of positions recorded. */
+        private int _count;
+    }
+
+    /** The search of a range of start positions for one rotor order. */
+    private class PositionTask extends RecursiveAction {
+
+        /** A task recording in BEST the best of the start positions
+         *  FROM .. TO-1 of the rotors named NAMES, rotor order number
+         *  ORDER. */
+        PositionTask(Best best, int order, String[] names, long from,
+                     long to) {
+            _best = best;
+            _order = order;
+            _names = names;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > Bombe.TASK_POSITIONS) {
+                long mid = (_from + _to) >>> 1;
+                invokeAll(new PositionTask(_best, _order, _names, _from,
+                                           mid),
+                          new PositionTask(_best, _order, _names, mid,
+                                           _to));
+                return;
+            }
+            KeyBatch batch = new KeyBatch(_catalog, _names, LANES);
+            double[] scores = new double[LANES];
+            Best local = new Best(_best._scores.length);
+            for (long p = _from; p < _to; p += LANES) {
+                int count = (int) Math.min(LANES, _to - p);
+                for (int l = 0; l < LANES; l++) {
+                    batch.setPosition(l, p + Math.min(l, count - 1));
+                }
+                batch.coincidence(_cipher, _cipher.length, scores);
+                for (int l = 0; l < count; l++) {
+                    local.offer(scores[l], _order, p + l);
+                }
+            }
+            _best.merge(local);
+        }
+
+        /** Where the best positions are recorded. */
+        private final Best _best;
+        /** Number of my rotor order. */
+        private final int _order;
+        /** Names of the rotors of my rotor order. */
+        private final String[] _names;
+        /** First start position. */
+        private final long _from;
+        /** Start position just past my range. */
+        private final long _to;
+    }
+
+    /** The ring setting and plugboard search from one start position. */
+    private class Restart extends RecursiveAction {
+
+        /** A restart from start position POSITION of ROTORS that stores
+         *  the key it finds in KEYS[INDEX], tries plugboard pairs in an
+         *  order chosen from SEED, and counts its decryptions in
+         *  DECRYPTIONS. */
+        Restart(Key[] keys, int index, Rotor[] rotors, long position,
+                long seed, AtomicLong decryptions) {
+            _keys = keys;
+            _index = index;
+            _rotors = rotors;
+            _position = position;
+            _seed = seed;
+            _decryptions = decryptions;
+        }
+
+        @Override
+        protected void compute() {
+            Decryptor decryptor = new Decryptor(_rotors);
+            decryptor.start(_position);
+            decryptor.climbRings();
+            decryptor.tabulate();
+            long decryptions = decryptor.climbPlugboard(_seed);
+            while (decryptor.refineRings()) {
+                decryptions += decryptor.climbPlugboard(_seed);
+            }
+            _decryptions.addAndGet(decryptions + decryptor.ringTrials());
+            _keys[_index] = decryptor.key();
+        }
+
+        /** Where my key is stored. */
+        private final Key[] _keys;
+        /** Index of my key in _keys. */
+        private final int _index;
+        /** My rotor order. */
+        private final Rotor[] _rotors;
+        /** My start position. */
+        private final long _position;
+        /** Seed of the order in which I try pairs. */
+        private final long _seed;
+        /** Total number of decryptions scored. */
+        private final AtomicLong _decryptions;
+    }
+
+    /** Decrypts my ciphertext under keys with one rotor order, into
+     *  buffers allocated once. */
+    class Decryptor {
+
+        /** A decryptor with rotors ROTORS. */
+        Decryptor(Rotor[] rotors) {
+            _rotors = rotors;
+            int n = rotors.length;
+            _start = new int[n];
+            _rings = new int[n];
+            _settings = new int[n];
+            _counts = new int[_size];
+            _table = new int[_cipher.length * _size];
+            _plain = new int[_cipher.length];
+            _plugboard = new int[_size];
+            _trial = new int[_size];
+            for (int c = 0; c < _size; c++) {
+                _plugboard[c] = c;
+            }
+        }
+
+        /** Set my rotors to start position number POSITION, with ring
+         *  settings 0 and no plugboard. */
+        void start(long position) {
+            for (int i = _start.length - 1; i > 0; i--) {
+                _start[i] = (int) (position % _size);
+                position /= _size;
+            }
+            Arrays.fill(_rings, 0);
+            for (int c = 0; c < _size; c++) {
+                _plugboard[c] = c;
+            }
+        }
+
+        /** Return the index of coincidence of the decryption under my
+         *  rotors, ignoring the plugboard. */
+        double coincidence() {
+            int n = _rotors.length;
+            System.arraycopy(_start, 0, _settings, 0, n);
+            Arrays.fill(_counts, 0);
+            for (int i = 0; i < _cipher.length; i++) {
+                Machine.step(_rotors, _settings, _size);
+                int c = _cipher[i];
+                for (int k = n - 1; k >= 0; k--) {
+                    c = _rotors[k].convertForward(c, offset(k));
+                }
+                for (int k = 1; k < n; k++) {
+                    c = _rotors[k].convertBackward(c, offset(k));
+                }
+                _counts[c] += 1;
+            }
+            long sum = 0;
+            for (int count : _counts) {
+                sum += (long) count * (count - 1);
+            }
+            return (double) sum / ((long) _cipher.length
+                                   * (_cipher.length - 1));
+        }
+
+        /** Return the offset of the rotor in SLOT at its current
+         *  setting. */
+        private int offset(int slot) {
+            int d = _settings[slot] - _rings[slot];
+            return d < 0 ? d + _size : d;
+        }
+
+        /** Choose the ring settings of the two rightmost rotors, keeping
+         *  their offsets at the first character, to maximize the index
+         *  of coincidence. */
+        void climbRings() {
+            int fast = _rotors.length - 1, middle = fast - 1;
+            int middleRings = _rotors[middle].rotates() ? _size : 1;
+            int fastStart = _start[fast], middleStart = _start[middle];
+            int bestFast = 0, bestMiddle = 0;
+            double best = -1;
+            for (int m = 0; m < middleRings; m++) {
+                for (int f = 0; f < _size; f++) {
+                    setRing(fast, fastStart, f);
+                    setRing(middle, middleStart, m);
+                    double score = coincidence();
+                    if (score > best) {
+                        best = score;
+                        bestFast = f;
+                        bestMiddle = m;
+                    }
+                }
+            }
+            setRing(fast, fastStart, bestFast);
+            setRing(middle, middleStart, bestMiddle);
+        }
+
+        /** Try each ring setting of each of the two rightmost rotors in
+         *  turn with my plugboard, keeping the one whose decryption
+         *  scores best, which separates ring settings that index of
+         *  coincidence cannot.  Leaves my rotors tabulated.  Return
+         *  true iff a ring setting changed. */
+        boolean refineRings() {
+            boolean changed = false;
+            int fast = _rotors.length - 1;
+            for (int slot = fast; slot >= fast - 1; slot--) {
+                if (!_rotors[slot].rotates()) {
+                    continue;
+                }
+                int start = (_start[slot] - _rings[slot] + _size) % _size;
+                int ring = _rings[slot];
+                for (int r = 0; r < _size; r++) {
+                    if (r == _rings[slot]) {
+                        continue;
+                    }
+                    setRing(slot, start, r);
+                    tabulate();
+                    _ringTrials += 1;
+                    double score = score(_plugboard);
+                    if (score > _score) {
+                        _score = score;
+                        ring = r;
+                        changed = true;
+                    }
+                }
+                setRing(slot, start, ring);
+                tabulate();
+            }
+            return changed;
+        }
+
+        /** Return the number of decryptions scored by refineRings. */
+        long ringTrials() {
+            return _ringTrials;
+        }
+
+        /** Give the rotor in SLOT ring setting RING, and the start
+         *  position that makes its offset that of position START with
+         *  ring setting 0. */
+        private void setRing(int slot, int start, int ring) {
+            _rings[slot] = ring;
+            _start[slot] = (start + ring) % _size;
+        }
+
+        /** Record the substitution made by my rotors at each position of
+         *  the ciphertext. */
+        void tabulate() {
+            int n = _rotors.length;
+            System.arraycopy(_start, 0, _settings, 0, n);
+            for (int i = 0; i < _cipher.length; i++) {
+                Machine.step(_rotors, _settings, _size);
+                int base = i * _size;
+                for (int c = 0; c < _size; c++) {
+                    int e = c;
+                    for (int k = n - 1; k >= 0; k--) {
+                        e = _rotors[k].convertForward(e, offset(k));
+                    }
+                    for (int k = 1; k < n; k++) {
+                        e = _rotors[k].convertBackward(e, offset(k));
+                    }
+                    _table[base + c] = e;
+                }
+            }
+        }
+
+        /** Return the score of the decryption of my ciphertext with my
+         *  tabulated rotors and plugboard PLUGBOARD (an array of
+         *  letter images), leaving it in my plaintext buffer. */
+        double score(int[] plugboard) {
+            int[] table = _table, plain = _plain, cipher = _cipher;
+            int size = _size;
+            for (int i = 0, base = 0; i < cipher.length; i++,
+                     base += size) {
+                plain[i] = plugboard[table[base + plugboard[cipher[i]]]];
+            }
+            return _model.score(plain, plain.length);
+        }
+
+        /** Find plugboard pairs by hill-climbing from my present
+         *  plugboard, trying pairs of letters in an order chosen from
+         *  SEED, and return the number of decryptions scored. */
+        long climbPlugboard(long seed) {
+            int[] letters = new int[_size];
+            for (int c = 0; c < _size; c++) {
+                letters[c] = c;
+            }
+            Random rand = new Random(seed);
+            for (int i = _size - 1; i > 0; i--) {
+                int j = rand.nextInt(i + 1);
+                int t = letters[i];
+                letters[i] = letters[j];
+                letters[j] = t;
+            }
+            long decryptions = 1;
+            _score = score(_plugboard);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < _size; i++) {
+                    for (int j = i + 1; j < _size; j++) {
+                        int a = letters[i], b = letters[j];
+                        for (int move = 0; move < 2; move++) {
+                            if (!propose(a, b, move == 1)) {
+                                continue;
+                            }
+                            decryptions += 1;
+                            double score = score(_trial);
+                            if (score > _score) {
+                                _score = score;
+                                System.arraycopy(_trial, 0, _plugboard, 0,
+                                                 _size);
+                                improved = true;
+                            }
+                        }
+                    }
+                }
+            }
+            return decryptions;
+        }
+
+        /** Set _trial to my plugboard with A and B swapped with each
+         *  other: unplugged if they are a pair, and otherwise plugged
+         *  together after their present partners are unplugged (and, if
+         *  REPAIR, plugged to each other).  Return false if there is no
+         *  such change within my limit on pairs. */
+        private boolean propose(int a, int b, boolean repair) {
+            System.arraycopy(_plugboard, 0, _trial, 0, _size);
+            int x = _trial[a], y = _trial[b];
+            if (x == b) {
+                if (repair) {
+                    return false;
+                }
+                _trial[a] = a;
+                _trial[b] = b;
+                return true;
+            }
+            if (repair && (x == a || y == b)) {
+                return false;
+            }
+            _trial[x] = x;
+            _trial[y] = y;
+            _trial[a] = b;
+            _trial[b] = a;
+            if (repair) {
+                _trial[x] = y;
+                _trial[y] = x;
+            }
+            return pairs(_trial) <= _maxPairs;
+        }
+
+        /** Return the number of pairs of PLUGBOARD. */
+        private int pairs(int[] plugboard) {
+            int result = 0;
+            for (int c = 0; c < _size; c++) {
+                if (plugboard[c] > c) {
+                    result += 1;
+                }
+            }
+            return result;
+        }
+
+        /** Return my present key and its score. */
+        Key key() {
+            String[] names = new String[_rotors.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = _rotors[i].name();
+            }
+            char[] setting = new char[names.length - 1];
+            char[] rings = new char[names.length - 1];
+            for (int i = 0; i < setting.length; i++) {
+                setting[i] = _alphabet.toChar(_start[i + 1]);
+                rings[i] = _alphabet.toChar(_rings[i + 1]);
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int c = 0; c < _size; c++) {
+                if (_plugboard[c] > c) {
+                    plugboard.append(plugboard.length() > 0 ? " (" : "(")
+                        .append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(_plugboard[c]))
+                        .append(')');
+                }
+            }
+            return new Key(names, new String(setting), new String(rings),
+                           plugboard.toString(), _score);
+        }
+
+        /** My rotor order. */
+        private final Rotor[] _rotors;
+        /** Settings of my rotors at the start of the message. */
+        private final int[] _start;
+        /** Ring settings of my rotors. */
+        private final int[] _rings;
+        /** Settings of my rotors as they are stepped. */
+        private final int[] _settings;
+        /** Number of occurrences of each letter in a decryption. */
+        private final int[] _counts;
+        /** Image of letter C under the rotors at position I of the
+         *  message is _table[I * size + C]. */
+        private final int[] _table;
+        /** The last decryption. */
+        private final int[] _plain;
+        /** Image of each letter under my plugboard. */
+        private final int[] _plugboard;
+        /** A plugboard being tried. */
+        private final int[] _trial;
+        /** Score of my present key. */
+        private double _score;
+        /** Number of decryptions scored by refineRings. */
+        private long _ringTrials;
+    }
+
+    /** A key found by the attack. */
+    static class Key {
+        /** A key with rotors ROTORS at SETTING with ring settings RINGS
+         *  and plugboard PLUGBOARD, whose decryption scores SCORE. */
+        Key(String[] rotors, String setting, String rings,
+            String plugboard, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of my rotors. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return my rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my ring settings. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return my plugboard pairs, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the n-gram score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a settings line for me. */
+        String settingsLine() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting
+                + " " + _rings;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My rotor setting. */
+        private final String _setting;
+        /** My ring settings. */
+        private final String _rings;
+        /** My plugboard pairs. */
+        private final String _plugboard;
+        /** Score of my decryption. */
+        private final double _score;
+    }
+
+    /** The outcome of an attack. */
+    static class Result {
+        /** An attack that found KEYS after trying POSITIONS start
+         *  positions and scoring DECRYPTIONS decryptions in NANOS
+         *  nanoseconds. */
+        Result(List<Key> keys, long positions, long decryptions,
+               long nanos) {
+            _keys = Collections.unmodifiableList(keys);
+            _positions = positions;
+            _decryptions = decryptions;
+            _nanos = nanos;
+        }
+
+        /** Return the key found by each restart, best first. */
+        List<Key> keys() {
+            return _keys;
+        }
+
+        /** Return the best key found. */
+        Key best() {
+            return _keys.get(0);
+        }
+
+        /** Return the number of start positions tried. */
+        long positions() {
+            return _positions;
+        }
+
+        /** Return the number of decryptions scored while climbing. */
+        long decryptions() {
+            return _decryptions;
+        }
+
+        /** Return the duration of the attack in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the number of decryptions scored per second. */
+        double rate() {
+            return _decryptions * 1e9 / Math.max(1, _nanos);
+        }
+
+        /** The keys. */
+        private final List<Key> _keys;
+        /** Number of start positions tried. */
+        private final long _positions;
+        /** Number of decryptions scored. */
+        private final long _decryptions;
+        /** Duration in nanoseconds. */
+        private final long _nanos;
+    }
+
+    /** Source of the rotors. */
+    private final RotorCatalog _catalog;
+    /** Alphabet of the rotors. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Model by which decryptions are scored. */
+    private final NGramModel _model;
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** Rotor orders to search. */
+    private List<String[]> _orders;
+    /** Number of restarts. */
+    private int _restarts = DEFAULT_RESTARTS;
+    /** Largest number of plugboard pairs. */
+    private int _maxPairs = DEFAULT_PAIRS;
+}
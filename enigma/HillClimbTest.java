@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimb class.
+ *  @author Pranav Bhimani
+ */
+public class HillClimbTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** English text from which the models are built. */
+    static final String CORPUS =
+        "The weather report for the morning was much the same as it had\n"
+        + "been for the whole of the week: wind from the west, rain in the\n"
+        + "afternoon, and heavy seas in the north.  The convoy was to leave\n"
+        + "the harbour at first light and steer to the south and east until\n"
+        + "it reached the open water, where the escorts would take up their\n"
+        + "stations on either side of the merchant ships.  Nobody on board\n"
+        + "expected to see the enemy before the third day, but the captain\n"
+        + "ordered that the guns be manned and the lookouts doubled from the\n"
+        + "moment they passed the lighthouse.  There was nothing to do then\n"
+        + "but wait, and watch the grey line of the horizon, and listen to\n"
+        + "the signals that came in every hour from the shore.  Most of them\n"
+        + "were routine: positions of other ships, changes in the weather,\n"
+        + "and now and then an order to alter course.  The operators wrote\n"
+        + "them down and passed them to the officer of the watch, who read\n"
+        + "them and put them in the box beside the chart table.  In the\n"
+        + "evening the wind rose and the rain turned to sleet, and the sea\n"
+        + "grew so rough that the smaller ships were hidden for minutes at a\n"
+        + "time in the troughs between the waves.  At midnight a message\n"
+        + "arrived that was not routine at all.  It said that a group of\n"
+        + "submarines had been seen gathering to the north of the route, and\n"
+        + "that the convoy should turn south at once and keep its speed as\n"
+        + "high as the slowest ship would allow.  The captain read it twice,\n"
+        + "looked at the chart for a long time, and then gave the order.\n";
+
+    /** The message enciphered in the tests: part of CORPUS. */
+    static final String PLAIN = letters(CORPUS).substring(400, 760);
+
+    /** Return the letters of TEXT, in upper case. */
+    static String letters(String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (Character.isLetter(c)) {
+                result.append(Character.toUpperCase(c));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a model of the N-grams of CORPUS. */
+    static NGramModel model(int n) throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        corpus.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(corpus)) {
+            out.print(CORPUS);
+        }
+        return NGramModel.build(UPPER, n, corpus.getPath());
+    }
+
+    /** The rotor order of the test message. */
+    private static final String[] ORDER = { "B", "Beta", "II", "IV" };
+
+    /** Return a 4-rotor, 2-pawl catalog of the naval rotors. */
+    private static RotorCatalog catalog() {
+        return new RotorCatalog(UPPER, 4, 2, navalRotors());
+    }
+
+    /** Return PLAIN enciphered with ORDER at SETTING, ring settings
+     *  RINGS, and plugboard CYCLES, by machines from CATALOG. */
+    private static String encipher(RotorCatalog catalog, String setting,
+                                   String rings, String cycles) {
+        Machine m = new Machine(catalog);
+        m.insertRotors(ORDER);
+        m.setRotors(setting);
+        m.setRingSettings(rings);
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m.convert(PLAIN);
+    }
+
+    @Test
+    public void checkRecoversKey() throws IOException {
+        checkRecovers("KDV", "AAA", "(AE) (RT) (SW) (HO)");
+    }
+
+    @Test
+    public void checkRecoversRings() throws IOException {
+        checkRecovers("XPE", "AHM", "(BN) (CY) (LU)");
+    }
+
+    /** Check that the attack recovers a key equivalent to rotors ORDER
+     *  at SETTING, ring settings RINGS, and plugboard CYCLES. */
+    private void checkRecovers(String setting, String rings, String cycles)
+        throws IOException {
+        RotorCatalog catalog = catalog();
+        String cipher = encipher(catalog, setting, rings, cycles);
+        HillClimb climb = new HillClimb(catalog, cipher, model(3));
+        climb.setOrders(List.<String[]>of(ORDER));
+        climb.setRestarts(4);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        HillClimb.Result result = climb.run(pool, 1);
+        pool.shutdown();
+        HillClimb.Key key = result.best();
+        assertEquals(4, result.keys().size());
+        assertEquals(climb.positions(), result.positions());
+        assertTrue(result.decryptions() > 0);
+        Machine m = new Machine(catalog);
+        new Main(catalog, null, null).applySettings(m, key.settingsLine());
+        assertEquals(PLAIN, m.convert(cipher));
+    }
+
+    @Test
+    public void checkDecryptorScore() throws IOException {
+        RotorCatalog catalog = catalog();
+        String cipher = encipher(catalog, "QEZ", "AAA", "");
+        HillClimb climb = new HillClimb(catalog, cipher, model(2));
+        HillClimb.Decryptor decryptor = climb.decryptor(ORDER);
+        decryptor.start((UPPER.toInt('Q') * 26 + UPPER.toInt('E')) * 26
+                        + UPPER.toInt('Z'));
+        decryptor.tabulate();
+        int[] plugboard = new int[26];
+        for (int c = 0; c < 26; c++) {
+            plugboard[c] = c;
+        }
+        double score = decryptor.score(plugboard);
+        assertEquals(0, allocatedPerRun(2000, () -> {
+            assertEquals(score, decryptor.score(plugboard), 0);
+        }));
+        int[] plain = new int[PLAIN.length()];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = UPPER.toInt(PLAIN.charAt(i));
+        }
+        assertEquals(model(2).score(plain, plain.length), score, 1e-6);
+    }
+}
@@ -0,0 +1,299 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The states of K machines with the same rotor order but different
+ *  keys (settings, ring settings and plugboards), advanced and converted
+ *  in lockstep, so that one pass over a message converts it under all K
+ *  keys.  Each quantity is held for all lanes in one array, lane by
+ *  lane within slot, so the work for one character is a run of short
+ *  loops over the lanes whose rotor order, notch tests and table
+ *  layout are shared.  Lane L converts exactly as a Machine with the
+ *  same rotors and key would, stepping before each character.  Creates
+ *  no objects once built.
+ *  @author Pranav Bhimani
+ */
+class KeyBatch {
+
+    /** A batch of LANES machines with the rotors named ORDER from
+     *  CATALOG, all at setting 0 with ring settings 0 and no plugboard. */
+    KeyBatch(RotorCatalog catalog, String[] order, int lanes) {
+        if (lanes < 1) {
+            throw error("a batch needs at least one lane");
+        }
+        Machine check = new Machine(catalog);
+        check.insertRotors(order);
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        _lanes = lanes;
+        _slots = order.length;
+        _rotors = new Rotor[_slots];
+        _rotates = new boolean[_slots];
+        _notches = new int[_slots][];
+        _forward = new int[_slots][];
+        _backward = new int[_slots][];
+        for (int s = 0; s < _slots; s++) {
+            Rotor rotor = catalog.rotors().get(catalog.indexOf(order[s]));
+            _rotors[s] = rotor;
+            _rotates[s] = rotor.rotates();
+            _notches[s] = new int[_size];
+            _forward[s] = new int[_size * _size];
+            _backward[s] = new int[_size * _size];
+            for (int o = 0; o < _size; o++) {
+                _notches[s][o] = rotor.atNotch(o) ? 1 : 0;
+                for (int p = 0; p < _size; p++) {
+                    _forward[s][o * _size + p] = rotor.convertForward(p, o);
+                    _backward[s][o * _size + p] =
+                        rotor.convertBackward(p, o);
+                }
+            }
+        }
+        int moving = 1;
+        while (moving < _slots && !_rotates[moving]) {
+            moving += 1;
+        }
+        _firstMoving = moving;
+        _inner = new int[lanes * _size];
+        _settings = new int[_slots * lanes];
+        _rings = new int[_slots * lanes];
+        _start = new int[_slots * lanes];
+        _bases = new int[_slots * lanes];
+        _plugboards = new int[lanes * _size];
+        _carry = new int[lanes];
+        _letters = new int[lanes];
+        _counts = new int[lanes * _size];
+        for (int l = 0; l < lanes; l++) {
+            clearPlugboard(l);
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Set LANE to the key with rotor settings SETTING, ring settings
+     *  RINGS (or 0 if null) and plugboard PLUGBOARD (or none if null), as
+     *  for Machine.setRotors, setRingSettings and setPlugboard. */
+    void setKey(int lane, String setting, String rings,
+                Permutation plugboard) {
+        checkLane(lane);
+        if (setting.length() != _slots - 1
+            || (rings != null && rings.length() != _slots - 1)) {
+            throw error("wrong number of settings");
+        }
+        for (int s = 1; s < _slots; s++) {
+            _start[s * _lanes + lane] =
+                _alphabet.toInt(setting.charAt(s - 1));
+            _rings[s * _lanes + lane] = rings == null ? 0
+                : _alphabet.toInt(rings.charAt(s - 1));
+        }
+        if (plugboard == null) {
+            clearPlugboard(lane);
+        } else {
+            for (int c = 0; c < _size; c++) {
+                _plugboards[lane * _size + c] = plugboard.permute(c);
+            }
+        }
+    }
+
+    /** Set LANE to start position number POSITION (the settings of slots
+     *  1 .. K-1 as the digits, in base size, of POSITION), with ring
+     *  settings 0 and no plugboard. */
+    void setPosition(int lane, long position) {
+        checkLane(lane);
+        for (int s = _slots - 1; s > 0; s--) {
+            _start[s * _lanes + lane] = (int) (position % _size);
+            _rings[s * _lanes + lane] = 0;
+            position /= _size;
+        }
+        clearPlugboard(lane);
+    }
+
+    /** Check that LANE is one of mine. */
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= _lanes) {
+            throw error("no lane %d", lane);
+        }
+    }
+
+    /** Remove the plugboard of LANE. */
+    private void clearPlugboard(int lane) {
+        for (int c = 0; c < _size; c++) {
+            _plugboards[lane * _size + c] = c;
+        }
+    }
+
+    /** Convert the message MSG[0 .. LENGTH-1] (alphabet indices) under
+     *  the key of every lane from its start, putting the conversion of
+     *  character I in lane L in OUT[I * lanes() + L]. */
+    void convert(int[] msg, int length, int[] out) {
+        rewind();
+        int lanes = _lanes;
+        for (int i = 0; i < length; i++) {
+            step();
+            convertAll(msg[i]);
+            System.arraycopy(_letters, 0, out, i * lanes, lanes);
+        }
+    }
+
+    /** Set SCORES[L] to the index of coincidence of the conversion of
+     *  MSG[0 .. LENGTH-1] (alphabet indices) under the key of lane L. */
+    void coincidence(int[] msg, int length, double[] scores) {
+        rewind();
+        int lanes = _lanes, size = _size;
+        int[] counts = _counts, letters = _letters;
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < length; i++) {
+            step();
+            convertAll(msg[i]);
+            for (int l = 0, base = 0; l < lanes; l++, base += size) {
+                counts[base + letters[l]] += 1;
+            }
+        }
+        double pairs = (double) length * (length - 1);
+        for (int l = 0; l < lanes; l++) {
+            long sum = 0;
+            for (int c = l * size; c < (l + 1) * size; c++) {
+                sum += (long) counts[c] * (counts[c] - 1);
+            }
+            scores[l] = sum / pairs;
+        }
+    }
+
+    /** Return every lane to its start, and compose the conversions of
+     *  the rotors left of the first rotating one, which never move, in
+     *  each lane into _inner. */
+    private void rewind() {
+        int size = _size, lanes = _lanes;
+        System.arraycopy(_start, 0, _settings, 0, _settings.length);
+        for (int k = 0; k < _bases.length; k++) {
+            int offset = _settings[k] - _rings[k];
+            _bases[k] = (offset < 0 ? offset + size : offset) * size;
+        }
+        for (int l = 0; l < lanes; l++) {
+            for (int c = 0; c < size; c++) {
+                int e = c;
+                for (int s = _firstMoving - 1; s >= 0; s--) {
+                    e = _forward[s][_bases[s * lanes + l] + e];
+                }
+                for (int s = 1; s < _firstMoving; s++) {
+                    e = _backward[s][_bases[s * lanes + l] + e];
+                }
+                _inner[l * size + c] = e;
+            }
+        }
+    }
+
+    /** Advance the rotors of every lane as Machine.step does. */
+    private void step() {
+        int lanes = _lanes, size = _size, span = size * size;
+        int[] settings = _settings, bases = _bases, carry = _carry;
+        int last = _slots - 1;
+        int[] notches = _notches[last];
+        for (int l = 0, k = last * lanes; l < lanes; l++, k++) {
+            carry[l] = notches[settings[k]];
+        }
+        for (int s = last - 1; s > 0; s--) {
+            notches = _notches[s];
+            int left = _rotates[s - 1] ? 1 : 0;
+            boolean rotates = _rotates[s];
+            for (int l = 0, k = s * lanes; l < lanes; l++, k++) {
+                int notch = notches[settings[k]];
+                if (rotates && (carry[l] | (notch & left)) != 0) {
+                    advance(settings, bases, k, size, span);
+                }
+                carry[l] = notch;
+            }
+        }
+        for (int l = 0, k = last * lanes; l < lanes; l++, k++) {
+            advance(settings, bases, k, size, span);
+        }
+    }
+
+    /** Advance entry K of SETTINGS, and of BASES (offsets times SIZE,
+     *  modulo SPAN), by one. */
+    private static void advance(int[] settings, int[] bases, int k,
+                                int size, int span) {
+        int setting = settings[k] + 1;
+        settings[k] = setting == size ? 0 : setting;
+        int base = bases[k] + size;
+        bases[k] = base == span ? 0 : base;
+    }
+
+    /** Set _letters[L] to the conversion of C by lane L at its present
+     *  settings. */
+    private void convertAll(int c) {
+        int lanes = _lanes, size = _size;
+        int[] letters = _letters, plugboards = _plugboards;
+        int[] bases = _bases;
+        for (int l = 0, p = 0; l < lanes; l++, p += size) {
+            letters[l] = plugboards[p + c];
+        }
+        int first = _firstMoving;
+        for (int s = _slots - 1; s >= first; s--) {
+            int[] table = _forward[s];
+            for (int l = 0, k = s * lanes; l < lanes; l++, k++) {
+                letters[l] = table[bases[k] + letters[l]];
+            }
+        }
+        int[] inner = _inner;
+        for (int l = 0, p = 0; l < lanes; l++, p += size) {
+            letters[l] = inner[p + letters[l]];
+        }
+        for (int s = Math.max(first, 1); s < _slots; s++) {
+            int[] table = _backward[s];
+            for (int l = 0, k = s * lanes; l < lanes; l++, k++) {
+                letters[l] = table[bases[k] + letters[l]];
+            }
+        }
+        for (int l = 0, p = 0; l < lanes; l++, p += size) {
+            letters[l] = plugboards[p + letters[l]];
+        }
+    }
+
+    /** Alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Number of lanes. */
+    private final int _lanes;
+    /** Number of rotor slots. */
+    private final int _slots;
+    /** Rotor in each slot. */
+    private final Rotor[] _rotors;
+    /** True for each slot whose rotor moves. */
+    private final boolean[] _rotates;
+    /** For each slot, 1 at each setting at a notch, else 0. */
+    private final int[][] _notches;
+    /** For each slot, its rotor's forward conversion of P at offset O
+     *  at O * size + P. */
+    private final int[][] _forward;
+    /** Backward conversions, laid out as _forward. */
+    private final int[][] _backward;
+    /** First slot whose rotor moves (or the number of slots). */
+    private final int _firstMoving;
+    /** For each lane, the conversion by the rotors in the slots before
+     *  _firstMoving, there and back, of letter C at LANE * size + C. */
+    private final int[] _inner;
+    /** Setting of each slot in each lane, at SLOT * lanes + LANE (slot 0,
+     *  the reflector, stays at 0). */
+    private final int[] _settings;
+    /** Ring settings, laid out as _settings. */
+    private final int[] _rings;
+    /** Settings at the start of a message, laid out as _settings. */
+    private final int[] _start;
+    /** Offset (setting less ring setting) times size, laid out as
+     *  _settings. */
+    private final int[] _bases;
+    /** Plugboard image of letter C in lane L at L * size + C. */
+    private final int[] _plugboards;
+    /** For each lane, 1 if the slot to the right was at a notch. */
+    private final int[] _carry;
+    /** Letter being converted in each lane. */
+    private final int[] _letters;
+    /** Count of letter C in lane L at L * size + C. */
+    private final int[] _counts;
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyBatch class.
+ *  @author Pranav Bhimani
+ */
+public class KeyBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a random string of LENGTH letters from RAND. */
+    private static String letters(int length, Random rand) {
+        return new String(Benchmark.randomMessage(length, rand));
+    }
+
+    /** Return a random plugboard of up to 10 pairs from RAND. */
+    private static Permutation plugboard(Random rand) {
+        char[] letters = UPPER.chars().toCharArray();
+        for (int i = letters.length - 1; i > 0; i -= 1) {
+            int j = rand.nextInt(i + 1);
+            char t = letters[i];
+            letters[i] = letters[j];
+            letters[j] = t;
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int k = rand.nextInt(11); k > 0; k -= 1) {
+            cycles.append('(').append(letters[2 * k])
+                .append(letters[2 * k + 1]).append(')');
+        }
+        return new Permutation(cycles.toString(), UPPER);
+    }
+
+    /** Return MSG as alphabet indices. */
+    private static int[] indices(String msg) {
+        int[] result = new int[msg.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(msg.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void checkMatchesMachine() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        Random rand = new Random(24);
+        String[][] orders = { STANDARD, { "C", "Gamma", "VI", "VII", "VIII" },
+                              { "B", "Beta", "V", "III", "VI" },
+                              { "B", "II", "I", "Beta", "III" } };
+        String msg = letters(2000, rand);
+        int[] text = indices(msg);
+        for (String[] order : orders) {
+            for (int lanes : new int[] { 1, 8, 13 }) {
+                KeyBatch batch = new KeyBatch(catalog, order, lanes);
+                assertEquals(lanes, batch.lanes());
+                String[] expected = new String[lanes];
+                for (int l = 0; l < lanes; l += 1) {
+                    String setting = l == 0 ? "AQAA" : letters(4, rand);
+                    String rings = letters(4, rand);
+                    Permutation plugboard = plugboard(rand);
+                    batch.setKey(l, setting, rings, plugboard);
+                    Machine m = new Machine(catalog);
+                    m.insertRotors(order);
+                    m.setRotors(setting);
+                    m.setRingSettings(rings);
+                    m.setPlugboard(plugboard);
+                    expected[l] = m.convert(msg);
+                }
+                int[] out = new int[text.length * lanes];
+                for (int round = 0; round < 2; round += 1) {
+                    batch.convert(text, text.length, out);
+                    for (int l = 0; l < lanes; l += 1) {
+                        for (int i = 0; i < text.length; i += 1) {
+                            assertEquals(expected[l].charAt(i),
+                                         UPPER.toChar(out[i * lanes + l]));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkPositionsAndCoincidence() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 4, 2, navalRotors());
+        String[] order = { "B", "Beta", "II", "IV" };
+        Random rand = new Random(25);
+        int[] text = indices(letters(300, rand));
+        KeyBatch batch = new KeyBatch(catalog, order, 16);
+        long[] positions = new long[16];
+        for (int l = 0; l < 16; l += 1) {
+            positions[l] = rand.nextInt(26 * 26 * 26);
+            batch.setPosition(l, positions[l]);
+        }
+        double[] scores = new double[16];
+        batch.coincidence(text, text.length, scores);
+        int[] out = new int[text.length * 16];
+        batch.convert(text, text.length, out);
+        for (int l = 0; l < 16; l += 1) {
+            Machine m = new Machine(catalog);
+            m.insertRotors(order);
+            long p = positions[l];
+            char[] setting = new char[3];
+            for (int s = 2; s >= 0; s -= 1) {
+                setting[s] = UPPER.toChar((int) (p % 26));
+                p /= 26;
+            }
+            m.setRotors(new String(setting));
+            m.setPlugboard(new Permutation("", UPPER));
+            int[] counts = new int[26];
+            for (int i = 0; i < text.length; i += 1) {
+                int c = m.convert(text[i]);
+                assertEquals(c, out[i * 16 + l]);
+                counts[c] += 1;
+            }
+            long sum = 0;
+            for (int count : counts) {
+                sum += count * (count - 1);
+            }
+            assertEquals((double) sum / (300 * 299), scores[l], 1e-12);
+        }
+    }
+
+    @Test
+    public void checkCreatesNothing() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        KeyBatch batch = new KeyBatch(catalog, STANDARD, 16);
+        int[] text = indices(letters(256, new Random(26)));
+        int[] out = new int[text.length * 16];
+        double[] scores = new double[16];
+        assertEquals(0, allocatedPerRun(2000, () -> {
+            batch.convert(text, text.length, out);
+            batch.coincidence(text, text.length, scores);
+        }));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadOrder() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        new KeyBatch(catalog, new String[] { "B", "Beta", "I", "I", "II" },
+                     4);
+    }
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An eventually periodic set of keystroke numbers: some keystrokes
+ *  before a start time L, then, from L on, the same offsets in every
+ *  period of P keystrokes.  The keystrokes at which a rotor sits at a
+ *  notch form such a schedule, which is what lets advance move a set of
+ *  rotors forward by N keystrokes without visiting each of them.
+ *  @author Pranav Bhimani
+ */
+class KeystrokeSchedule {
+
+    /** A schedule containing the keystrokes in TAIL (all less than START)
+     *  and, for each K >= 0, START + K * PERIOD + each value in OFFSETS
+     *  (all less than PERIOD).  A PERIOD of 0 means there is nothing at
+     *  or after START. */
+    KeystrokeSchedule(long[] tail, long start, long period, long[] offsets) {
+        _tail = tail;
+        _start = start;
+        _period = period;
+        _offsets = offsets;
+    }
+
+    /** The schedule with no keystrokes in it (with a period of 1, so that
+     *  a rotor it drives is seen to have stopped moving). */
+    static final KeystrokeSchedule EMPTY =
+        new KeystrokeSchedule(new long[0], 0, 1, new long[0]);
+
+    /** Return the number of my keystrokes that are less than T. */
+    long countBefore(long t) {
+        if (t <= _start || _period == 0) {
+            return countBefore(_tail, Math.min(t, _start));
+        }
+        long q = (t - _start) / _period, r = (t - _start) % _period;
+        return _tail.length + q * _offsets.length + countBefore(_offsets, r);
+    }
+
+    /** Return the first of my keystrokes that is at least T, or
+     *  Long.MAX_VALUE if there is none. */
+    long next(long t) {
+        if (t < _start) {
+            int k = (int) countBefore(_tail, t);
+            if (k < _tail.length) {
+                return _tail[k];
+            }
+            t = _start;
+        }
+        if (_period == 0 || _offsets.length == 0) {
+            return Long.MAX_VALUE;
+        }
+        long q = (t - _start) / _period, r = (t - _start) % _period;
+        int k = (int) countBefore(_offsets, r);
+        if (k == _offsets.length) {
+            q += 1;
+            k = 0;
+        }
+        return _start + q * _period + _offsets[k];
+    }
+
+    /** Return the number of values in the sorted array TIMES that are
+     *  less than T. */
+    private static long countBefore(long[] times, long t) {
+        int k = Arrays.binarySearch(times, t);
+        return k >= 0 ? k : -k - 1;
+    }
+
+    /** Advance SETTINGS, the settings of the rotors ROTORS of a machine
+     *  (ROTORS[0] being its reflector), by N keystrokes, exactly as N
+     *  calls to Machine.convert would.  The time taken depends on the
+     *  number of rotors and the size of their alphabet, but not on N. */
+    static void advance(Rotor[] rotors, int[] settings, long n) {
+        int last = rotors.length - 1;
+        Rotor fast = rotors[last];
+        int size = fast.size();
+        long[] notches = new long[size];
+        int count = 0;
+        for (int t = 0; t < size; t++) {
+            if (fast.atNotch((settings[last] + t) % size)) {
+                notches[count++] = t;
+            }
+        }
+        KeystrokeSchedule driver =
+            new KeystrokeSchedule(new long[0], 0, size,
+                                  Arrays.copyOf(notches, count));
+        settings[last] = (int) ((settings[last] + n % size) % size);
+
+        for (int i = last - 1; i > 0; i--) {
+            Rotor rotor = rotors[i];
+            if (!rotor.rotates()) {
+                driver = EMPTY;
+            } else if (!rotors[i - 1].rotates()) {
+                long moves = driver.countBefore(n);
+                settings[i] = (int) ((settings[i] + moves % size) % size);
+                driver = EMPTY;
+            } else {
+                Level level = new Level(rotor, settings[i], driver, n);
+                settings[i] = level.position();
+                driver = level.notchSchedule();
+            }
+        }
+    }
+
+    /** The motion of one rotating rotor whose left neighbor also rotates,
+     *  so that it advances whenever the rotor to its right is at a notch
+     *  and whenever it is itself at a notch. */
+    private static class Level {
+
+        /** Simulate ROTOR, initially at POSN, for N keystrokes, given that
+         *  the rotor to its right sits at a notch at the keystrokes in
+         *  DRIVER.  The simulation stops early once ROTOR's position at
+         *  the start of one of DRIVER's periods repeats. */
+        Level(Rotor rotor, int posn, KeystrokeSchedule driver, long n) {
+            int size = rotor.size();
+            _size = size;
+            _posn = posn;
+            _n = n;
+            int[] seen = new int[size];
+            Arrays.fill(seen, -1);
+            long boundary = driver._period == 0 ? Long.MAX_VALUE
+                : driver._start;
+            int boundaries = 0;
+            long cycleStart = -1, cycleEnd = -1;
+            int x = posn;
+            long t = 0;
+            while (true) {
+                boolean atNotch = rotor.atNotch(x);
+                long nt = atNotch ? t : driver.next(t);
+                if (boundary <= nt && boundary < n) {
+                    if (seen[x] >= 0) {
+                        cycleStart = driver._start
+                            + seen[x] * driver._period;
+                        cycleEnd = boundary;
+                        break;
+                    }
+                    seen[x] = boundaries;
+                    boundaries += 1;
+                    boundary = boundary > Long.MAX_VALUE - driver._period
+                        ? Long.MAX_VALUE : boundary + driver._period;
+                    continue;
+                }
+                if (nt >= n) {
+                    break;
+                }
+                _moves.add(nt);
+                if (atNotch) {
+                    _notches.add(nt);
+                }
+                x = (x + 1) % size;
+                t = nt + 1;
+            }
+            if (cycleStart < 0) {
+                _start = n;
+                _period = 0;
+            } else {
+                _start = cycleStart;
+                _period = cycleEnd - cycleStart;
+            }
+        }
+
+        /** Return the position of my rotor after N keystrokes. */
+        int position() {
+            KeystrokeSchedule moves = _moves.schedule(_start, _period);
+            long count = moves.countBefore(_n);
+            return (int) ((_posn + count % _size) % _size);
+        }
+
+        /** Return the keystrokes at which my rotor is at a notch. */
+        KeystrokeSchedule notchSchedule() {
+            return _notches.schedule(_start, _period);
+        }
+
+        /** Alphabet size. */
+        private final int _size;
+        /** Initial position. */
+        private final int _posn;
+        /** Number of keystrokes simulated. */
+        private final long _n;
+        /** Start of my periodic part, or N if there is none. */
+        private final long _start;
+        /** Length of my period, or 0 if there is none. */
+        private final long _period;
+        /** Keystrokes at which my rotor advanced. */
+        private final TimeList _moves = new TimeList();
+        /** Keystrokes at which my rotor was at a notch. */
+        private final TimeList _notches = new TimeList();
+    }
+
+    /** A growable, increasing list of keystroke numbers. */
+    private static class TimeList {
+
+        /** Append T, which is larger than any time already present. */
+        void add(long t) {
+            if (_count == _times.length) {
+                _times = Arrays.copyOf(_times, 2 * _count);
+            }
+            _times[_count++] = t;
+        }
+
+        /** Return the schedule of my times, taking those from START to
+         *  START + PERIOD as the periodic part (if PERIOD is not 0). */
+        KeystrokeSchedule schedule(long start, long period) {
+            int k = (int) countBefore(Arrays.copyOf(_times, _count), start);
+            long[] tail = Arrays.copyOf(_times, k);
+            long[] offsets = new long[_count - k];
+            for (int i = k; i < _count; i++) {
+                offsets[i - k] = _times[i] - start;
+            }
+            return new KeystrokeSchedule(tail, start, period, offsets);
+        }
+
+        /** The times, in _times[0 .. _count-1]. */
+        private long[] _times = new long[16];
+        /** Number of times. */
+        private int _count;
+    }
+
+    /** Keystrokes before _start, in increasing order. */
+    private final long[] _tail;
+
+    /** Start of the periodic part. */
+    private final long _start;
+
+    /** Length of the period, or 0 if there is no periodic part. */
+    private final long _period;
+
+    /** Offsets within each period, in increasing order. */
+    private final long[] _offsets;
+
+}
@@ -0,0 +1,291 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** A load test of SessionServer, run as
+ *
+ *      java enigma.LoadTest [--port PORT] [--sessions N] [--requests R]
+ *                           [--length L]
+ *
+ *  It opens N concurrent sessions (default 10000) with the server on
+ *  loopback port PORT, or, if no port is given, with a server it starts
+ *  itself using the naval rotors.  Each session sends a settings line
+ *  and then R messages (default 20) of L letters (default 100), one at a
+ *  time, waiting for each reply.  All sessions are driven by one thread
+ *  through a selector, so that the client side does not limit the
+ *  number of sessions.  It reports the number of requests per second,
+ *  and the median, 99th percentile and largest time from sending a
+ *  message to receiving its reply.
+ *  @author Pranav Bhimani
+ */
+public class LoadTest {
+
+    /** Number of connections that may be in progress at once. */
+    static final int MAX_CONNECTING = 256;
+
+    /** Start of a reply reporting an error. */
+    static final String ERR_PREFIX = "ERR ";
+
+    /** Run the load test described by ARGS (see above). */
+    public static void main(String... args) throws IOException {
+        int port = 0, sessions = 10000, requests = 20, length = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+            case "--port":
+                port = value;
+                break;
+            case "--sessions":
+                sessions = value;
+                break;
+            case "--requests":
+                requests = value;
+                break;
+            case "--length":
+                length = value;
+                break;
+            default:
+                System.err.printf("Error: unknown option %s%n", args[i]);
+                System.exit(1);
+            }
+        }
+        SessionServer server = null;
+        if (port == 0) {
+            server = new SessionServer(navalCatalog(), 0);
+            port = server.port();
+            Thread thread = new Thread(server::serve);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        LoadTest test = new LoadTest(port, sessions, requests, length);
+        test.run();
+        test.report();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /** Return the rotors of Benchmark.NAVAL_CONFIG. */
+    static RotorCatalog navalCatalog() throws IOException {
+        File config = File.createTempFile("naval", ".conf");
+        config.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(config)) {
+            out.print(Benchmark.NAVAL_CONFIG);
+        }
+        return Main.readCatalog(config.getPath());
+    }
+
+    /** A test of SESSIONS sessions with the server on loopback port PORT,
+     *  each sending REQUESTS messages of LENGTH letters. */
+    LoadTest(int port, int sessions, int requests, int length) {
+        _address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         port);
+        _sessions = sessions;
+        _requests = requests;
+        _latencies = new long[sessions * requests];
+        Random rand = new Random(0);
+        char[] message = Benchmark.randomMessage(length, rand);
+        _settings = bytes("* B Beta I II III " + randomSetting(rand) + "\n");
+        _message = bytes(new String(message) + "\n");
+    }
+
+    /** Return four random letters from RAND. */
+    private static String randomSetting(Random rand) {
+        return new String(Benchmark.randomMessage(4, rand));
+    }
+
+    /** Return the bytes of TEXT. */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Run all the sessions to completion. */
+    void run() throws IOException {
+        Selector selector = Selector.open();
+        int opened = 0, connecting = 0, finished = 0;
+        long start = System.nanoTime();
+        while (finished < _sessions) {
+            while (opened < _sessions && connecting < MAX_CONNECTING) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Session session = new Session(channel);
+                if (channel.connect(_address)) {
+                    session.send(_settings);
+                    channel.register(selector, SelectionKey.OP_WRITE,
+                                     session);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT,
+                                     session);
+                    connecting += 1;
+                }
+                opened += 1;
+            }
+            selector.select();
+            for (SelectionKey key : selector.selectedKeys()) {
+                Session session = (Session) key.attachment();
+                if (key.isConnectable()) {
+                    session._channel.finishConnect();
+                    connecting -= 1;
+                    session.send(_settings);
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (key.isWritable()) {
+                    session.write(key);
+                } else if (key.isReadable() && session.read(key)) {
+                    finished += 1;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        _nanos = System.nanoTime() - start;
+        selector.close();
+    }
+
+    /** Print the results. */
+    void report() {
+        long[] done = Arrays.copyOf(_latencies, _completed);
+        Arrays.sort(done);
+        System.out.printf("sessions=%d requests=%d errors=%d%n",
+                          _sessions, _completed, _errors);
+        System.out.printf("throughput %.0f requests/s%n",
+                          _completed * 1e9 / _nanos);
+        if (done.length > 0) {
+            System.out.printf("latency p50 %.3f ms  p99 %.3f ms  "
+                              + "max %.3f ms%n",
+                              percentile(done, 0.50) / 1e6,
+                              percentile(done, 0.99) / 1e6,
+                              done[done.length - 1] / 1e6);
+        }
+    }
+
+    /** Return the P-th quantile of the sorted values SORTED. */
+    static long percentile(long[] sorted, double p) {
+        int k = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, k))];
+    }
+
+    /** Return the number of messages answered. */
+    int completed() {
+        return _completed;
+    }
+
+    /** Return the number of requests answered with ERR. */
+    int errors() {
+        return _errors;
+    }
+
+    /** The state of one session. */
+    private class Session {
+
+        /** A session on CHANNEL. */
+        Session(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        /** Start sending REQUEST. */
+        void send(byte[] request) {
+            _out = ByteBuffer.wrap(request);
+            _sent = System.nanoTime();
+        }
+
+        /** Continue sending my request on the channel of KEY, and wait for
+         *  the reply once it has all been sent. */
+        void write(SelectionKey key) throws IOException {
+            _channel.write(_out);
+            if (!_out.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /** Read what there is of the reply on the channel of KEY.  If it is
+         *  complete, record it and send my next request.  Return true iff
+         *  that completes this session. */
+        boolean read(SelectionKey key) throws IOException {
+            if (_channel.read(_in) < 0) {
+                _errors += 1;
+                key.cancel();
+                _channel.close();
+                return true;
+            }
+            int end = _in.position();
+            if (end == 0 || _in.get(end - 1) != '\n') {
+                if (!_in.hasRemaining()) {
+                    _in = ByteBuffer.allocate(2 * _in.capacity())
+                        .put(_in.flip());
+                }
+                return false;
+            }
+            if (isError(_in, end)) {
+                _errors += 1;
+            }
+            _in.clear();
+            if (_replies > 0) {
+                _latencies[_completed++] = System.nanoTime() - _sent;
+            }
+            _replies += 1;
+            if (_replies > _requests) {
+                key.cancel();
+                _channel.close();
+                return true;
+            }
+            send(_message);
+            key.interestOps(SelectionKey.OP_WRITE);
+            return false;
+        }
+
+        /** Return true iff the reply IN[0 .. END-1] is an ERR reply. */
+        private static boolean isError(ByteBuffer in, int end) {
+            for (int i = 0; i < ERR_PREFIX.length(); i++) {
+                if (i >= end || in.get(i) != ERR_PREFIX.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** My connection. */
+        private final SocketChannel _channel;
+        /** The rest of the request being sent. */
+        private ByteBuffer _out;
+        /** The reply read so far. */
+        private ByteBuffer _in = ByteBuffer.allocate(256);
+        /** Time at which the current request was sent. */
+        private long _sent;
+        /** Number of replies received. */
+        private int _replies;
+    }
+
+    /** Address of the server. */
+    private final InetSocketAddress _address;
+    /** Number of sessions. */
+    private final int _sessions;
+    /** Number of messages sent by each session. */
+    private final int _requests;
+    /** Settings line sent first by each session. */
+    private final byte[] _settings;
+    /** Message sent by each session. */
+    private final byte[] _message;
+    /** Time from sending each message to receiving its reply. */
+    private final long[] _latencies;
+    /** Number of messages answered. */
+    private int _completed;
+    /** Number of requests answered with ERR, or not answered. */
+    private int _errors;
+    /** Duration of the test. */
+    private long _nanos;
+}
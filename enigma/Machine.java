@@ -1,11 +1,47 @@
 package enigma;
 
 
-import java.util.ArrayList;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors come
+ *  from a shared, immutable RotorCatalog; the setting and ring setting of
+ *  each slot are held by the machine itself as small primitive arrays,
+ *  so independent machines built from one catalog may run concurrently.
+ *
+ *  Since only the rightmost rotor moves on most keystrokes, the machine
+ *  caches the composite permutation of everything to the left of that
+ *  rotor (the reflector and the rotors on both passes of the signal),
+ *  rebuilding it only when one of those rotors moves.
+ *
+ *  Optionally (see setTableBudget), a machine materializes its entire
+ *  behavior for the current rotors, ring settings and plugboard: for
+ *  every combination of positions of its rotating rotors, the full
+ *  substitution and the combination reached on the next keystroke.  A
+ *  conversion is then two array loads.
+ *
+ *  Long messages may be converted in parallel (see convertParallel):
+ *  each worker positions its own copy of the rotor settings at the start
+ *  of its chunk with KeystrokeSchedule, so chunks are independent.
+ *
+ *  The whole state of a machine can be captured in a snapshot (see
+ *  snapshot and snapshotBytes) and restored, in time independent of the
+ *  message converted so far and without creating objects.  The long
+ *  and int[] forms hold the plugboard's number in a PlugboardTable of
+ *  the caller's, so they may be restored only with that table, into
+ *  machines sharing my catalog; the byte[] form holds the plugboard
+ *  itself, so it may be restored into any machine built from the same
+ *  configuration.
  *  @author Pranav Bhimani
  */
 class Machine {
@@ -15,11 +51,60 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _pawls = pawls;
-        _allRotors = allRotors;
+        this(new RotorCatalog(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine using the rotors and shape given by
+     *  CATALOG. */
+    Machine(RotorCatalog catalog) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _numRotors = catalog.numRotors();
+        _pawls = catalog.numPawls();
         _activeRotor = new Rotor[_numRotors];
+        _settings = new int[_numRotors];
+        _rings = new int[_numRotors];
+        _origin = new int[_numRotors];
+        _rotorIndex = new int[_numRotors];
+        _chosen = new int[_numRotors];
+        _seen = new int[Integer.highestOneBit(_numRotors) * 4];
+        _stack = new int[_alphabet.size()];
+        _fields = new int[3 * _numRotors - 1];
+        _mapping = new int[_alphabet.size()];
+        _inverse = new int[_alphabet.size()];
+        boolean bytes = true;
+        for (int i = 0; i < _alphabet.size(); i++) {
+            bytes &= _alphabet.toChar(i) <= 0xff;
+        }
+        _byteAlphabet = bytes;
+        long radix = 1;
+        for (int i = 1; i < _fields.length && radix > 0; i++) {
+            long digit = fieldRadix(i);
+            radix = digit == 0 || radix > Long.MAX_VALUE / digit
+                ? -1 : radix * digit;
+        }
+        _snapshotRadix = radix;
+    }
+
+    /** A new machine sharing the catalog of OTHER and in the same state:
+     *  the same rotors, settings, ring settings and plugboard.  The two
+     *  machines then move independently. */
+    Machine(Machine other) {
+        this(other._catalog);
+        System.arraycopy(other._activeRotor, 0, _activeRotor, 0, _numRotors);
+        System.arraycopy(other._settings, 0, _settings, 0, _numRotors);
+        System.arraycopy(other._rings, 0, _rings, 0, _numRotors);
+        System.arraycopy(other._origin, 0, _origin, 0, _numRotors);
+        System.arraycopy(other._rotorIndex, 0, _rotorIndex, 0, _numRotors);
+        _plugboard = other._plugboard;
+        _numberedIn = other._numberedIn;
+        _plugboardId = other._plugboardId;
+        _tableBudget = other._tableBudget;
+        _table = other._table;
+        _next = other._next;
+        _moving = other._moving;
+        _state = other._state;
+        _tableFailed = other._tableFailed;
     }
 
     /** Return the number of rotor slots I have. */
@@ -32,29 +117,53 @@ class Machine {
         return _pawls;
     }
 
+    /** Return the catalog my rotors come from. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  available rotors (ROTORS[0] names the reflector).  Each name must
+     *  be that of an available rotor, and no rotor may be used twice.
+     *  Initially, all rotors are set at their 0 setting, with ring
+     *  setting 0.  Takes time proportional to the number of slots,
+     *  however many rotors are available. */
     void insertRotors(String[] rotors) {
         if (rotors.length != _numRotors) {
             throw new EnigmaException("Sizes are not equal!");
         }
+        Arrays.fill(_seen, RotorCatalog.NOT_PRESENT);
         for (int i = 0; i < rotors.length; i++) {
-            for (int j = 0; j < _allRotors.size(); j++) {
-                Rotor check = (Rotor) (_allRotors.toArray()[j]);
-                if (rotors[i].equals(check.name())) {
-                    _activeRotor[i] = check;
+            int index = _catalog.indexOf(rotors[i]);
+            if (index == RotorCatalog.NOT_PRESENT) {
+                throw error("Rotor %s is not in the configuration!",
+                            rotors[i]);
+            }
+            int h = index & (_seen.length - 1);
+            while (_seen[h] != RotorCatalog.NOT_PRESENT) {
+                if (_seen[h] == index) {
+                    throw error("Cannot repeat rotors!");
                 }
+                h = (h + 1) & (_seen.length - 1);
             }
+            _seen[h] = index;
+            _chosen[i] = index;
         }
-
-        if (!(_activeRotor[_activeRotor.length - 1] instanceof MovingRotor)) {
+        List<Rotor> available = _catalog.rotors();
+        if (!(available.get(_chosen[_numRotors - 1])
+              instanceof MovingRotor)) {
             throw error("Final rotor must be a moving rotor!");
         }
-
-        if (!(_activeRotor[0] instanceof Reflector)) {
+        if (!(available.get(_chosen[0]) instanceof Reflector)) {
             throw error("First rotor must be a reflector!");
         }
+        invalidateTable();
+        for (int i = 0; i < rotors.length; i++) {
+            _rotorIndex[i] = _chosen[i];
+            _activeRotor[i] = available.get(_chosen[i]);
+            _settings[i] = _rings[i] = _origin[i] = 0;
+        }
+        _stackValid = false;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -67,73 +176,898 @@ class Machine {
             }
         }
         for (int i = 0; i < setting.length(); i++) {
-            _activeRotor[i + 1].set(setting.charAt(i));
+            if (!_activeRotor[i + 1].rotates()
+                && _settings[i + 1] != _alphabet.toInt(setting.charAt(i))) {
+                invalidateTable();
+            }
         }
+        for (int i = 0; i < setting.length(); i++) {
+            _settings[i + 1] = _alphabet.toInt(setting.charAt(i));
+        }
+        System.arraycopy(_settings, 0, _origin, 0, _numRotors);
+        if (_table != null) {
+            _state = encodeState(_settings);
+        }
+        _stackValid = false;
+    }
+
+    /** Advance my rotors as N calls to convert would, in time that does
+     *  not depend on N. */
+    void advance(long n) {
+        if (n < 0) {
+            throw error("cannot advance by a negative count");
+        }
+        syncSettings();
+        KeystrokeSchedule.advance(_activeRotor, _settings, n);
+        if (_table != null) {
+            _state = encodeState(_settings);
+        }
+        _stackValid = false;
+    }
+
+    /** Put my rotors where they would be after N conversions following
+     *  the last call to setRotors. */
+    void seek(long n) {
+        System.arraycopy(_origin, 0, _settings, 0, _numRotors);
+        if (_table != null) {
+            _state = encodeState(_settings);
+        }
+        advance(n);
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, which must
+     *  be a string of numRotors()-1 characters in my alphabet, given
+     *  in the same order as for setRotors. */
+    void setRingSettings(String rings) {
+        for (int i = 0; i < rings.length(); i++) {
+            if (!_alphabet.contains(rings.charAt(i))) {
+                throw error("Ring settings must contain characters "
+                            + "from alphabet!");
+            }
+        }
+        invalidateTable();
+        for (int i = 0; i < rings.length(); i++) {
+            _rings[i + 1] = _alphabet.toInt(rings.charAt(i));
+        }
+        _stackValid = false;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        invalidateTable();
         _plugboard = plugboard;
+        _numberedIn = null;
+        _plugboardId = -1;
+    }
+
+    /** Return my state (my rotors, their settings and ring settings,
+     *  and my plugboard) as a non-negative long, or NO_SNAPSHOT if it
+     *  does not fit in one, in which case snapshotBytes will serve.
+     *  Each field is a digit in a mixed radix: the catalog index of the
+     *  rotor in each slot, the setting and ring setting of each slot but
+     *  the reflector's, and, most significant, the number of my
+     *  plugboard in PLUGBOARDS, which gains a reference to it (see
+     *  plugboardNumber).  The snapshot may be restored with PLUGBOARDS
+     *  into any machine sharing my catalog until that reference is
+     *  released.  Only the numbers below snapshotPlugboards() fit (177
+     *  for the naval rotors), so NO_SNAPSHOT is the normal result, not
+     *  a rare one, once PLUGBOARDS holds more plugboards than that or
+     *  is full; callers must be ready for it.  No reference is gained
+     *  then. */
+    long snapshot(PlugboardTable plugboards) {
+        if (_snapshotRadix < 0) {
+            return NO_SNAPSHOT;
+        }
+        fillFields(plugboards);
+        if (_fields[0] < 0) {
+            return NO_SNAPSHOT;
+        }
+        if (_fields[0] >= snapshotPlugboards()) {
+            plugboards.release(_fields[0]);
+            return NO_SNAPSHOT;
+        }
+        long value = 0;
+        for (int i = 1; i < _fields.length; i++) {
+            value = value * fieldRadix(i) + _fields[i];
+        }
+        return _fields[0] * _snapshotRadix + value;
+    }
+
+    /** Return the number of plugboard numbers that fit in the snapshots
+     *  returned by snapshot(PlugboardTable), or 0 if none do. */
+    int snapshotPlugboards() {
+        if (_snapshotRadix < 0) {
+            return 0;
+        }
+        long count = (Long.MAX_VALUE - _snapshotRadix + 1) / _snapshotRadix
+            + 1;
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /** Return the number in its PlugboardTable of the plugboard of
+     *  SNAPSHOT, a value other than NO_SNAPSHOT returned by snapshot on
+     *  a machine sharing my catalog.  Its owner passes this number to
+     *  PlugboardTable.release when it discards the snapshot. */
+    int plugboardNumber(long snapshot) {
+        if (snapshot < 0 || _snapshotRadix < 0) {
+            throw error("invalid snapshot");
+        }
+        return (int) (snapshot / _snapshotRadix);
+    }
+
+    /** Restore the state captured by SNAPSHOT, a value returned by
+     *  snapshot(PLUGBOARDS) on a machine sharing my catalog, whose
+     *  reference to its plugboard is still held.  A following
+     *  setRotors call is unnecessary: seek counts from the restored
+     *  settings.  Creates no objects. */
+    void restore(long snapshot, PlugboardTable plugboards) {
+        int id = plugboardNumber(snapshot);
+        long value = snapshot % _snapshotRadix;
+        for (int i = _fields.length - 1; i > 0; i--) {
+            int radix = fieldRadix(i);
+            _fields[i] = (int) (value % radix);
+            value /= radix;
+        }
+        _fields[0] = id;
+        applyFields(plugboards, id);
+    }
+
+    /** Return the number of bytes in the snapshots written by
+     *  snapshotBytes. */
+    int snapshotSize() {
+        return (_fields.length - 1 + _alphabet.size()) * Integer.BYTES;
+    }
+
+    /** Return my state as an array of snapshotSize() bytes.  Unlike
+     *  snapshot, this works for any machine and any plugboard, needs no
+     *  PlugboardTable, and may be restored in another process. */
+    byte[] snapshotBytes() {
+        byte[] result = new byte[snapshotSize()];
+        snapshot(result, 0);
+        return result;
+    }
+
+    /** Write my state into DST[OFF .. OFF+snapshotSize()-1], in the
+     *  form returned by snapshotBytes: the fields described at
+     *  snapshot but the plugboard number, in the same order, and then
+     *  the image under my plugboard of each index of my alphabet, as
+     *  big-endian ints. */
+    void snapshot(byte[] dst, int off) {
+        fillRotorFields();
+        for (int i = 1; i < _fields.length; i++) {
+            off = putInt(dst, off, _fields[i]);
+        }
+        for (int c = 0; c < _mapping.length; c++) {
+            off = putInt(dst, off, _plugboard.permute(c));
+        }
+    }
+
+    /** Write VALUE into DST[OFF .. OFF+3] as a big-endian int, and return
+     *  the index just past it. */
+    private static int putInt(byte[] dst, int off, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            dst[off++] = (byte) (value >>> shift);
+        }
+        return off;
+    }
+
+    /** Return the big-endian int in SRC[OFF .. OFF+3]. */
+    private static int getInt(byte[] src, int off) {
+        int result = 0;
+        for (int k = 0; k < Integer.BYTES; k++) {
+            result = (result << 8) | (src[off + k] & 0xff);
+        }
+        return result;
+    }
+
+    /** Restore the state captured in SRC[OFF .. OFF+snapshotSize()-1]
+     *  by snapshot(byte[], int) or snapshotBytes on a machine built from
+     *  the same configuration as mine, as for restore(long,
+     *  PlugboardTable).  Creates no objects unless the plugboard differs
+     *  from mine. */
+    void restore(byte[] src, int off) {
+        if (off < 0 || src.length - off < snapshotSize()) {
+            throw error("invalid snapshot");
+        }
+        for (int i = 1; i < _fields.length; i++, off += Integer.BYTES) {
+            _fields[i] = getInt(src, off);
+        }
+        Arrays.fill(_inverse, -1);
+        for (int c = 0; c < _mapping.length; c++, off += Integer.BYTES) {
+            int image = getInt(src, off);
+            if (image < 0 || image >= _mapping.length
+                || _inverse[image] != -1) {
+                throw error("invalid snapshot");
+            }
+            _mapping[c] = image;
+            _inverse[image] = c;
+        }
+        checkFields();
+        if (_plugboard == null || !hasMapping(_plugboard)) {
+            applyFields(new Permutation(_mapping.clone(), _inverse.clone(),
+                                        _alphabet), null, -1);
+        } else {
+            applyFields(_plugboard, _numberedIn, _plugboardId);
+        }
+    }
+
+    /** Return true iff PLUGBOARD maps each index I to _mapping[I]. */
+    private boolean hasMapping(Permutation plugboard) {
+        for (int c = 0; c < _mapping.length; c++) {
+            if (plugboard.permute(c) != _mapping[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of ints in the snapshots written by
+     *  snapshot(int[], int). */
+    int snapshotFields() {
+        return _fields.length;
+    }
+
+    /** Write my state into DST[OFF .. OFF+snapshotFields()-1]: the
+     *  fields described at snapshot, in the same order, one to an int,
+     *  so that DST[OFF] is the number of my plugboard in PLUGBOARDS,
+     *  which gains a reference to it, as for snapshot(PlugboardTable).
+     *  Reports an error if PLUGBOARDS is full.  Creates no objects
+     *  unless my plugboard is new to PLUGBOARDS. */
+    void snapshot(int[] dst, int off, PlugboardTable plugboards) {
+        fillFields(plugboards);
+        if (_fields[0] < 0) {
+            throw error("plugboard table is full");
+        }
+        System.arraycopy(_fields, 0, dst, off, _fields.length);
+    }
+
+    /** Restore the state captured in SRC[OFF .. OFF+snapshotFields()-1]
+     *  by snapshot(int[], int, PLUGBOARDS) on a machine sharing my
+     *  catalog, as for restore(long, PlugboardTable).  Creates no
+     *  objects. */
+    void restore(int[] src, int off, PlugboardTable plugboards) {
+        if (off < 0 || src.length - off < _fields.length) {
+            throw error("invalid snapshot");
+        }
+        System.arraycopy(src, off, _fields, 0, _fields.length);
+        checkFields();
+        applyFields(plugboards, _fields[0]);
+    }
+
+    /** Check that each value in _fields but the plugboard number is in
+     *  range. */
+    private void checkFields() {
+        for (int i = 1; i < _fields.length; i++) {
+            if (_fields[i] < 0 || _fields[i] >= fieldRadix(i)) {
+                throw error("invalid snapshot");
+            }
+        }
+    }
+
+    /** Return the range of field I of a snapshot: the number of rotors
+     *  in my catalog for a rotor index, or else the size of my
+     *  alphabet. */
+    private int fieldRadix(int i) {
+        return i <= _numRotors ? _catalog.rotors().size() : _alphabet.size();
+    }
+
+    /** Fill _fields with my state, as described at snapshot, adding a
+     *  reference to my plugboard in PLUGBOARDS, or with a plugboard
+     *  number of -1 if PLUGBOARDS is full. */
+    private void fillFields(PlugboardTable plugboards) {
+        fillRotorFields();
+        if (_numberedIn != plugboards
+            || !plugboards.retain(_plugboardId, _plugboard)) {
+            _plugboardId = plugboards.acquire(_plugboard);
+            _numberedIn = _plugboardId < 0 ? null : plugboards;
+        }
+        _fields[0] = _plugboardId;
+    }
+
+    /** Fill _fields but the plugboard number with my state. */
+    private void fillRotorFields() {
+        if (_activeRotor[0] == null || _plugboard == null) {
+            throw error("machine is not set up");
+        }
+        syncSettings();
+        for (int i = 0; i < _numRotors; i++) {
+            _fields[1 + i] = _rotorIndex[i];
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            _fields[_numRotors + i] = _settings[i];
+            _fields[2 * _numRotors - 1 + i] = _rings[i];
+        }
+    }
+
+    /** Take on the state in _fields, whose rotor values are in range,
+     *  with the plugboard numbered ID in PLUGBOARDS. */
+    private void applyFields(PlugboardTable plugboards, int id) {
+        Permutation plugboard = plugboards.plugboard(id);
+        if (plugboard == null) {
+            throw error("invalid snapshot");
+        }
+        applyFields(plugboard, plugboards, id);
+    }
+
+    /** Take on the state in _fields, whose values are in range, but for
+     *  the plugboard, which is PLUGBOARD, numbered ID in PLUGBOARDS (or
+     *  null and -1).  Keeps any substitution table if only the positions
+     *  of rotating rotors change. */
+    private void applyFields(Permutation plugboard,
+                             PlugboardTable plugboards, int id) {
+        List<Rotor> available = _catalog.rotors();
+        if (!(available.get(_fields[1]) instanceof Reflector)
+            || !(available.get(_fields[_numRotors]) instanceof MovingRotor)) {
+            throw error("invalid snapshot");
+        }
+        boolean same = plugboard == _plugboard;
+        for (int i = 0; i < _numRotors && same; i++) {
+            Rotor rotor = available.get(_fields[1 + i]);
+            same = rotor == _activeRotor[i]
+                && (i == 0 || (ring(i) == _rings[i]
+                               && (rotor.rotates()
+                                   || setting(i) == _settings[i])));
+        }
+        if (!same) {
+            invalidateTable();
+        }
+        for (int i = 0; i < _numRotors; i++) {
+            _rotorIndex[i] = _fields[1 + i];
+            _activeRotor[i] = available.get(_rotorIndex[i]);
+            _settings[i] = _origin[i] = i == 0 ? 0 : setting(i);
+            _rings[i] = i == 0 ? 0 : ring(i);
+        }
+        _plugboard = plugboard;
+        _numberedIn = plugboards;
+        _plugboardId = id;
+        if (_table != null) {
+            _state = encodeState(_settings);
+        }
+        _stackValid = false;
+    }
+
+    /** Put me in the state of OTHER, which must share my catalog: the
+     *  same rotors, settings, ring settings, plugboard and seek origin.
+     *  As for restore, I keep any substitution table if only the
+     *  positions of rotating rotors change.  Creates no objects. */
+    void copyState(Machine other) {
+        if (other._catalog != _catalog) {
+            throw error("machines do not share a catalog");
+        }
+        other.syncSettings();
+        boolean same = other._plugboard == _plugboard;
+        for (int i = 0; i < _numRotors && same; i++) {
+            Rotor rotor = other._activeRotor[i];
+            same = rotor == _activeRotor[i]
+                && other._rings[i] == _rings[i]
+                && (rotor.rotates() || other._settings[i] == _settings[i]);
+        }
+        if (!same) {
+            invalidateTable();
+        }
+        System.arraycopy(other._activeRotor, 0, _activeRotor, 0, _numRotors);
+        System.arraycopy(other._settings, 0, _settings, 0, _numRotors);
+        System.arraycopy(other._rings, 0, _rings, 0, _numRotors);
+        System.arraycopy(other._origin, 0, _origin, 0, _numRotors);
+        System.arraycopy(other._rotorIndex, 0, _rotorIndex, 0, _numRotors);
+        _plugboard = other._plugboard;
+        _numberedIn = other._numberedIn;
+        _plugboardId = other._plugboardId;
+        if (_table != null) {
+            _state = encodeState(_settings);
+        }
+        _stackValid = false;
+    }
+
+    /** Return the setting of slot I > 0 in _fields. */
+    private int setting(int i) {
+        return _fields[_numRotors + i];
+    }
+
+    /** Return the ring setting of slot I > 0 in _fields. */
+    private int ring(int i) {
+        return _fields[2 * _numRotors - 1 + i];
+    }
+
+    /** Allow up to BYTES of memory for a materialized substitution table
+     *  (0, the default, disables it).  The table is built on the next
+     *  conversion after the rotors, ring settings or plugboard change,
+     *  provided it fits; otherwise the machine converts normally. */
+    void setTableBudget(long bytes) {
+        invalidateTable();
+        _tableBudget = bytes;
+    }
+
+    /** Return true iff conversions currently go through a materialized
+     *  substitution table. */
+    boolean usingTable() {
+        return _table != null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (_table == null && _tableBudget > 0 && !_tableFailed) {
+            buildTable();
+        }
+        if (_table != null) {
+            _state = _next[_state];
+            return _table[_state * _alphabet.size() + c];
+        }
         int plugChange = _plugboard.permute(c);
 
-        ArrayList<Integer> advanceArray = new ArrayList<Integer>();
-        for (int i = _activeRotor.length - 2; i > 0; i--) {
-            if (((_activeRotor[i].atNotch())
-                    && _activeRotor[i - 1].rotates())
-                    || _activeRotor[i + 1].atNotch()) {
-                advanceArray.add(i);
+        if (step(_settings) || !_stackValid) {
+            fillStack(_settings, _stack);
+            _stackValid = true;
+        }
+
+        int last = _numRotors - 1;
+        Rotor fast = _activeRotor[last];
+        int offset = offset(_settings, last);
+        plugChange = fast.convertForward(plugChange, offset);
+        plugChange = _stack[plugChange];
+        plugChange = fast.convertBackward(plugChange, offset);
+
+        plugChange = _plugboard.permute(plugChange);
+
+        return plugChange;
+    }
+
+    /** Advance SETTINGS, the settings of each of my rotor slots, by one
+     *  keystroke.  Return true iff a rotor other than the rightmost one
+     *  moved. */
+    private boolean step(int[] settings) {
+        return step(_activeRotor, settings, _alphabet.size());
+    }
+
+    /** Advance SETTINGS, the settings of the rotors ROTORS of a machine
+     *  on an alphabet of SIZE characters, by one keystroke.  Return true
+     *  iff a rotor other than the rightmost one moved. */
+    static boolean step(Rotor[] rotors, int[] settings, int size) {
+        boolean moved = false;
+        int last = settings.length - 1;
+        boolean carry = rotors[last].atNotch(settings[last]);
+        for (int i = last - 1; i > 0; i--) {
+            Rotor rotor = rotors[i];
+            boolean notch = rotor.atNotch(settings[i]);
+            if (rotor.rotates()
+                && (carry || (notch && rotors[i - 1].rotates()))) {
+                settings[i] = settings[i] + 1 == size ? 0 : settings[i] + 1;
+                moved = true;
             }
+            carry = notch;
         }
+        settings[last] = settings[last] + 1 == size ? 0 : settings[last] + 1;
+        return moved;
+    }
+
+    /** Return P modulo the size of my alphabet. */
+    private int wrap(int p) {
+        int r = p % _alphabet.size();
+        return r < 0 ? r + _alphabet.size() : r;
+    }
 
-        for (int i = 0; i < advanceArray.size(); i++) {
-            _activeRotor[advanceArray.get(i)].advance();
+    /** Return the offset (setting less ring setting) of the rotor in
+     *  SLOT when my rotors are at SETTINGS. */
+    private int offset(int[] settings, int slot) {
+        return wrap(settings[slot] - _rings[slot]);
+    }
+
+    /** Return the conversion of C with my rotors at SETTINGS. */
+    private int convertAt(int[] settings, int c) {
+        int p = _plugboard.permute(c);
+        int last = settings.length - 1;
+        for (int i = last; i >= 0; i--) {
+            p = _activeRotor[i].convertForward(p, offset(settings, i));
+        }
+        for (int i = 1; i <= last; i++) {
+            p = _activeRotor[i].convertBackward(p, offset(settings, i));
         }
+        return _plugboard.permute(p);
+    }
 
-        _activeRotor[_activeRotor.length - 1].advance();
+    /** Bring _settings up to date with the table state, if I am using a
+     *  table. */
+    private void syncSettings() {
+        if (_table != null) {
+            decodeState(_state, _settings);
+        }
+    }
 
-        for (int i = _activeRotor.length - 1; i >= 0; i--) {
-            plugChange = _activeRotor[i].convertForward(plugChange);
+    /** Return the slots of my rotors that rotate. */
+    private int[] movingSlots() {
+        int count = 0;
+        for (Rotor rotor : _activeRotor) {
+            count += rotor.rotates() ? 1 : 0;
         }
-        for (int i = 1; i < _activeRotor.length; i++) {
-            plugChange = _activeRotor[i].convertBackward(plugChange);
+        int[] result = new int[count];
+        for (int i = _activeRotor.length - 1; i > 0; i--) {
+            if (_activeRotor[i].rotates()) {
+                result[--count] = i;
+            }
         }
+        return result;
+    }
 
-        plugChange = _plugboard.permute(plugChange);
+    /** Return the table state number for the positions of the moving
+     *  rotors in SETTINGS. */
+    private int encodeState(int[] settings) {
+        int state = 0;
+        for (int slot : _moving) {
+            state = state * _alphabet.size() + settings[slot];
+        }
+        return state;
+    }
 
-        return plugChange;
+    /** Set the positions of the moving rotors in SETTINGS to those of
+     *  table state STATE. */
+    private void decodeState(int state, int[] settings) {
+        for (int i = _moving.length - 1; i >= 0; i--) {
+            settings[_moving[i]] = state % _alphabet.size();
+            state /= _alphabet.size();
+        }
+    }
+
+    /** Build the substitution table for my current rotors, ring settings
+     *  and plugboard, if it fits in my budget; otherwise note that it
+     *  does not, so that convert uses the normal path. */
+    private void buildTable() {
+        _moving = movingSlots();
+        int size = _alphabet.size();
+        long states = 1;
+        for (int i = 0; i < _moving.length && states <= Integer.MAX_VALUE;
+             i++) {
+            states *= size;
+        }
+        long bytes = states * (size + 1) * Integer.BYTES;
+        if (states * size > Integer.MAX_VALUE || bytes > _tableBudget) {
+            _tableFailed = true;
+            return;
+        }
+        int numStates = (int) states;
+        int[] table = new int[numStates * size];
+        int[] next = new int[numStates];
+        int[] base = _settings.clone();
+        IntStream.range(0, (numStates + BLOCK - 1) / BLOCK).parallel()
+            .forEach(block -> {
+                int[] settings = base.clone();
+                int end = Math.min(numStates, (block + 1) * BLOCK);
+                for (int s = block * BLOCK; s < end; s++) {
+                    decodeState(s, settings);
+                    for (int c = 0; c < size; c++) {
+                        table[s * size + c] = convertAt(settings, c);
+                    }
+                    step(settings);
+                    next[s] = encodeState(settings);
+                }
+            });
+        _table = table;
+        _next = next;
+        _state = encodeState(base);
+    }
+
+    /** Discard any substitution table, first bringing my settings up to
+     *  the state it had reached. */
+    private void invalidateTable() {
+        syncSettings();
+        if (_table != null) {
+            _stackValid = false;
+        }
+        _table = _next = null;
+        _tableFailed = false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
         char[] message = msg.toCharArray();
-        for (int i = 0; i < message.length; i++) {
-            message[i] = _alphabet.toChar(convert(_alphabet.toInt(message[i])));
+        if (message.length >= PARALLEL_THRESHOLD) {
+            convertParallel(message, message, ForkJoinPool.commonPool());
+        } else {
+            convert(message, 0, message.length, message, 0);
         }
         return new String(message);
     }
 
+    /** Convert SRC[OFF .. OFF+LEN-1] into DST[DSTOFF .. DSTOFF+LEN-1],
+     *  updating the state of the rotors accordingly.  DST may be SRC if
+     *  DSTOFF <= OFF or the two ranges do not overlap.  Every character
+     *  must be in my alphabet; if one is not, nothing is converted.
+     *  Creates no objects (unless it builds a substitution table). */
+    void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        Objects.checkFromIndexSize(dstOff, len, dst.length);
+        for (int k = off; k < off + len; k++) {
+            checkChar(src[k]);
+        }
+        if (_table == null && _tableBudget > 0 && !_tableFailed) {
+            buildTable();
+        }
+        if (_table != null) {
+            int size = _alphabet.size();
+            int state = _state;
+            for (int k = 0; k < len; k++) {
+                state = _next[state];
+                dst[dstOff + k] = _alphabet.toChar(
+                    _table[state * size + _alphabet.toInt(src[off + k])]);
+            }
+            _state = state;
+            return;
+        }
+        for (int k = 0; k < len; k++) {
+            dst[dstOff + k] =
+                _alphabet.toChar(convert(_alphabet.toInt(src[off + k])));
+        }
+    }
+
+    /** Convert the remaining characters of SRC, putting the results in
+     *  DST, as for convert(char[], int, int, char[], int).  Both buffers
+     *  are advanced past the characters converted.  DST must have room
+     *  for all of them.  Creates no objects. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), len,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+            return;
+        }
+        for (int k = src.position(); k < src.limit(); k++) {
+            checkChar(src.get(k));
+        }
+        while (src.hasRemaining()) {
+            dst.put(_alphabet.toChar(convert(_alphabet.toInt(src.get()))));
+        }
+    }
+
+    /** Convert the remaining bytes of SRC, each taken as the character
+     *  with that code (0 to 255), putting the results in DST as bytes in
+     *  the same way, as for convert(CharBuffer, CharBuffer).  My
+     *  alphabet must consist of such characters; if it does not, or a
+     *  byte is not in it, nothing is converted.  Creates no objects. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        if (!_byteAlphabet) {
+            throw error("alphabet has characters that do not fit in a "
+                        + "byte");
+        }
+        if (dst.remaining() < src.remaining()) {
+            throw new BufferOverflowException();
+        }
+        for (int k = src.position(); k < src.limit(); k++) {
+            checkChar((char) (src.get(k) & 0xff));
+        }
+        while (src.hasRemaining()) {
+            dst.put((byte) _alphabet.toChar(
+                        convert(_alphabet.toInt((char) (src.get() & 0xff)))));
+        }
+    }
+
+    /** Check that C is in my alphabet. */
+    private void checkChar(char c) {
+        if (!_alphabet.contains(c)) {
+            throw error("character %c is not in the alphabet", c);
+        }
+    }
+
+    /** Convert SRC into DST (which may be SRC), using the workers of
+     *  POOL, and leave my rotors as SRC.length conversions would have.
+     *  The result is the same as converting SRC one character at a
+     *  time. */
+    void convertParallel(char[] src, char[] dst, ForkJoinPool pool) {
+        convertParallel(src, dst, 0, src.length, pool);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into the same
+     *  positions of DST (which may be SRC), as for
+     *  convertParallel(SRC, DST, POOL). */
+    void convertParallel(char[] src, char[] dst, int off, int len,
+                         ForkJoinPool pool) {
+        if (_table == null && _tableBudget > 0 && !_tableFailed) {
+            buildTable();
+        }
+        syncSettings();
+        pool.invoke(new Chunk(_settings.clone(), src, dst, off, off,
+                              off + len));
+        advance(len);
+    }
+
+    /** The conversion of part of a message by one worker. */
+    private class Chunk extends RecursiveAction {
+
+        /** Convert SRC[FROM .. TO-1] into DST, where my rotors were at
+         *  START before SRC[BASE]. */
+        Chunk(int[] start, char[] src, char[] dst, int base, int from,
+              int to) {
+            _start = start;
+            _src = src;
+            _dst = dst;
+            _base = base;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > PARALLEL_CHUNK) {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new Chunk(_start, _src, _dst, _base, _from, mid),
+                          new Chunk(_start, _src, _dst, _base, mid, _to));
+                return;
+            }
+            int[] settings = _start.clone();
+            KeystrokeSchedule.advance(_activeRotor, settings, _from - _base);
+            convertRange(settings, _src, _dst, _from, _to);
+        }
+
+        /** Settings before the first character of the message. */
+        private final int[] _start;
+        /** Source message. */
+        private final char[] _src;
+        /** Destination of the conversion. */
+        private final char[] _dst;
+        /** Index of the first character of the whole message. */
+        private final int _base;
+        /** First index of my chunk. */
+        private final int _from;
+        /** Index just past my chunk. */
+        private final int _to;
+    }
+
+    /** Convert SRC[FROM .. TO-1] into DST[FROM .. TO-1], starting with
+     *  my rotors at SETTINGS, which are advanced accordingly.  Does not
+     *  change the state of this machine, so several threads may do this
+     *  at once. */
+    private void convertRange(int[] settings, char[] src, char[] dst,
+                              int from, int to) {
+        int size = _alphabet.size();
+        if (_table != null) {
+            int state = encodeState(settings);
+            for (int k = from; k < to; k++) {
+                state = _next[state];
+                dst[k] = _alphabet.toChar(
+                    _table[state * size + _alphabet.toInt(src[k])]);
+            }
+            return;
+        }
+        int last = settings.length - 1;
+        Rotor fast = _activeRotor[last];
+        int[] stack = new int[size];
+        boolean stackValid = false;
+        for (int k = from; k < to; k++) {
+            int c = _plugboard.permute(_alphabet.toInt(src[k]));
+            if (step(settings) || !stackValid) {
+                fillStack(settings, stack);
+                stackValid = true;
+            }
+            int offset = offset(settings, last);
+            c = fast.convertForward(c, offset);
+            c = stack[c];
+            c = fast.convertBackward(c, offset);
+            dst[k] = _alphabet.toChar(_plugboard.permute(c));
+        }
+    }
+
+    /** Fill STACK with the composite conversion of all my rotors but the
+     *  rightmost one, with my rotors at SETTINGS. */
+    private void fillStack(int[] settings, int[] stack) {
+        int last = settings.length - 1;
+        for (int c = 0; c < stack.length; c++) {
+            int p = c;
+            for (int i = last - 1; i >= 0; i--) {
+                p = _activeRotor[i].convertForward(p, offset(settings, i));
+            }
+            for (int i = 1; i < last; i++) {
+                p = _activeRotor[i].convertBackward(p, offset(settings, i));
+            }
+            stack[c] = p;
+        }
+    }
+
+    /** The rotors available to me. */
+    private final RotorCatalog _catalog;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
     /** Number of rotors. */
-    private int _numRotors;
+    private final int _numRotors;
 
     /** Number of pawls. */
-    private int _pawls;
-
-    /** All possible rotors in a collection. */
-    private Collection<Rotor> _allRotors;
+    private final int _pawls;
 
     /** Rotors in use stored in an array. */
-    protected Rotor[] _activeRotor;
+    private final Rotor[] _activeRotor;
+
+    /** Setting of the rotor in each slot (unused for the reflector, and
+     *  out of date while I am using a table). */
+    private final int[] _settings;
+
+    /** Ring setting of the rotor in each slot. */
+    private final int[] _rings;
 
     /** permutation of the plugboard. */
     private Permutation _plugboard;
+
+    /** Table of the last snapshot taken or restored, if _plugboard has
+     *  not changed since, or null. */
+    private PlugboardTable _numberedIn;
+
+    /** Number of _plugboard in _numberedIn, or -1. */
+    private int _plugboardId = -1;
+
+    /** Index in my catalog of the rotor in each slot. */
+    private final int[] _rotorIndex;
+
+    /** Catalog indices of the rotors being inserted. */
+    private final int[] _chosen;
+
+    /** Open-addressed set of the catalog indices of the rotors being
+     *  inserted, used to find repeats; at least twice as large as the
+     *  number of slots. */
+    private final int[] _seen;
+
+    /** Returned by snapshot when my state does not fit in a long. */
+    static final long NO_SNAPSHOT = -1;
+
+    /** Product of the ranges of all fields of a snapshot but the
+     *  plugboard, or -1 if it exceeds a long. */
+    private final long _snapshotRadix;
+
+    /** The fields of a snapshot being taken or restored. */
+    private final int[] _fields;
+
+    /** True iff every character of my alphabet fits in a byte. */
+    private final boolean _byteAlphabet;
+
+    /** The plugboard of a snapshot being restored from bytes. */
+    private final int[] _mapping;
+
+    /** The inverse of _mapping, or -1 where not yet known. */
+    private final int[] _inverse;
+
+    /** Composite conversion, entering and leaving on the left side of the
+     *  rightmost rotor, of all the rotors to its left. */
+    private final int[] _stack;
+
+    /** True iff _stack reflects the current rotor settings. */
+    private boolean _stackValid;
+
+    /** Settings of my rotor slots as of the last call to setRotors. */
+    private final int[] _origin;
+
+    /** Messages at least this long are converted in parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /** Largest piece of a message converted by one parallel worker. */
+    static final int PARALLEL_CHUNK = 1 << 16;
+
+    /** Number of table states each worker fills at a time. */
+    private static final int BLOCK = 256;
+
+    /** Most bytes a substitution table may occupy; 0 disables it. */
+    private long _tableBudget;
+
+    /** Output for input C in table state S, at S * alphabet size + C, or
+     *  null if there is no current table.  A table is never modified
+     *  once built, so copies of a machine share it. */
+    private int[] _table;
+
+    /** The state following each table state. */
+    private int[] _next;
+
+    /** The current table state, when _table is not null. */
+    private int _state;
+
+    /** True iff the table for the current configuration would exceed
+     *  the budget. */
+    private boolean _tableFailed;
+
+    /** Slots, left to right, of the rotors whose positions make up a
+     *  table state. */
+    private int[] _moving;
 }
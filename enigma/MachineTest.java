@@ -0,0 +1,569 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Pranav Bhimani
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the naval rotors, with their usual notches. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] moving = { "I", "II", "III", "IV", "V",
+                            "VI", "VII", "VIII" };
+        String[] notches = { "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM" };
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                           new Permutation(NAVALA.get(moving[i]), UPPER),
+                           notches[i]));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                           new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                           new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return rotors;
+    }
+
+    /** Return a 5-rotor, 3-pawl naval machine with rotors ROTORS at
+     *  SETTING, ring settings RINGS (or none if null), and plugboard
+     *  CYCLES. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String rings, String cycles) {
+        Machine m = new Machine(UPPER, 5, 3, navalRotors());
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        if (rings != null) {
+            m.setRingSettings(rings);
+        }
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m;
+    }
+
+    /** The rotor order used in the standard test files. */
+    static final String[] STANDARD = { "B", "Beta", "I", "II", "III" };
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTrivial() {
+        Machine m = navalMachine(STANDARD, "AAAA", null, "");
+        assertEquals("ILBDAAMTAZ", m.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void checkPlugboard() {
+        Machine m = navalMachine(STANDARD, "AAAA", null, "(AQ) (EP)");
+        assertEquals("IHBDQQMTQZ", m.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void checkRingsAndDoubleStep() {
+        Machine m = navalMachine(new String[] {"B", "Beta", "III", "IV", "I"},
+                                 "AXLE", "BCFG", "");
+        assertEquals("VUSZKMAGXKOSXCGZVDGYCQI",
+                     m.convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals("ZIZBIYHFCPXGKXUKPNWXKFK",
+                     m.convert("TOOKTHECAMERAOFROSEWOOD"));
+    }
+
+    @Test
+    public void checkInvolution() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        Machine m = navalMachine(new String[] {"C", "Gamma", "VI", "VII",
+                                               "VIII"},
+                                 "QDZL", "AMZB", "(AZ) (QW) (EX)");
+        String cipher = m.convert(msg);
+        m.setRotors("QDZL");
+        assertEquals(msg, m.convert(cipher));
+    }
+
+    @Test
+    public void checkTableMatchesRotors() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(40);
+        String[] rotors = { "C", "Gamma", "VI", "IV", "VIII" };
+        Machine plain = navalMachine(rotors, "QDZL", "AMZB", "(AZ) (QW)");
+        Machine table = navalMachine(rotors, "QDZL", "AMZB", "(AZ) (QW)");
+        table.setTableBudget(1L << 24);
+        assertEquals(plain.convert(msg), table.convert(msg));
+        assertTrue(table.usingTable());
+        table.setRotors("QDZA");
+        plain.setRotors("QDZA");
+        assertEquals(plain.convert(msg), table.convert(msg));
+        assertTrue(table.usingTable());
+        table.setRingSettings("BBBB");
+        plain.setRingSettings("BBBB");
+        table.setTableBudget(1024);
+        assertEquals(plain.convert(msg), table.convert(msg));
+        assertFalse(table.usingTable());
+    }
+
+    /** Check that advancing M by N keystrokes leaves it in the state that
+     *  N conversions would, using REF, an identically set machine. */
+    private void checkAdvance(Machine m, Machine ref, String probe, long n) {
+        for (long i = 0; i < n; i += 1) {
+            ref.convert(0);
+        }
+        m.advance(n);
+        assertEquals("after " + n, ref.convert(probe), m.convert(probe));
+    }
+
+    @Test
+    public void checkAdvanceNaval() {
+        Random rand = new Random(61);
+        String[][] orders = {
+            STANDARD, { "C", "Gamma", "VI", "VII", "VIII" },
+            { "B", "Beta", "V", "VI", "I" },
+            { "B", "Gamma", "VIII", "II", "VI" }
+        };
+        for (String[] order : orders) {
+            for (int trial = 0; trial < 4; trial += 1) {
+                StringBuilder setting = new StringBuilder();
+                for (int i = 0; i < 4; i += 1) {
+                    setting.append((char) ('A' + rand.nextInt(26)));
+                }
+                Machine m = navalMachine(order, setting.toString(),
+                                         "BQAZ", "(AB)");
+                Machine ref = navalMachine(order, setting.toString(),
+                                           "BQAZ", "(AB)");
+                checkAdvance(m, ref, "PROBEPROBE", rand.nextInt(40000));
+            }
+        }
+    }
+
+    /** Return a set of rotors on ALPHA with unusual notches. */
+    private static ArrayList<Rotor> oddRotors(Alphabet alpha) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", alpha)));
+        rotors.add(new MovingRotor("M1", new Permutation("(ACE)", alpha),
+                                   "AB"));
+        rotors.add(new MovingRotor("M2", new Permutation("(BDF)", alpha),
+                                   "CDE"));
+        rotors.add(new MovingRotor("M3", new Permutation("(AF)(BC)", alpha),
+                                   "F"));
+        rotors.add(new MovingRotor("M4", new Permutation("(ABCDEF)", alpha),
+                                   "ABCDEF"));
+        rotors.add(new FixedRotor("N", new Permutation("(AD)", alpha)));
+        return rotors;
+    }
+
+    @Test
+    public void checkAdvanceOddNotches() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        String[][] orders = {
+            { "R", "M1", "M2", "M3", "M4" }, { "R", "M2", "N", "M1", "M3" },
+            { "R", "M4", "M1", "M2", "M3" }, { "R", "N", "M3", "M4", "M2" }
+        };
+        Random rand = new Random(3);
+        for (String[] order : orders) {
+            for (int trial = 0; trial < 20; trial += 1) {
+                Machine[] pair = new Machine[2];
+                StringBuilder setting = new StringBuilder();
+                for (int i = 0; i < 4; i += 1) {
+                    setting.append(alpha.toChar(rand.nextInt(6)));
+                }
+                for (int k = 0; k < 2; k += 1) {
+                    pair[k] = new Machine(alpha, 5, 4, oddRotors(alpha));
+                    pair[k].insertRotors(order);
+                    pair[k].setRotors(setting.toString());
+                    pair[k].setPlugboard(new Permutation("", alpha));
+                }
+                checkAdvance(pair[0], pair[1], "ABCDEFABCDEF",
+                             rand.nextInt(3000));
+            }
+        }
+    }
+
+    @Test
+    public void checkSeekIsAdditive() {
+        long big = 1_000_000_000_000_007L;
+        Machine m = navalMachine(STANDARD, "QEVZ", null, "");
+        Machine ref = navalMachine(STANDARD, "QEVZ", null, "");
+        m.seek(big);
+        ref.advance(big - 12345);
+        ref.advance(12345);
+        assertEquals(ref.convert("PROBEPROBE"), m.convert("PROBEPROBE"));
+        m.seek(100);
+        ref.setRotors("QEVZ");
+        checkAdvance(ref, navalMachine(STANDARD, "QEVZ", null, ""),
+                     "PROBE", 100);
+    }
+
+    @Test
+    public void checkParallelMatchesSequential() {
+        Random rand = new Random(7);
+        char[] msg = new char[3 * Machine.PARALLEL_CHUNK + 17];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = UPPER_STRING.charAt(rand.nextInt(26));
+        }
+        String[] rotors = { "B", "Beta", "VI", "II", "VIII" };
+        Machine seq = navalMachine(rotors, "AQEY", "CZAB", "(AK) (PY)");
+        Machine par = navalMachine(rotors, "AQEY", "CZAB", "(AK) (PY)");
+        char[] expected = new char[msg.length];
+        for (int i = 0; i < msg.length; i += 1) {
+            expected[i] = UPPER.toChar(seq.convert(UPPER.toInt(msg[i])));
+        }
+        char[] result = new char[msg.length];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        par.convertParallel(msg, result, pool);
+        assertEquals(new String(expected), new String(result));
+        assertEquals(seq.convert("PROBEPROBE"), par.convert("PROBEPROBE"));
+
+        par.setRotors("AQEY");
+        par.setTableBudget(1L << 24);
+        par.convertParallel(msg, result, pool);
+        assertEquals(new String(expected), new String(result));
+        par.advance(10);
+        assertEquals(seq.convert("PROBEPROBE"), par.convert("PROBEPROBE"));
+        pool.shutdown();
+    }
+
+    @Test
+    public void checkSharedCatalog() throws InterruptedException {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(200);
+        String[] settings = new String[8];
+        String[] expected = new String[settings.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = "A" + (char) ('A' + 3 * i) + "Q" + (char) ('B' + i);
+            expected[i] = navalMachine(STANDARD, settings[i], "BCDE", "(AB)")
+                .convert(msg);
+        }
+        String[] results = new String[settings.length];
+        Thread[] threads = new Thread[settings.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            int k = i;
+            threads[i] = new Thread(() -> {
+                Machine m = new Machine(catalog);
+                m.insertRotors(STANDARD);
+                m.setRotors(settings[k]);
+                m.setRingSettings("BCDE");
+                m.setPlugboard(new Permutation("(AB)", UPPER));
+                results[k] = m.convert(msg);
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < settings.length; i += 1) {
+            threads[i].join();
+            assertEquals(expected[i], results[i]);
+        }
+    }
+
+    @Test
+    public void checkCopy() {
+        Machine m = navalMachine(STANDARD, "AAAA", "ZZZZ", "(QW)");
+        m.convert("ABCDEFG");
+        Machine copy = new Machine(m);
+        String rest = m.convert("HIJKLMNOP");
+        assertEquals(rest, copy.convert("HIJKLMNOP"));
+        copy.setRotors("BBBB");
+        copy = new Machine(m);
+        assertEquals(m.convert("QRSTU"), copy.convert("QRSTU"));
+    }
+
+    @Test
+    public void checkSnapshot() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        Machine m = navalMachine(new String[] {"C", "Gamma", "VI", "VII",
+                                               "VIII"},
+                                 "QDZL", "AMZB", "(AZ) (QW) (EX)");
+        m.convert(msg);
+        PlugboardTable plugboards = new PlugboardTable(10);
+        long snapshot = m.snapshot(plugboards);
+        byte[] bytes = m.snapshotBytes();
+        assertTrue(snapshot >= 0);
+        assertEquals(m.snapshotSize(), bytes.length);
+        String expected = m.convert(msg);
+
+        Machine other = new Machine(m.catalog());
+        other.insertRotors(STANDARD);
+        other.setRotors("AAAA");
+        other.setPlugboard(new Permutation("(BC)", UPPER));
+        other.restore(snapshot, plugboards);
+        assertEquals(expected, other.convert(msg));
+        other.restore(bytes, 0);
+        assertEquals(expected, other.convert(msg));
+        Machine fresh = new Machine(m.catalog());
+        fresh.restore(snapshot, plugboards);
+        assertEquals(snapshot, fresh.snapshot(plugboards));
+        assertEquals(expected, fresh.convert(msg));
+        fresh.seek(0);
+        assertEquals(expected, fresh.convert(msg));
+    }
+
+    @Test
+    public void checkSnapshotKeepsTable() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        Machine m = navalMachine(STANDARD, "AXLE", "BCFG", "(AB)");
+        m.setTableBudget(1L << 24);
+        m.convert(msg);
+        assertTrue(m.usingTable());
+        PlugboardTable plugboards = new PlugboardTable(10);
+        long snapshot = m.snapshot(plugboards);
+        String expected = m.convert(msg);
+        m.restore(snapshot, plugboards);
+        assertTrue(m.usingTable());
+        assertEquals(expected, m.convert(msg));
+        Machine other = new Machine(m);
+        other.setRotors("AQRS");
+        m.restore(other.snapshot(plugboards), plugboards);
+        assertTrue(m.usingTable());
+        assertEquals(other.convert(msg), m.convert(msg));
+    }
+
+    @Test
+    public void checkLargeSnapshot() {
+        Machine m = Benchmark.randomMachine(8, 200, new Random(5));
+        PlugboardTable plugboards = new PlugboardTable(10);
+        assertEquals(0, m.snapshotPlugboards());
+        assertEquals(Machine.NO_SNAPSHOT, m.snapshot(plugboards));
+        assertEquals(0, plugboards.size());
+        byte[] bytes = new byte[m.snapshotSize() + 3];
+        m.snapshot(bytes, 3);
+        char[] msg = Benchmark.randomMessage(m.catalog().alphabet(), 500,
+                                             new Random(6));
+        String expected = m.convert(new String(msg));
+        m.convert(new String(msg));
+        m.restore(bytes, 3);
+        assertEquals(expected, m.convert(new String(msg)));
+        int last = bytes.length - Integer.BYTES;
+        System.arraycopy(bytes, last - Integer.BYTES, bytes, last,
+                         Integer.BYTES);
+        try {
+            m.restore(bytes, 3);
+            fail("restored a plugboard that is not a permutation");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkSnapshotBytesElsewhere() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        Machine m = navalMachine(new String[] {"C", "Gamma", "VI", "VII",
+                                               "VIII"},
+                                 "QDZL", "AMZB", "(AZ) (QW) (EX)");
+        m.convert(msg);
+        byte[] bytes = m.snapshotBytes();
+        String expected = m.convert(msg);
+        Machine other = new Machine(UPPER, 5, 3, navalRotors());
+        other.restore(bytes, 0);
+        assertEquals(expected, other.convert(msg));
+        Machine again = new Machine(other.catalog());
+        again.restore(bytes, 0);
+        assertEquals(expected, again.convert(msg));
+    }
+
+    @Test
+    public void checkPlugboardNumbersAreReleased() {
+        Machine m = navalMachine(STANDARD, "AXLE", "BCFG", "");
+        int room = m.snapshotPlugboards();
+        assertEquals(177, room);
+        ArrayList<String> pairs = new ArrayList<>();
+        for (int a = 0; a < 26; a += 1) {
+            for (int b = a + 1; b < 26; b += 1) {
+                pairs.add("(" + UPPER.toChar(a) + UPPER.toChar(b) + ")");
+            }
+        }
+        PlugboardTable plugboards = new PlugboardTable(room + 1);
+        long[] snapshots = new long[room + 1];
+        for (int i = 0; i < snapshots.length; i += 1) {
+            m.setPlugboard(new Permutation(pairs.get(i), UPPER));
+            snapshots[i] = m.snapshot(plugboards);
+            if (i < room) {
+                assertEquals(i + 1, plugboards.size());
+                assertEquals(i, m.plugboardNumber(snapshots[i]));
+                assertEquals(snapshots[i], m.snapshot(plugboards));
+                plugboards.release(i);
+            }
+        }
+        assertEquals(Machine.NO_SNAPSHOT, snapshots[room]);
+        assertEquals(room, plugboards.size());
+        byte[] bytes = m.snapshotBytes();
+        String expected = m.convert("SOMEWHEREELSE");
+        m.setPlugboard(new Permutation("", UPPER));
+        m.restore(bytes, 0);
+        assertEquals(expected, m.convert("SOMEWHEREELSE"));
+
+        for (int i = 0; i < room; i += 1) {
+            plugboards.release(m.plugboardNumber(snapshots[i]));
+        }
+        assertEquals(0, plugboards.size());
+        assertTrue(m.plugboardNumber(m.snapshot(plugboards)) < room);
+        try {
+            m.restore(snapshots[0], plugboards);
+            fail("restored a snapshot whose plugboard was released");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        m.setPlugboard(new Permutation("(AB)", UPPER));
+        int[] fields = new int[m.snapshotFields()];
+        PlugboardTable full = new PlugboardTable(1);
+        m.snapshot(fields, 0, full);
+        m.setPlugboard(new Permutation("(CD)", UPPER));
+        assertEquals(Machine.NO_SNAPSHOT, m.snapshot(full));
+        try {
+            m.snapshot(fields, 0, full);
+            fail("numbered a plugboard in a full table");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(1, full.size());
+    }
+
+    @Test
+    public void checkRestoreCreatesNothing() {
+        Machine m = navalMachine(STANDARD, "AXLE", "BCFG", "(AB)");
+        PlugboardTable plugboards = new PlugboardTable(10);
+        long first = m.snapshot(plugboards);
+        m.convert("SOMEWHEREELSE");
+        long second = m.snapshot(plugboards);
+        byte[] bytes = m.snapshotBytes();
+        assertEquals(0, allocatedPerRun(20000, () -> {
+            m.restore(first, plugboards);
+            m.restore(second, plugboards);
+            m.restore(bytes, 0);
+        }));
+    }
+
+    @Test
+    public void checkInsertFromLargeCatalog() {
+        ArrayList<Rotor> rotors = navalRotors();
+        for (int i = 0; i < 5000; i += 1) {
+            rotors.add(new MovingRotor("X" + i,
+                                       new Permutation("(AB)", UPPER), "A"));
+        }
+        Machine m = new Machine(UPPER, 5, 3, rotors);
+        m.insertRotors(new String[] { "C", "X17", "X4999", "I", "X0" });
+        m.insertRotors(STANDARD);
+        m.setRotors("AAAA");
+        m.setPlugboard(new Permutation("", UPPER));
+        assertEquals("ILBDAAMTAZ", m.convert("HELLOWORLD"));
+        String[][] bad = {
+            { "B", "Beta", "I", "NONE", "III" },
+            { "B", "Beta", "I", "X3", "X3" },
+            { "B", "Beta", "I", "II", "Gamma" },
+            { "I", "Beta", "B", "II", "III" },
+        };
+        for (String[] order : bad) {
+            try {
+                m.insertRotors(order);
+                fail("accepted " + String.join(" ", order));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            m.setRotors("AAAA");
+            assertEquals("ILBDAAMTAZ", m.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void checkBulkConvert() {
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(30);
+        String[] rotors = { "C", "Gamma", "VI", "IV", "VIII" };
+        for (long budget : new long[] { 0, 1L << 24 }) {
+            Machine ref = navalMachine(rotors, "QDZL", "AMZB", "(AZ) (QW)");
+            Machine m = navalMachine(rotors, "QDZL", "AMZB", "(AZ) (QW)");
+            m.setTableBudget(budget);
+            String expected = ref.convert(msg);
+            char[] out = new char[msg.length() + 4];
+            m.convert(msg.toCharArray(), 0, msg.length(), out, 4);
+            assertEquals(expected, new String(out, 4, msg.length()));
+
+            expected = ref.convert(msg);
+            CharBuffer chars = CharBuffer.allocate(msg.length());
+            m.convert(CharBuffer.wrap(msg), chars);
+            assertEquals(expected, new String(chars.array()));
+
+            expected = ref.convert(msg);
+            ByteBuffer bytes = ByteBuffer.allocateDirect(msg.length());
+            m.convert(ByteBuffer.wrap(msg.getBytes()), bytes);
+            bytes.flip();
+            byte[] got = new byte[msg.length()];
+            bytes.get(got);
+            assertEquals(expected, new String(got));
+
+            char[] bad = "ABC3".toCharArray();
+            try {
+                m.convert(bad, 0, bad.length, bad, 0);
+                fail("converted a character outside the alphabet");
+            } catch (EnigmaException excp) {
+                assertEquals("ABC3", new String(bad));
+            }
+            assertEquals(ref.convert("PROBEPROBE"), m.convert("PROBEPROBE"));
+        }
+    }
+
+    @Test
+    public void checkBytesNeedNarrowAlphabet() {
+        Alphabet wide = new Alphabet("ABCD\u0100\u0101");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) "
+                                                      + "(\u0100\u0101)",
+                                                      wide)));
+        rotors.add(new MovingRotor("M", new Permutation("(AC\u0100)", wide),
+                                   "A"));
+        Machine m = new Machine(wide, 2, 1, rotors);
+        m.insertRotors(new String[] { "R", "M" });
+        m.setRotors("A");
+        m.setPlugboard(new Permutation("", wide));
+        byte[] before = m.snapshotBytes();
+        ByteBuffer dst = ByteBuffer.allocate(4);
+        try {
+            m.convert(ByteBuffer.wrap("ABCD".getBytes()), dst);
+            fail("converted bytes with an alphabet wider than a byte");
+        } catch (EnigmaException excp) {
+            assertEquals(0, dst.position());
+            assertArrayEquals(before, m.snapshotBytes());
+        }
+    }
+
+    @Test
+    public void checkBulkConvertCreatesNothing() {
+        char[] msg = Benchmark.randomMessage(256, new Random(20));
+        char[] out = new char[msg.length];
+        CharBuffer src = CharBuffer.wrap(msg);
+        CharBuffer dst = CharBuffer.wrap(out);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(msg.length);
+        ByteBuffer result = ByteBuffer.allocateDirect(msg.length);
+        for (char c : msg) {
+            bytes.put((byte) c);
+        }
+        for (long budget : new long[] { 0, 1L << 24 }) {
+            Machine m = navalMachine(STANDARD, "AXLE", "BCFG", "(AB)");
+            m.setTableBudget(budget);
+            assertEquals(0, allocatedPerRun(2000, () -> {
+                m.convert(msg, 0, msg.length, out, 0);
+                src.clear();
+                dst.clear();
+                m.convert(src, dst);
+                bytes.clear();
+                result.clear();
+                m.convert(bytes, result);
+            }));
+        }
+    }
+
+}
@@ -2,11 +2,11 @@ package enigma;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
 
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
@@ -23,15 +23,49 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  With ARGS of the form
+     *  --compile CONFIG OUTPUT, instead writes the configuration CONFIG
+     *  in compiled form (see ConfigFile) to OUTPUT. */
     public static void main(String... args) {
+        int code = run(args);
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Do what main(ARGS) does, but return the exit code instead of
+     *  exiting. */
+    static int run(String... args) {
         try {
-            new Main(args).process();
-            return;
+            if (isCompile(args)) {
+                ConfigFile.compile(readCatalog(args[1]), args[2]);
+                return 0;
+            }
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
+            return 0;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
         }
-        System.exit(1);
+        return 1;
+    }
+
+    /** Return true iff ARGS ask for a configuration to be compiled (see
+     *  main), reporting an error if they are not then ARGS[1] and
+     *  ARGS[2]. */
+    static boolean isCompile(String[] args) {
+        if (args.length == 0 || !args[0].equals(COMPILE_OPTION)) {
+            return false;
+        }
+        if (args.length != 3) {
+            throw error("Usage: java enigma.Main %s CONFIG OUTPUT",
+                        COMPILE_OPTION);
+        }
+        return true;
     }
 
     /** Check ARGS and open the necessary files (see comment on main). */
@@ -40,23 +74,82 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        try {
+            if (ConfigFile.isCompiled(args[0])) {
+                _catalog = ConfigFile.load(args[0]);
+                _alphabet = _catalog.alphabet();
+                _settingsCache = newSettingsCache();
+            } else {
+                _config = getInput(args[0]);
+            }
+
+            if (args.length > 1) {
+                _input = MessageReader.open(args[1]);
+            } else {
+                _input = new MessageReader(System.in);
+            }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+            if (args.length > 2) {
+                _output = GroupWriter.open(args[2]);
+                _closeOutput = true;
+            } else {
+                _output = GroupWriter.standardOutput();
+            }
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
         }
+    }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+    /** Close the files opened by Main(String[]): the configuration, the
+     *  input (unless it is the standard input) and the output (unless
+     *  it is the standard output). */
+    private void close() {
+        try {
+            if (_config != null) {
+                _config.close();
+            }
+            if (_input != null) {
+                _input.close();
+            }
+        } finally {
+            if (_closeOutput) {
+                _output.close();
+            }
+        }
+    }
+
+    /** A Main that reads its configuration from CONFIG. */
+    private Main(Scanner config) {
+        _config = config;
+    }
+
+    /** A Main that applies machines built from CATALOG to the messages
+     *  in INPUT, sending the results to OUTPUT. */
+    Main(RotorCatalog catalog, MessageReader input, GroupWriter output) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _settingsCache = newSettingsCache();
+        _input = input;
+        _output = output;
+    }
+
+    /** Return the rotors described by the configuration file NAME,
+     *  which may be compiled. */
+    static RotorCatalog readCatalog(String name) {
+        if (ConfigFile.isCompiled(name)) {
+            return ConfigFile.load(name);
+        }
+        Main main = new Main(getInput(name));
+        try {
+            return main.readConfig().catalog();
+        } finally {
+            main._config.close();
         }
     }
 
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -64,64 +157,126 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config (or from _catalog) and apply it to the messages in
+     *  _input, sending the results to _output. */
+    void process() {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
-            throw error("could not open %s", name);
+            processMessages();
+        } finally {
+            _output.flush();
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine enigma = readConfig();
-        String setLine = _input.nextLine();
+    /** Apply the machine configured from _config to each line of
+     *  _input, in batch mode if BATCH_THREADS_PROPERTY asks for it. */
+    private void processMessages() {
+        Machine enigma = _config == null ? new Machine(_catalog)
+            : readConfig();
+        long budget = Long.getLong(TABLE_BUDGET_PROPERTY, 0);
+        enigma.setTableBudget(budget);
+        int threads = Integer.getInteger(BATCH_THREADS_PROPERTY, 0);
+        if (threads > 0) {
+            new BatchProcessor(this, _catalog, threads, budget)
+                .process(_input, _output);
+        } else {
+            processMessages(enigma, _input, _output);
+        }
+    }
 
-        while (_input.hasNextLine()) {
+    /** Apply ENIGMA to each line of INPUT, writing the results to
+     *  OUTPUT. */
+    void processMessages(Machine enigma, MessageReader input,
+                         GroupWriter output) {
+        if (!input.readLine()) {
+            throw error("no messages");
+        }
+        while (true) {
+            boolean last = input.atEnd();
+            processLine(enigma, input.line(), input.length(), last, output);
+            if (last) {
+                break;
+            }
+            input.readLine();
+        }
+    }
 
-            if (setLine.isEmpty()) {
-                _output.println();
+    /** Process LINE[0 .. LEN-1], which is the last line of the input iff
+     *  LAST, with M, writing any result to OUTPUT.  The line is either a
+     *  settings line, which sets up M, or a message, which is converted
+     *  in place. */
+    void processLine(Machine M, char[] line, int len, boolean last,
+                     GroupWriter output) {
+        if (!last) {
+            if (len == 0) {
+                output.newLine();
             }
-            if (setLine.contains("*")) {
-                setUp(enigma, setLine);
+            if (isSettings(line, len)) {
+                setUp(M, new String(line, 0, len));
             } else {
-                String next = setLine.replace(" ", "");
-                for (int i = 0; i < next.length(); i++) {
-                    if (!_alphabet.contains(next.charAt(i))) {
-                        throw error("Input is not in Alphabet!");
-                    }
-                }
-                printMessageLine(enigma.convert(next));
+                convertLine(M, line, len, output);
             }
-            setLine = _input.nextLine();
+            return;
+        }
+        len = removeSpaces(line, len);
+        if (len == 0) {
+            output.newLine();
+        } else if (!isSettings(line, len)) {
+            convertLine(M, line, len, output);
         }
+    }
 
-        if (!_input.hasNextLine()) {
-            String lastLine = setLine.replace(" ", "");
+    /** Return true iff LINE[0 .. LEN-1] is a settings line (when it is
+     *  not the last line). */
+    static boolean isSettings(char[] line, int len) {
+        return indexOf(line, len, '*') >= 0;
+    }
 
-            if (lastLine.isEmpty()) {
-                _output.println();
-            } else if (lastLine.contains("*")) {
-                _output.print("");
-            } else {
-                for (int i = 0; i < lastLine.length(); i++) {
-                    if (!_alphabet.contains(lastLine.charAt(i))) {
-                        throw error("Input is not in Alphabet!");
-                    }
-                }
-                printMessageLine(enigma.convert(lastLine));
+    /** Return the index of the first C in LINE[0 .. LEN-1], or -1 if
+     *  there is none. */
+    private static int indexOf(char[] line, int len, char c) {
+        for (int i = 0; i < len; i++) {
+            if (line[i] == c) {
+                return i;
             }
         }
+        return -1;
+    }
 
+    /** Remove the blanks from LINE[0 .. LEN-1], moving the remaining
+     *  characters to the front, and return how many remain. */
+    private static int removeSpaces(char[] line, int len) {
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            if (line[i] != ' ') {
+                line[n++] = line[i];
+            }
+        }
+        return n;
+    }
 
+    /** Convert the message in LINE[0 .. LEN-1] with M, in place, ignoring
+     *  blanks, and print the result to OUTPUT in groups of five.  Every
+     *  other character must be in the alphabet. */
+    void convertLine(Machine M, char[] line, int len, GroupWriter output) {
+        len = removeSpaces(line, len);
+        for (int i = 0; i < len; i++) {
+            if (!_alphabet.contains(line[i])) {
+                throw error("Input is not in Alphabet!");
+            }
+        }
+        if (len >= Machine.PARALLEL_THRESHOLD) {
+            M.convertParallel(line, line, 0, len, ForkJoinPool.commonPool());
+        } else {
+            M.convert(line, 0, len, line, 0);
+        }
+        output.put(line, 0, len);
+        output.endLine();
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
-    private Machine readConfig() {
+    Machine readConfig() {
         try {
             String alpha = _config.next();
             _alphabet = new Alphabet(alpha);
@@ -147,7 +302,10 @@ public final class Main {
                 typeNotch = _config.next();
                 allRotors.add(readRotor());
             }
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
+            _catalog = new RotorCatalog(_alphabet, numRotors, numPawls,
+                                        allRotors);
+            _settingsCache = newSettingsCache();
+            return new Machine(_catalog);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
@@ -201,9 +359,34 @@ public final class Main {
         }
     }
 
+    /** Return a cache of settings lines for _catalog of the size given
+     *  by SETTINGS_CACHE_PROPERTY, or null if that is 0. */
+    private SettingsCache newSettingsCache() {
+        int capacity = Integer.getInteger(SETTINGS_CACHE_PROPERTY,
+                                          SettingsCache.DEFAULT_CAPACITY);
+        return capacity > 0
+            ? new SettingsCache(this, _catalog, capacity) : null;
+    }
+
+    /** Return my cache of settings lines, or null if I have none. */
+    SettingsCache settingsCache() {
+        return _settingsCache;
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment.  Settings
+     *  lines seen recently are not parsed again (see SettingsCache). */
+    void setUp(Machine M, String settings) {
+        if (_settingsCache != null && M.catalog() == _catalog) {
+            _settingsCache.setUp(M, settings);
+        } else {
+            applySettings(M, settings);
+        }
+    }
+
+    /** Set M according to SETTINGS, as for setUp, without consulting the
+     *  cache. */
+    void applySettings(Machine M, String settings) {
 
         String[] splitSet = settings.split(" ");
         if (!splitSet[0].equals("*")) {
@@ -216,17 +399,6 @@ public final class Main {
         }
         M.insertRotors(rotorNames);
 
-        for (int i = 0; i < rotorNames.length; i++) {
-            for (int j = i + 1; j < rotorNames.length; j++) {
-                if (rotorNames[i].equals(rotorNames[j])) {
-                    throw error("Cannot repeat rotors!");
-                }
-            }
-        }
-
-        if (!(M._activeRotor[0] instanceof Reflector)) {
-            throw error("First rotor must be a reflector!");
-        }
         if (splitSet[rotorNames.length + 1].contains("(")
                 || splitSet[rotorNames.length + 1].contains(")")) {
             throw error("Cannot have parenthesis in the setting! Try again!");
@@ -237,9 +409,7 @@ public final class Main {
         if (splitSet.length > rotorNames.length + 2) {
             String c = splitSet[rotorNames.length + 2];
             if ((!c.contains("(")) && c.length() == M.numRotors() - 1) {
-                for (int i = 0; i < M.numRotors() - 1; i++) {
-                    M._activeRotor[i + 1].setRingSetting(c.charAt(i));
-                }
+                M.setRingSettings(c);
             }
         }
 
@@ -261,31 +431,45 @@ public final class Main {
         M.setPlugboard(new Permutation(permuteAdd, _alphabet));
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        int remainingLetters = msg.length();
-        for (int i = 0; i < msg.length(); i += 5) {
-            if (remainingLetters > 5) {
-                _output.print(msg.substring(i, i + 5) + " ");
-                remainingLetters -= 5;
-            } else {
-                _output.println(msg.substring(i, remainingLetters + i));
-            }
-        }
-    }
+    /** First argument asking main to compile a configuration. */
+    static final String COMPILE_OPTION = "--compile";
+
+    /** System property giving the memory budget, in bytes, for the
+     *  machine's substitution table (see Machine.setTableBudget). */
+    static final String TABLE_BUDGET_PROPERTY = "enigma.tableBudget";
+
+    /** System property giving the number of worker threads to use in
+     *  batch mode (see BatchProcessor), or 0 to process the input on one
+     *  thread. */
+    static final String BATCH_THREADS_PROPERTY = "enigma.batchThreads";
+
+    /** System property giving the number of settings lines whose
+     *  compiled forms are kept (see SettingsCache), or 0 for none. */
+    static final String SETTINGS_CACHE_PROPERTY = "enigma.settingsCache";
+
+    /** Rotors read from the configuration, shared by every machine built
+     *  from it. */
+    private RotorCatalog _catalog;
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Compiled forms of recent settings lines, or null. */
+    private SettingsCache _settingsCache;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageReader _input;
 
-    /** Source of machine configuration. */
+    /** Source of machine configuration, or null if the configuration
+     *  was read beforehand. */
     private Scanner _config;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Destination of encoded/decoded messages, printed in groups of
+     *  five. */
+    private GroupWriter _output;
+
+    /** True iff _output is a file that I opened. */
+    private boolean _closeOutput;
 
     /** Rotor Name. */
     private String rotorName;
@@ -0,0 +1,222 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A source of message lines.  A file is read by mapping it into memory a
+ *  window at a time; any other stream is read through one large direct
+ *  buffer.  Bytes are decoded into a fixed character buffer, and each line
+ *  is copied into a reusable line buffer, so that reading a line creates
+ *  no objects once the line buffer has grown to the longest line.  Lines
+ *  end at the same terminators as Scanner.nextLine.
+ *  @author Pranav Bhimani
+ */
+class MessageReader {
+
+    /** Size of the window in which a file is mapped. */
+    static final int MAP_WINDOW = 1 << 30;
+
+    /** Size of the buffer used to read a stream. */
+    static final int STREAM_BUFFER = 1 << 20;
+
+    /** Number of characters decoded at a time. */
+    static final int CHAR_BUFFER = 1 << 16;
+
+    /** A reader of the file named NAME. */
+    static MessageReader open(String name) {
+        try {
+            FileChannel file = FileChannel.open(Path.of(name),
+                                                StandardOpenOption.READ);
+            return new MessageReader(file, null, 0, CHAR_BUFFER);
+        } catch (IOException | RuntimeException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A reader of the stream IN. */
+    MessageReader(InputStream in) {
+        this(null, Channels.newChannel(in), STREAM_BUFFER, CHAR_BUFFER);
+    }
+
+    /** A reader of the stream IN that buffers at most BUFFER bytes and
+     *  BUFFER characters at a time, for when many readers are open at
+     *  once.  A line ends only at a line feed or at a carriage return
+     *  followed by something, so a line ending in a lone carriage
+     *  return is not complete until more input arrives. */
+    MessageReader(InputStream in, int buffer) {
+        this(null, Channels.newChannel(in), buffer, buffer);
+    }
+
+    /** A reader of FILE, if it is not null, and otherwise of STREAM,
+     *  buffering BYTES bytes of a stream and CHARS decoded characters
+     *  at a time. */
+    private MessageReader(FileChannel file, ReadableByteChannel stream,
+                          int bytes, int chars) {
+        _file = file;
+        _stream = stream;
+        if (stream != null) {
+            _bytes = ByteBuffer.allocateDirect(bytes);
+            _bytes.flip();
+        } else {
+            _bytes = ByteBuffer.allocate(0);
+        }
+        _decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(chars);
+        _chars.flip();
+    }
+
+    /** Read the next line into my line buffer, without its terminator.
+     *  Return false, leaving the buffer empty, if there are no more
+     *  lines. */
+    boolean readLine() {
+        _length = 0;
+        int c = read();
+        if (c < 0) {
+            return false;
+        }
+        while (c >= 0 && !isTerminator(c)) {
+            if (_length == _line.length) {
+                char[] line = new char[2 * _line.length];
+                System.arraycopy(_line, 0, line, 0, _length);
+                _line = line;
+            }
+            _line[_length++] = (char) c;
+            c = read();
+        }
+        if (c == '\r' && peek() == '\n') {
+            read();
+        }
+        return true;
+    }
+
+    /** Return true iff no line follows the one last read. */
+    boolean atEnd() {
+        return peek() < 0;
+    }
+
+    /** Return the buffer holding the line last read, whose characters
+     *  are line()[0 .. length()-1]. */
+    char[] line() {
+        return _line;
+    }
+
+    /** Return the length of the line last read. */
+    int length() {
+        return _length;
+    }
+
+    /** Release the file I read, if any.  A stream is left open. */
+    void close() {
+        if (_file != null) {
+            try {
+                _file.close();
+            } catch (IOException excp) {
+                throw error("could not close input");
+            }
+        }
+    }
+
+    /** Return true iff C ends a line. */
+    private static boolean isTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Return the next character, or -1 at the end of input. */
+    private int read() {
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return _chars.get();
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of input. */
+    private int peek() {
+        if (!_chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return _chars.get(_chars.position());
+    }
+
+    /** Decode more characters into _chars, which is empty.  Return false
+     *  if there are none left. */
+    private boolean fill() {
+        _chars.clear();
+        try {
+            while (_chars.position() == 0 && !_flushed) {
+                _decoder.decode(_bytes, _chars, _eof);
+                if (_eof) {
+                    _decoder.flush(_chars);
+                    _flushed = true;
+                } else if (_chars.position() == 0) {
+                    _eof = !refill();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        _chars.flip();
+        return _chars.hasRemaining();
+    }
+
+    /** Bring more bytes into _bytes, keeping those not yet decoded.
+     *  Return false if there are no more. */
+    private boolean refill() throws IOException {
+        if (_file != null) {
+            _mapped += _bytes.position();
+            long left = _file.size() - _mapped;
+            if (left <= _bytes.remaining()) {
+                return false;
+            }
+            _bytes = map(_mapped, Math.min(left, MAP_WINDOW));
+            return true;
+        }
+        _bytes.compact();
+        int n = _stream.read(_bytes);
+        _bytes.flip();
+        return n >= 0;
+    }
+
+    /** Return LEN bytes of my file, starting at POSN. */
+    private MappedByteBuffer map(long posn, long len) throws IOException {
+        return _file.map(FileChannel.MapMode.READ_ONLY, posn, len);
+    }
+
+    /** The file being read, or null if reading a stream. */
+    private final FileChannel _file;
+    /** The stream being read, or null if reading a file. */
+    private final ReadableByteChannel _stream;
+    /** Bytes not yet decoded. */
+    private ByteBuffer _bytes;
+    /** Offset in _file of the start of _bytes. */
+    private long _mapped;
+    /** True once all the input bytes are in _bytes. */
+    private boolean _eof;
+    /** True once the decoder has been flushed. */
+    private boolean _flushed;
+    /** Decoder of the input bytes. */
+    private final CharsetDecoder _decoder;
+    /** Characters decoded but not yet read. */
+    private final CharBuffer _chars;
+    /** Buffer holding the current line. */
+    private char[] _line = new char[256];
+    /** Length of the current line. */
+    private int _length;
+}
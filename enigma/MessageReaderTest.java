@@ -0,0 +1,54 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the MessageReader class.
+ *  @author Pranav Bhimani
+ */
+public class MessageReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the lines of TEXT as read by a MessageReader, each followed
+     *  by "$" if it is the last. */
+    private static ArrayList<String> lines(String text) {
+        MessageReader reader =
+            new MessageReader(new ByteArrayInputStream(text.getBytes()));
+        ArrayList<String> result = new ArrayList<>();
+        while (reader.readLine()) {
+            String line = new String(reader.line(), 0, reader.length());
+            result.add(reader.atEnd() ? line + "$" : line);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTerminators() {
+        assertEquals(List.of("A", "B", "", "C", "D$"),
+                     lines("A\nB\r\n\rC\rD"));
+        assertEquals(List.of("A", "$"), lines("A\n\n"));
+        assertEquals(List.of("A B $"), lines("A B \r\n"));
+        assertTrue(lines("").isEmpty());
+    }
+
+    @Test
+    public void checkLongLine() {
+        String line = "ABCDEFGHIJ".repeat(10000);
+        assertEquals(List.of(line, "$"),
+                     lines(line + "\n" + "\n"));
+    }
+
+}
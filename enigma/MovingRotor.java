@@ -9,12 +9,13 @@ class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
-     *  The Rotor is initally in its 0 setting (first character of its
-     *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _atNotch = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i++) {
+            _atNotch[alphabet().toInt(notches.charAt(i))] = true;
+        }
     }
 
     @Override
@@ -23,17 +24,11 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    void advance() {
-        set(permutation().wrap(setting() + 1));
+    boolean atNotch(int posn) {
+        return _atNotch[posn];
     }
 
-    @Override
-    boolean atNotch() {
-        String check = Character.toString(alphabet().toChar(setting()));
-        return _notches.contains(check);
-    }
-
-    /** The specific notches of this moving rotor represented as a String. */
-    private String _notches;
+    /** True at each setting that is one of my notches. */
+    private final boolean[] _atNotch;
 
 }
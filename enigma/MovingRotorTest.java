@@ -22,6 +22,7 @@ public class MovingRotorTest {
 
     private Rotor rotor;
     private String alpha = UPPER_STRING;
+    private int setting, ring;
 
     /** Check that rotor has an alphabet whose size is that of
      *  FROMALPHA and TOALPHA and that maps each character of
@@ -31,13 +32,14 @@ public class MovingRotorTest {
                             String fromAlpha, String toAlpha) {
         int N = fromAlpha.length();
         assertEquals(testId + " (wrong length)", N, rotor.size());
+        int offset = Math.floorMod(setting - ring, N);
         for (int i = 0; i < N; i += 1) {
             char c = fromAlpha.charAt(i), e = toAlpha.charAt(i);
             int ci = alpha.indexOf(c), ei = alpha.indexOf(e);
             assertEquals(msg(testId, "wrong translation of %d (%c)", ci, c),
-                         ei, rotor.convertForward(ci));
+                         ei, rotor.convertForward(ci, offset));
             assertEquals(msg(testId, "wrong inverse of %d (%c)", ei, e),
-                         ci, rotor.convertBackward(ei));
+                         ci, rotor.convertBackward(ei, offset));
         }
     }
 
@@ -47,6 +49,7 @@ public class MovingRotorTest {
                           String notches) {
         rotor = new MovingRotor(name, new Permutation(rotors.get(name), UPPER),
                                 notches);
+        setting = ring = 0;
     }
 
     /* ***** TESTS ***** */
@@ -60,15 +63,23 @@ public class MovingRotorTest {
     @Test
     public void checkRotorAdvance() {
         setRotor("I", NAVALA, "");
-        rotor.advance();
+        setting += 1;
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
-        rotor.set(25);
+        setting = 25;
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorRingSetting() {
+        setRotor("I", NAVALA, "");
+        setting = UPPER.toInt('C');
+        ring = UPPER.toInt('B');
+        checkRotor("Rotor I ring B at C", UPPER_STRING, NAVALB_MAP.get("I"));
+    }
+
 }
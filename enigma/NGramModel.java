@@ -0,0 +1,281 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A table of the log probabilities of the N-grams of an alphabet, for
+ *  scoring candidate decryptions.  N-gram number K of texts C1 ... CN
+ *  (as alphabet indices) is K = C1 * size^(N-1) + ... + CN, so the table
+ *  is dense and looked up with a rolling index.  Scoring creates no
+ *  objects, and one model may be used by any number of threads.
+ *
+ *  A model may be saved to a file and loaded by mapping it into memory,
+ *  so that it is not parsed or copied, and processes using the same file
+ *  share its pages.  Format: the ints MAGIC, VERSION, N, and the size of
+ *  the alphabet, and its characters as chars, all big-endian; zeros up
+ *  to a multiple of TABLE_ALIGNMENT bytes; and the table, as
+ *  little-endian floats, so that it can be read in place on the usual
+ *  processors.
+ *  @author Pranav Bhimani
+ */
+class NGramModel {
+
+    /** First four bytes of a model file: "ENGM". */
+    static final int MAGIC = 0x454e474d;
+
+    /** Version of the format written by save. */
+    static final int VERSION = 1;
+
+    /** Alignment in bytes of the table in a model file. */
+    static final int TABLE_ALIGNMENT = 64;
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = 1L << 28;
+
+    /** A model of N-grams of ALPHABET whose log probabilities are
+     *  TABLE, indexed as described above. */
+    NGramModel(Alphabet alphabet, int n, FloatBuffer table) {
+        long entries = entries(alphabet, n);
+        if (table.capacity() != entries) {
+            throw error("n-gram table has %d entries, not %d",
+                        table.capacity(), entries);
+        }
+        _alphabet = alphabet;
+        _n = n;
+        _table = table;
+        _high = (int) (entries / alphabet.size());
+    }
+
+    /** Return the number of N-grams of ALPHABET, checking that a table
+     *  of them is not too large. */
+    static long entries(Alphabet alphabet, int n) {
+        if (n < 1) {
+            throw error("n-grams must have at least one character");
+        }
+        long result = 1;
+        for (int i = 0; i < n; i++) {
+            result *= alphabet.size();
+            if (result > MAX_ENTRIES) {
+                throw error("too many %d-grams of %d characters", n,
+                            alphabet.size());
+            }
+        }
+        return result;
+    }
+
+    /** Return a model of the N-grams of ALPHABET in the file CORPUS.
+     *  Runs of characters of ALPHABET (or whose upper-case forms are in
+     *  ALPHABET) are counted; other characters separate them.  N-grams
+     *  not seen get the probability of one hundredth of an occurrence. */
+    static NGramModel build(Alphabet alphabet, int n, String corpus) {
+        int size = alphabet.size();
+        int[] counts = new int[(int) entries(alphabet, n)];
+        int high = counts.length / size;
+        long total = 0;
+        MessageReader input = MessageReader.open(corpus);
+        try {
+            int index = 0, run = 0;
+            while (input.readLine()) {
+                char[] line = input.line();
+                for (int i = 0; i < input.length(); i++) {
+                    int c = letter(alphabet, line[i]);
+                    if (c == Alphabet.NOT_PRESENT) {
+                        run = 0;
+                        continue;
+                    }
+                    index = index % high * size + c;
+                    run += 1;
+                    if (run >= n) {
+                        counts[index] += 1;
+                        total += 1;
+                    }
+                }
+            }
+        } finally {
+            input.close();
+        }
+        if (total == 0) {
+            throw error("no %d-grams in %s", n, corpus);
+        }
+        FloatBuffer table = FloatBuffer.allocate(counts.length);
+        double floor = Math.log10(0.01 / total);
+        for (int k = 0; k < counts.length; k++) {
+            table.put(k, counts[k] == 0 ? (float) floor
+                      : (float) Math.log10((double) counts[k] / total));
+        }
+        return new NGramModel(alphabet, n, table);
+    }
+
+    /** Return true iff the file NAME exists and starts like a model
+     *  file. */
+    static boolean isModel(String name) {
+        try (FileChannel file = FileChannel.open(Path.of(name))) {
+            ByteBuffer start = ByteBuffer.allocate(Integer.BYTES);
+            while (start.hasRemaining() && file.read(start) >= 0) {
+                continue;
+            }
+            return !start.hasRemaining() && start.getInt(0) == MAGIC;
+        } catch (IOException | RuntimeException excp) {
+            return false;
+        }
+    }
+
+    /** Write me to the file NAME. */
+    void save(String name) {
+        int size = _alphabet.size();
+        ByteBuffer header = ByteBuffer.allocate(headerBytes(size));
+        header.putInt(MAGIC).putInt(VERSION).putInt(_n).putInt(size);
+        for (int i = 0; i < size; i++) {
+            header.putChar(_alphabet.toChar(i));
+        }
+        header.clear();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel file =
+             FileChannel.open(Path.of(name), StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE)) {
+            writeFully(file, header);
+            int entries = _table.capacity();
+            for (int k = 0; k < entries; k++) {
+                chunk.putFloat(_table.get(k));
+                if (!chunk.hasRemaining() || k == entries - 1) {
+                    chunk.flip();
+                    writeFully(file, chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Write all of DATA to FILE. */
+    private static void writeFully(FileChannel file, ByteBuffer data)
+        throws IOException {
+        while (data.hasRemaining()) {
+            file.write(data);
+        }
+    }
+
+    /** Return the model in the file NAME, written by save. */
+    static NGramModel load(String name) {
+        ByteBuffer data;
+        try (FileChannel file = FileChannel.open(Path.of(name))) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large", name);
+            }
+            data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (data.getInt() != MAGIC) {
+                throw error("not a model");
+            }
+            if (data.getInt() != VERSION) {
+                throw error("unsupported version");
+            }
+            int n = data.getInt();
+            char[] chars = new char[data.getInt()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = data.getChar();
+            }
+            Alphabet alphabet = new Alphabet(new String(chars));
+            long entries = entries(alphabet, n);
+            data.position(headerBytes(chars.length));
+            if (data.remaining() != entries * Float.BYTES) {
+                throw error("table has the wrong length");
+            }
+            FloatBuffer table =
+                data.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return new NGramModel(alphabet, n, table);
+        } catch (EnigmaException excp) {
+            throw error("bad model %s: %s", name, excp.getMessage());
+        } catch (RuntimeException excp) {
+            throw error("bad model %s", name);
+        }
+    }
+
+    /** Return the number of bytes before the table in a model file of
+     *  an alphabet of SIZE characters. */
+    private static int headerBytes(int size) {
+        int bytes = 4 * Integer.BYTES + size * Character.BYTES;
+        return (bytes + TABLE_ALIGNMENT - 1) / TABLE_ALIGNMENT
+            * TABLE_ALIGNMENT;
+    }
+
+    /** Return the model of N-grams of ALPHABET in NAME: a model file, or
+     *  otherwise a corpus from which to build one. */
+    static NGramModel read(Alphabet alphabet, int n, String name) {
+        if (!isModel(name)) {
+            return build(alphabet, n, name);
+        }
+        NGramModel model = load(name);
+        if (!model.alphabet().chars().equals(alphabet.chars())) {
+            throw error("model %s has a different alphabet", name);
+        }
+        return model;
+    }
+
+    /** Return the index in ALPHABET of CH or of its upper-case form, or
+     *  Alphabet.NOT_PRESENT. */
+    private static int letter(Alphabet alphabet, char ch) {
+        if (alphabet.contains(ch)) {
+            return alphabet.toInt(ch);
+        }
+        char upper = Character.toUpperCase(ch);
+        return alphabet.contains(upper) ? alphabet.toInt(upper)
+            : Alphabet.NOT_PRESENT;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log probability of the N-gram numbered INDEX. */
+    float logProbability(int index) {
+        return _table.get(index);
+    }
+
+    /** Return the sum of the log probabilities of the n-grams of
+     *  TEXT[0 .. LENGTH-1], a text of alphabet indices. */
+    double score(int[] text, int length) {
+        int size = _alphabet.size(), high = _high, last = _n - 1;
+        FloatBuffer table = _table;
+        int index = 0;
+        double sum = 0;
+        for (int i = 0; i < last && i < length; i++) {
+            index = index * size + text[i];
+        }
+        for (int i = last; i < length; i++) {
+            index = index * size + text[i];
+            sum += table.get(index);
+            index -= text[i - last] * high;
+        }
+        return sum;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Length of my n-grams. */
+    private final int _n;
+    /** Log probability of each n-gram. */
+    private final FloatBuffer _table;
+    /** Number of (N-1)-grams. */
+    private final int _high;
+}
@@ -0,0 +1,177 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.HillClimbTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGramModel class.
+ *  @author Pranav Bhimani
+ */
+public class NGramModelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file containing TEXT. */
+    private static File tempFile(String text) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(text);
+        }
+        return file;
+    }
+
+    /** Return the name of a new temporary file holding MODEL. */
+    private static String saved(NGramModel model) throws IOException {
+        File file = File.createTempFile("model", ".bin");
+        file.deleteOnExit();
+        model.save(file.getPath());
+        return file.getPath();
+    }
+
+    /** Return TEXT as indices of ALPHABET. */
+    private static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = alphabet.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScore() throws IOException {
+        NGramModel model = model(2);
+        assertEquals(2, model.n());
+        int th = UPPER.toInt('T') * 26 + UPPER.toInt('H');
+        int qz = UPPER.toInt('Q') * 26 + UPPER.toInt('Z');
+        assertTrue(model.logProbability(th) > model.logProbability(qz));
+        int he = UPPER.toInt('H') * 26 + UPPER.toInt('E');
+        assertEquals(model.logProbability(th) + model.logProbability(he),
+                     model.score(indices(UPPER, "THE"), 3), 1e-6);
+        assertEquals(0, model.score(indices(UPPER, "T"), 1), 0);
+    }
+
+    @Test
+    public void checkSaveAndLoad() throws IOException {
+        NGramModel model = model(3);
+        String file = saved(model);
+        assertTrue(NGramModel.isModel(file));
+        assertTrue(!NGramModel.isModel(tempFile(CORPUS).getPath()));
+        NGramModel loaded = NGramModel.load(file);
+        assertEquals(3, loaded.n());
+        assertEquals(UPPER.chars(), loaded.alphabet().chars());
+        for (int k = 0; k < 26 * 26 * 26; k++) {
+            assertEquals(model.logProbability(k), loaded.logProbability(k),
+                         0);
+        }
+        int[] text = indices(UPPER, PLAIN);
+        assertEquals(model.score(text, text.length),
+                     loaded.score(text, text.length), 0);
+        assertEquals(model.score(text, text.length),
+                     NGramModel.read(UPPER, 2, file)
+                     .score(text, text.length), 0);
+    }
+
+    @Test
+    public void checkCustomAlphabets() throws IOException {
+        Alphabet digits = new Alphabet("012345");
+        NGramModel model = NGramModel.build(digits, 2,
+                                            tempFile("0123450 012345\n")
+                                            .getPath());
+        NGramModel loaded = NGramModel.load(saved(model));
+        assertEquals("012345", loaded.alphabet().chars());
+        int[] text = indices(digits, "0123450");
+        assertEquals(model.score(text, text.length),
+                     loaded.score(text, text.length), 0);
+        assertTrue(loaded.logProbability(1) > loaded.logProbability(6));
+
+        Alphabet greek = new Alphabet("\u03b1\u03b2\u03b3\u03b4");
+        FloatBuffer table = FloatBuffer.allocate(4 * 4 * 4);
+        for (int k = 0; k < table.capacity(); k += 1) {
+            table.put(k, -k);
+        }
+        loaded = NGramModel.load(saved(new NGramModel(greek, 3, table)));
+        assertEquals(greek.chars(), loaded.alphabet().chars());
+        for (int k = 0; k < table.capacity(); k += 1) {
+            assertEquals(-k, loaded.logProbability(k), 0);
+        }
+    }
+
+    @Test
+    public void checkScoreCreatesNothing() throws IOException {
+        NGramModel model = NGramModel.load(saved(model(4)));
+        int[] text = indices(UPPER, PLAIN);
+        double score = model.score(text, text.length);
+        assertEquals(0, allocatedPerRun(2000, () -> {
+            assertEquals(score, model.score(text, text.length), 0);
+        }));
+    }
+
+    @Test
+    public void checkShared() throws Exception {
+        NGramModel model = NGramModel.load(saved(model(4)));
+        int[] text = indices(UPPER, PLAIN);
+        double score = model.score(text, text.length);
+        AtomicInteger wrong = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int t = 0; t < 4; t += 1) {
+            pool.execute(() -> {
+                    for (int i = 0; i < 1000; i += 1) {
+                        if (model.score(text, text.length) != score) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, wrong.get());
+    }
+
+    @Test
+    public void checkBadFiles() throws IOException {
+        String file = saved(model(2));
+        byte[] bytes = Files.readAllBytes(new File(file).toPath());
+        Files.write(new File(file).toPath(),
+                    Arrays.copyOf(bytes, bytes.length - 4));
+        try {
+            NGramModel.load(file);
+            fail("loaded a truncated model");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("wrong length"));
+        }
+        try {
+            NGramModel.read(new Alphabet("ABC"), 2, saved(model(2)));
+            fail("read a model of another alphabet");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("different alphabet"));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkTooManyEntries() {
+        NGramModel.entries(UPPER, 7);
+    }
+}
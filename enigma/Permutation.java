@@ -1,10 +1,11 @@
 package enigma;
 
-import java.util.HashMap;
-
+import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The mapping is held in two dense
+ *  tables, one for each direction, so that permute and invert are single
+ *  array loads.
  *  @author Pranav Bhimani
  */
 class Permutation {
@@ -16,33 +17,51 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        perm = new HashMap<Character, Character>();
         _cycles = cycles;
-        splitted = _cycles.replace("(", " ").replace(")", " ").split(" ");
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = i;
+        }
+        String[] splitted =
+            _cycles.replace("(", " ").replace(")", " ").split(" ");
         for (int i = 0; i < splitted.length; i++) {
             addCycle(splitted[i]);
         }
-
-        for (int i = 0; i < alphabet().size(); i++) {
-            if (!perm.containsKey(_alphabet.toChar(i))) {
-                perm.put(_alphabet.toChar(i), alphabet().toChar(i));
-            }
+        for (int i = 0; i < _forward.length; i++) {
+            _inverse[_forward[i]] = i;
         }
+    }
 
+    /** A permutation of ALPHABET mapping each index I to FORWARD[I],
+     *  whose inverse is INVERSE.  The permutation takes over both
+     *  arrays, which must be consistent (see ConfigFile). */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
         for (int j = 0; j < cycle.length(); j++) {
-            if (j == cycle.length() - 1) {
-                perm.put(cycle.charAt(j), cycle.charAt(0));
-            } else {
-                perm.put(cycle.charAt(j), cycle.charAt(j + 1));
-            }
+            int from = index(cycle.charAt(j));
+            int to = index(cycle.charAt((j + 1) % cycle.length()));
+            _forward[from] = to;
         }
     }
 
+    /** Return the index of CH in my alphabet, reporting an error if it
+     *  is not there. */
+    private int index(char ch) {
+        int result = _alphabet.index(ch);
+        if (result == Alphabet.NOT_PRESENT) {
+            throw error("Alphabet not contain character!");
+        }
+        return result;
+    }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
         int r = p % size();
@@ -54,47 +73,30 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return alphabet().size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int val = wrap(p);
-        char check = alphabet().toChar(val);
-        char changed = permute(check);
-        return alphabet().toInt(changed);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int val = wrap(c);
-        char check = alphabet().toChar(val);
-        char changed = invert(check);
-        return alphabet().toInt(changed);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (!_alphabet.contains(p)) {
-            throw new EnigmaException("Alphabet not contain character!");
-        }
-        return perm.get(p);
+        return _alphabet.toChar(_forward[index(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!_alphabet.contains(c)) {
-            throw new EnigmaException("Alphabet not contain character!");
-        }
-        for (char i : perm.keySet()) {
-            if (perm.get(i) == c) {
-                return i;
-            }
-        }
-        return c;
+        return _alphabet.toChar(_inverse[index(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -105,8 +107,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (char i : perm.keySet()) {
-            if (perm.get(i) == i) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -116,11 +118,11 @@ class Permutation {
     /** Alphabet of this permutation. */
     protected Alphabet _alphabet;
 
-    /** The permutation represented in a HashMap. */
-    private HashMap<Character, Character> perm;
+    /** Index of the image of each alphabet index. */
+    private final int[] _forward;
 
-    /** Each cycle represented in an array. */
-    private String[] splitted;
+    /** Index of the preimage of each alphabet index. */
+    private final int[] _inverse;
 
     /** Each cycle of this permutation. */
     protected String _cycles;
@@ -0,0 +1,196 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A numbering of the plugboards in use by one owner, such as a session
+ *  store, for the compact forms of machine snapshots (see
+ *  Machine.snapshot), which hold a plugboard's number rather than its
+ *  mapping.  Equal plugboards share a number.  Each number counts its
+ *  references: a snapshot gains one, and its owner releases it when it
+ *  discards the snapshot.  A number whose last reference is released
+ *  is given out again, so a table holds only the plugboards in use, up
+ *  to its capacity, and its numbers stay small.  The numbers mean
+ *  nothing outside the table.  A table may be shared by any number of
+ *  threads.
+ *  @author Pranav Bhimani
+ */
+class PlugboardTable {
+
+    /** Returned by acquire when a plugboard gets no number. */
+    static final int NOT_PRESENT = -1;
+
+    /** A table holding up to CAPACITY plugboards at once. */
+    PlugboardTable(int capacity) {
+        if (capacity <= 0) {
+            throw error("plugboard table capacity must be positive");
+        }
+        _capacity = capacity;
+    }
+
+    /** Return the number of plugboards I can hold at once. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of plugboards I hold. */
+    synchronized int size() {
+        return _size;
+    }
+
+    /** Return the number of PLUGBOARD, adding a reference to it, and
+     *  numbering it first if it is new, or NOT_PRESENT if it is new and
+     *  I already hold capacity() plugboards.  Creates no objects unless
+     *  the plugboard is new. */
+    synchronized int acquire(Permutation plugboard) {
+        int hash = hash(plugboard);
+        int mask = _slots.length - 1;
+        int h = hash & mask;
+        for (int id; (id = _slots[h] - 1) >= 0; h = (h + 1) & mask) {
+            if (_hashes[id] == hash && equal(_plugboards[id], plugboard)) {
+                _counts[id] += 1;
+                return id;
+            }
+        }
+        if (_size == _capacity) {
+            return NOT_PRESENT;
+        }
+        int id;
+        if (_freeCount > 0) {
+            id = _free[--_freeCount];
+        } else {
+            id = _used++;
+            if (id == _plugboards.length) {
+                int length = 2 * id;
+                _plugboards = Arrays.copyOf(_plugboards, length);
+                _hashes = Arrays.copyOf(_hashes, length);
+                _counts = Arrays.copyOf(_counts, length);
+                _free = Arrays.copyOf(_free, length);
+            }
+        }
+        _plugboards[id] = plugboard;
+        _hashes[id] = hash;
+        _counts[id] = 1;
+        _slots[h] = id + 1;
+        _size += 1;
+        if (2 * _size > _slots.length) {
+            rehash(2 * _slots.length);
+        }
+        return id;
+    }
+
+    /** If ID numbers PLUGBOARD itself, add a reference to it and return
+     *  true; otherwise, return false.  Creates no objects. */
+    synchronized boolean retain(int id, Permutation plugboard) {
+        if (id < 0 || id >= _used || _plugboards[id] != plugboard) {
+            return false;
+        }
+        _counts[id] += 1;
+        return true;
+    }
+
+    /** Remove a reference to the plugboard numbered ID, freeing its
+     *  number if that was the last.  Creates no objects. */
+    synchronized void release(int id) {
+        if (id < 0 || id >= _used || _counts[id] == 0) {
+            throw error("no plugboard numbered %d", id);
+        }
+        _counts[id] -= 1;
+        if (_counts[id] > 0) {
+            return;
+        }
+        int mask = _slots.length - 1;
+        int hole = _hashes[id] & mask;
+        while (_slots[hole] != id + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int h = (hole + 1) & mask; _slots[h] != 0; h = (h + 1) & mask) {
+            int home = _hashes[_slots[h] - 1] & mask;
+            if (((h - home) & mask) >= ((h - hole) & mask)) {
+                _slots[hole] = _slots[h];
+                hole = h;
+            }
+        }
+        _slots[hole] = 0;
+        _plugboards[id] = null;
+        _free[_freeCount++] = id;
+        _size -= 1;
+    }
+
+    /** Return the plugboard numbered ID, or null if ID numbers none.
+     *  Creates no objects. */
+    synchronized Permutation plugboard(int id) {
+        return id < 0 || id >= _used ? null : _plugboards[id];
+    }
+
+    /** Replace _slots with a table of LENGTH slots holding the same
+     *  numbers. */
+    private void rehash(int length) {
+        _slots = new int[length];
+        int mask = length - 1;
+        for (int id = 0; id < _used; id++) {
+            if (_plugboards[id] != null) {
+                int h = _hashes[id] & mask;
+                while (_slots[h] != 0) {
+                    h = (h + 1) & mask;
+                }
+                _slots[h] = id + 1;
+            }
+        }
+    }
+
+    /** Return a hash of the mapping of PLUGBOARD. */
+    private static int hash(Permutation plugboard) {
+        int h = 0;
+        for (int i = 0; i < plugboard.size(); i++) {
+            h = h * 31 + plugboard.permute(i);
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    /** Return true iff A and B map each index alike. */
+    private static boolean equal(Permutation a, Permutation b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.permute(i) != b.permute(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Largest number of plugboards held at once. */
+    private final int _capacity;
+
+    /** Open-addressed hash table of my plugboards, by their mappings:
+     *  one more than the number of each, or 0 in an empty slot.  Never
+     *  more than half full. */
+    private int[] _slots = new int[16];
+
+    /** The plugboard of each number, or null if it is free. */
+    private Permutation[] _plugboards = new Permutation[8];
+
+    /** The hash of each plugboard in _plugboards. */
+    private int[] _hashes = new int[8];
+
+    /** The number of references to each plugboard in _plugboards. */
+    private int[] _counts = new int[8];
+
+    /** Free numbers below _used, the next to be given out last. */
+    private int[] _free = new int[8];
+
+    /** Number of entries in _free. */
+    private int _freeCount;
+
+    /** One more than the largest number ever given out. */
+    private int _used;
+
+    /** Number of plugboards I hold. */
+    private int _size;
+
+}
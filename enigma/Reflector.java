@@ -21,11 +21,4 @@ class Reflector extends FixedRotor {
         return true;
     }
 
-    @Override
-    void set(int posn) {
-        if (posn != 0) {
-            throw error("reflector has only one position");
-        }
-    }
-
 }
@@ -2,7 +2,14 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor
+ *  is immutable: it describes the wiring and notches of a rotor, while
+ *  the setting and ring setting of each rotor in use belong to the
+ *  machine holding it, so one rotor may serve many machines (and
+ *  threads) at once.  For alphabets of up to MAX_COMPILED_SIZE
+ *  characters, a rotor compiles its permutation at every offset
+ *  (setting - ring setting) into a pair of tables, so a conversion is a
+ *  single array load.
  *  @author Pranav Bhimani
  */
 class Rotor {
@@ -11,8 +18,24 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
-        ringSetting = 0;
+        int size = perm.size();
+        if (size <= MAX_COMPILED_SIZE) {
+            _forward = new int[size * size];
+            _backward = new int[size * size];
+            for (int offset = 0; offset < size; offset++) {
+                for (int p = 0, q = offset; p < size; p++, q++) {
+                    if (q == size) {
+                        q = 0;
+                    }
+                    int f = perm.permute(q) - offset;
+                    int b = perm.invert(q) - offset;
+                    _forward[offset * size + p] = f < 0 ? f + size : f;
+                    _backward[offset * size + p] = b < 0 ? b + size : b;
+                }
+            }
+        } else {
+            _forward = _backward = null;
+        }
     }
 
     /** Return my name. */
@@ -45,65 +68,53 @@ class Rotor {
         return false;
     }
 
-    /** Return my current setting. */
-    int setting() {
-        return _setting;
-    }
-
-    /** Set setting() to POSN.  */
-    void set(int posn) {
-        _setting = posn;
-    }
-
-    /** Set setting() to character CPOSN. */
-    void set(char cposn) {
-        _setting = alphabet().toInt(cposn);
-    }
-
-    /** Set the ring setting to character RINGPOS. */
-    void setRingSetting(char ringPos) {
-        ringSetting = alphabet().toInt(ringPos);
-    }
-
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
-    int convertForward(int p) {
-        int interchange = permutation().permute(p + (_setting - ringSetting));
-        return permutation().wrap(interchange - (_setting - ringSetting));
+     *  according to my permutation when my setting less my ring setting
+     *  is OFFSET (in 0..size()-1). */
+    int convertForward(int p, int offset) {
+        if (_forward != null) {
+            return _forward[offset * size() + p];
+        }
+        int interchange = permutation().permute(p + offset);
+        return permutation().wrap(interchange - offset);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        int interchange = permutation().invert(e + (_setting - ringSetting));
-        return permutation().wrap(interchange - (_setting - ringSetting));
-    }
-
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
-    boolean atNotch() {
+     *  according to the inverse of my permutation when my setting less
+     *  my ring setting is OFFSET. */
+    int convertBackward(int e, int offset) {
+        if (_backward != null) {
+            return _backward[offset * size() + e];
+        }
+        int interchange = permutation().invert(e + offset);
+        return permutation().wrap(interchange - offset);
+    }
+
+    /** Returns true iff I allow the rotor to my left to advance when my
+     *  setting is POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
-    }
-
     @Override
     public String toString() {
         return "Rotor " + _name;
     }
 
+    /** Largest alphabet for which conversion tables are compiled. */
+    static final int MAX_COMPILED_SIZE = 256;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
-    /** The current setting this rotor is at. */
-    private int _setting;
+    /** Forward conversion of contact P at offset O, stored at
+     *  O * size() + P, or null if my alphabet is too large to compile. */
+    private final int[] _forward;
 
-    /** The setting of ring if provided. */
-    private int ringSetting;
+    /** Backward conversions, laid out as _forward. */
+    private final int[] _backward;
 
 }
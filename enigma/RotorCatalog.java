@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** The rotors available to the machines built from one configuration,
+ *  together with the shape of those machines.  A catalog is immutable,
+ *  as are its rotors, so any number of machines on any number of
+ *  threads may share one.
+ *  @author Pranav Bhimani
+ */
+class RotorCatalog {
+
+    /** Returned by indexOf for a name that is not in the catalog. */
+    static final int NOT_PRESENT = -1;
+
+    /** A catalog of ROTORS over ALPHABET for machines with NUMROTORS
+     *  rotor slots and NUMPAWLS pawls. */
+    RotorCatalog(Alphabet alphabet, int numRotors, int numPawls,
+                 Collection<Rotor> rotors) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _rotors = Collections.unmodifiableList(new ArrayList<>(rotors));
+        _index = new HashMap<>(2 * _rotors.size());
+        for (int i = 0; i < _rotors.size(); i++) {
+            _index.put(_rotors.get(i).name(), i);
+        }
+    }
+
+    /** Return the alphabet of my rotors. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots in my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls in my machines. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my rotors, in the order they were given. */
+    List<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return the position in rotors() of the rotor named NAME, or
+     *  NOT_PRESENT if there is none.  If several rotors have that name,
+     *  it is the last of them. */
+    int indexOf(String name) {
+        Integer index = _index.get(name);
+        return index == null ? NOT_PRESENT : index;
+    }
+
+    /** Alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _numPawls;
+
+    /** All my rotors. */
+    private final List<Rotor> _rotors;
+
+    /** Position of each rotor in _rotors, keyed by name. */
+    private final HashMap<String, Integer> _index;
+
+}
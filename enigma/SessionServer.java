@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.channels.Channels;
+
+import java.util.concurrent.ExecutorService;
+
+import static enigma.EnigmaException.*;
+
+/** An encryption service on the loopback interface, run as
+ *
+ *      java enigma.SessionServer CONFIG [PORT]
+ *
+ *  Each connection is a session with its own machine, built from the
+ *  rotors of the configuration file CONFIG, which is read once.  The
+ *  client sends lines ending in a line feed (or carriage return and
+ *  line feed), and gets one line back for each:
+ *
+ *    - a settings line, in the form Main accepts, sets up the session's
+ *      machine, and is answered with OK;
+ *    - any other line is a message, which is converted, the rotors
+ *      keeping their positions from one message to the next, and
+ *      answered with the result in groups of five;
+ *    - a line that cannot be handled (a message before the first
+ *      settings line, a character outside the alphabet, a bad settings
+ *      line) is answered with ERR and a description.  A bad settings
+ *      line must be followed by a good one before messages are
+ *      accepted again.
+ *
+ *  Each session runs on its own virtual thread where those are
+ *  available (see Daemon.requestExecutor), and on a pooled thread
+ *  otherwise.  With PORT 0 or absent, a free port is chosen; the port
+ *  used is printed on the standard output.
+ *  @author Pranav Bhimani
+ */
+public class SessionServer {
+
+    /** Size of the input and output buffers of each session. */
+    static final int SESSION_BUFFER = 1 << 12;
+
+    /** Number of connections that may wait to be accepted. */
+    static final int BACKLOG = 4096;
+
+    /** Serve sessions as described by ARGS (see above). */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java enigma.SessionServer CONFIG "
+                               + "[PORT]");
+            System.exit(1);
+        }
+        RotorCatalog catalog;
+        try {
+            catalog = Main.readCatalog(args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        SessionServer server = new SessionServer(catalog, port);
+        System.out.println(server.port());
+        server.serve();
+    }
+
+    /** A server of sessions using machines built from CATALOG, listening
+     *  on loopback port PORT (or any free port if PORT is 0). */
+    SessionServer(RotorCatalog catalog, int port) throws IOException {
+        _catalog = catalog;
+        _main = new Main(catalog, null, null);
+        _server = new ServerSocket(port, BACKLOG,
+                                   InetAddress.getLoopbackAddress());
+        _sessions = Daemon.requestExecutor();
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Accept sessions until I am closed. */
+    void serve() {
+        while (!_server.isClosed()) {
+            try {
+                Socket client = _server.accept();
+                client.setTcpNoDelay(true);
+                _sessions.execute(() -> session(client));
+            } catch (IOException excp) {
+                if (!_server.isClosed()) {
+                    System.err.printf("Error: %s%n", excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Stop accepting sessions. */
+    void close() {
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore: we are going away. */
+        }
+        _sessions.shutdown();
+    }
+
+    /** Run the session with CLIENT until it closes its connection. */
+    private void session(Socket client) {
+        try (client) {
+            MessageReader input =
+                new MessageReader(client.getInputStream(), SESSION_BUFFER);
+            GroupWriter output =
+                new GroupWriter(Channels.newChannel(client.getOutputStream()),
+                                SESSION_BUFFER, SESSION_BUFFER);
+            Machine machine = new Machine(_catalog);
+            boolean ready = false;
+            while (input.readLine()) {
+                char[] line = input.line();
+                int len = input.length();
+                String reply = null;
+                try {
+                    if (Main.isSettings(line, len)) {
+                        ready = false;
+                        setUp(machine, line, len);
+                        ready = true;
+                        reply = "OK";
+                    } else if (!ready) {
+                        throw error("no settings line");
+                    } else if (isBlank(line, len)) {
+                        reply = "";
+                    } else {
+                        _main.convertLine(machine, line, len, output);
+                    }
+                } catch (EnigmaException excp) {
+                    reply = "ERR " + excp.getMessage();
+                }
+                if (reply != null) {
+                    output.print(reply);
+                    output.newLine();
+                }
+                output.flush();
+            }
+        } catch (IOException | EnigmaException excp) {
+            /* The client has gone away. */
+        }
+    }
+
+    /** Set MACHINE up from the settings line LINE[0 .. LEN-1] as Main
+     *  does, reporting a line too malformed for Main to diagnose as an
+     *  EnigmaException. */
+    private void setUp(Machine machine, char[] line, int len) {
+        try {
+            _main.setUp(machine, new String(line, 0, len));
+        } catch (EnigmaException excp) {
+            throw excp;
+        } catch (RuntimeException excp) {
+            throw error("bad settings line");
+        }
+    }
+
+    /** Return true iff LINE[0 .. LEN-1] is all blanks. */
+    private static boolean isBlank(char[] line, int len) {
+        for (int i = 0; i < len; i++) {
+            if (line[i] != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Rotors of every session's machine. */
+    private final RotorCatalog _catalog;
+    /** Parser of settings lines and converter of messages. */
+    private final Main _main;
+    /** The listening socket. */
+    private final ServerSocket _server;
+    /** Runs sessions. */
+    private final ExecutorService _sessions;
+}
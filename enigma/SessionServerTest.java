@@ -0,0 +1,82 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/** The suite of all JUnit tests for the SessionServer and LoadTest
+ *  classes.
+ *  @author Pranav Bhimani
+ */
+public class SessionServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSession() throws IOException {
+        SessionServer server =
+            new SessionServer(LoadTest.navalCatalog(), 0);
+        Thread thread = new Thread(server::serve);
+        thread.setDaemon(true);
+        thread.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port())) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                              true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            out.print("HELLO\n");
+            out.flush();
+            assertEquals("ERR no settings line", in.readLine());
+            out.print("* B Beta III IV I AXLE BCFG\r\n");
+            out.flush();
+            assertEquals("OK", in.readLine());
+            out.print("FROM HIS SHOULDER HIAWATHA\n");
+            out.flush();
+            assertEquals("VUSZK MAGXK OSXCG ZVDGY CQI", in.readLine());
+            out.print("  \nTOOKTHECAMERAOFROSEWOOD\n");
+            out.flush();
+            assertEquals("", in.readLine());
+            assertEquals("ZIZBI YHFCP XGKXU KPNWX KFK", in.readLine());
+            out.print("Hi\n* B Beta I II III\n");
+            out.flush();
+            assertEquals("ERR Input is not in Alphabet!", in.readLine());
+            assertTrue(in.readLine().startsWith("ERR"));
+            out.print("HELLO\n");
+            out.flush();
+            assertEquals("ERR no settings line", in.readLine());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void checkLoadTest() throws IOException {
+        SessionServer server =
+            new SessionServer(LoadTest.navalCatalog(), 0);
+        Thread thread = new Thread(server::serve);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            LoadTest test = new LoadTest(server.port(), 5, 300, 100);
+            test.run();
+            assertEquals(1500, test.completed());
+            assertEquals(0, test.errors());
+        } finally {
+            server.close();
+        }
+    }
+
+}
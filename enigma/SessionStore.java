@@ -0,0 +1,229 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The states of a large number of machines built from one catalog,
+ *  most of them idle at any moment, held as a few primitive arrays
+ *  rather than as Machine objects.  Each session is identified by a
+ *  small int and occupies one slot of each array: its plugboard number
+ *  and the remaining fields of its snapshot (see Machine.snapshot) as
+ *  chars.  The number of objects is therefore independent of the
+ *  number of sessions, and the garbage collector never needs to look
+ *  inside them.  The plugboards are numbered in a PlugboardTable of the
+ *  store's, which holds each distinct plugboard of the open sessions
+ *  once and frees it when the last session using it is closed or saved
+ *  with another, so any number of plugboards may come and go over the
+ *  life of a store.
+ *
+ *  Messages are converted for a session by loading its state into a
+ *  machine kept for the converting thread, converting, and storing the
+ *  resulting positions back, all without creating objects.  Different
+ *  sessions may be converted on different threads at once; one session
+ *  must not be used by two threads at once.
+ *  @author Pranav Bhimani
+ */
+class SessionStore {
+
+    /** A store of up to CAPACITY sessions of machines built from
+     *  CATALOG. */
+    SessionStore(RotorCatalog catalog, int capacity) {
+        if (catalog.rotors().size() > Character.MAX_VALUE + 1) {
+            throw error("too many rotors for a session store");
+        }
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _capacity = capacity;
+        _workers = ThreadLocal.withInitial(() -> new Worker(catalog));
+        _width = _workers.get()._fields.length - 1;
+        _plugboardTable =
+            new PlugboardTable((int) Math.min(2L * capacity,
+                                              Integer.MAX_VALUE));
+        _plugboards = new int[capacity];
+        _fields = new char[Math.multiplyExact(capacity, _width)];
+        _free = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            _plugboards[i] = FREE;
+            _free[i] = capacity - 1 - i;
+        }
+        _freeCount = capacity;
+    }
+
+    /** Return the number of sessions I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of open sessions. */
+    synchronized int size() {
+        return _capacity - _freeCount;
+    }
+
+    /** Return the number of distinct plugboards of my sessions. */
+    int plugboards() {
+        return _plugboardTable.size();
+    }
+
+    /** Return the number of bytes of storage each session takes,
+     *  whether open or not, not counting the plugboards. */
+    int bytesPerSession() {
+        return _width * Character.BYTES + 2 * Integer.BYTES;
+    }
+
+    /** Return the number of bytes of storage used by all my sessions. */
+    long footprint() {
+        return (long) _capacity * bytesPerSession();
+    }
+
+    /** Open a new session in the state of MACHINE, which must share my
+     *  catalog and be set up, and return its number. */
+    int open(Machine machine) {
+        int session;
+        synchronized (this) {
+            if (_freeCount == 0) {
+                throw error("session store is full");
+            }
+            session = _free[--_freeCount];
+            _plugboards[session] = OPENING;
+        }
+        try {
+            save(session, machine);
+        } catch (EnigmaException excp) {
+            close(session);
+            throw excp;
+        }
+        return session;
+    }
+
+    /** Close SESSION, making its number available for reuse. */
+    void close(int session) {
+        check(session);
+        int plugboard = _plugboards[session];
+        synchronized (this) {
+            _plugboards[session] = FREE;
+            _free[_freeCount++] = session;
+        }
+        if (plugboard >= 0) {
+            _plugboardTable.release(plugboard);
+        }
+    }
+
+    /** Set the state of SESSION to that of MACHINE, which must share my
+     *  catalog and be set up. */
+    void save(int session, Machine machine) {
+        check(session);
+        if (machine.catalog() != _catalog) {
+            throw error("machine does not share the store's catalog");
+        }
+        int[] fields = _workers.get()._fields;
+        machine.snapshot(fields, 0, _plugboardTable);
+        store(session, fields);
+    }
+
+    /** Put MACHINE, which must share my catalog, in the state of
+     *  SESSION. */
+    void load(int session, Machine machine) {
+        check(session);
+        int[] fields = _workers.get()._fields;
+        fetch(session, fields);
+        machine.restore(fields, 0, _plugboardTable);
+    }
+
+    /** Convert SRC[OFF .. OFF+LEN-1] for SESSION into DST starting at
+     *  DSTOFF, advancing the session's rotors as a machine would.  If
+     *  a character is not in the alphabet, nothing is converted and the
+     *  session is unchanged.  Creates no objects. */
+    void convert(int session, char[] src, int off, int len, char[] dst,
+                 int dstOff) {
+        check(session);
+        for (int k = off; k < off + len; k++) {
+            if (!_alphabet.contains(src[k])) {
+                throw error("character %c is not in the alphabet", src[k]);
+            }
+        }
+        Worker worker = _workers.get();
+        Machine machine = worker._machine;
+        fetch(session, worker._fields);
+        machine.restore(worker._fields, 0, _plugboardTable);
+        for (int k = 0; k < len; k++) {
+            dst[dstOff + k] = _alphabet.toChar(
+                machine.convert(_alphabet.toInt(src[off + k])));
+        }
+        machine.snapshot(worker._fields, 0, _plugboardTable);
+        store(session, worker._fields);
+    }
+
+    /** Check that SESSION is open. */
+    private void check(int session) {
+        if (session < 0 || session >= _capacity
+            || _plugboards[session] == FREE) {
+            throw error("no session %d", session);
+        }
+    }
+
+    /** Store the snapshot fields FIELDS as the state of SESSION,
+     *  releasing its reference to its previous plugboard, if any. */
+    private void store(int session, int[] fields) {
+        int base = session * _width;
+        for (int i = 0; i < _width; i++) {
+            _fields[base + i] = (char) fields[i + 1];
+        }
+        int previous = _plugboards[session];
+        _plugboards[session] = fields[0];
+        if (previous >= 0) {
+            _plugboardTable.release(previous);
+        }
+    }
+
+    /** Set FIELDS to the snapshot fields of SESSION. */
+    private void fetch(int session, int[] fields) {
+        int base = session * _width;
+        fields[0] = _plugboards[session];
+        for (int i = 0; i < _width; i++) {
+            fields[i + 1] = _fields[base + i];
+        }
+    }
+
+    /** The machine and snapshot buffer used by one thread. */
+    private static class Worker {
+        /** A worker for machines built from CATALOG. */
+        Worker(RotorCatalog catalog) {
+            _machine = new Machine(catalog);
+            _fields = new int[_machine.snapshotFields()];
+        }
+
+        /** Machine into which sessions are loaded. */
+        private final Machine _machine;
+        /** Snapshot of a session being loaded or stored. */
+        private final int[] _fields;
+    }
+
+    /** Plugboard number of a session that is not open. */
+    private static final int FREE = -1;
+
+    /** Plugboard number of a session being opened. */
+    private static final int OPENING = -2;
+
+    /** Catalog of all sessions' machines. */
+    private final RotorCatalog _catalog;
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+    /** Number of sessions I can hold. */
+    private final int _capacity;
+    /** Number of chars of _fields used by each session. */
+    private final int _width;
+    /** Numbers of the plugboards of my sessions.  Each open session
+     *  holds one reference, and each being saved at most one more, so
+     *  twice my capacity is always enough. */
+    private final PlugboardTable _plugboardTable;
+    /** Plugboard number of each session, or FREE. */
+    private final int[] _plugboards;
+    /** Snapshot fields, less the plugboard, of each session in turn. */
+    private final char[] _fields;
+    /** Numbers of the sessions that are not open, the next to be used
+     *  last. */
+    private final int[] _free;
+    /** Number of entries in _free. */
+    private int _freeCount;
+    /** The worker of each thread. */
+    private final ThreadLocal<Worker> _workers;
+}
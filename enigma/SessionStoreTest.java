@@ -0,0 +1,170 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Pranav Bhimani
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine on CATALOG with rotors ROTORS at SETTING, ring
+     *  settings RINGS and plugboard CYCLES. */
+    private static Machine machine(RotorCatalog catalog, String[] rotors,
+                                   String setting, String rings,
+                                   String cycles) {
+        Machine m = new Machine(catalog);
+        m.insertRotors(rotors);
+        m.setRotors(setting);
+        m.setRingSettings(rings);
+        m.setPlugboard(new Permutation(cycles, UPPER));
+        return m;
+    }
+
+    /** Return a random setting of the four non-reflector slots. */
+    private static String randomSetting(Random rand) {
+        return new String(Benchmark.randomMessage(4, rand));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkInterleavedSessions() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        SessionStore store = new SessionStore(catalog, 50);
+        Random rand = new Random(16);
+        String[][] orders = {
+            STANDARD, { "C", "Gamma", "VI", "VII", "VIII" },
+        };
+        String[] plugboards = { "", "(AB) (CD)", "(QW) (EX) (ZP)" };
+        Machine[] machines = new Machine[50];
+        int[] sessions = new int[machines.length];
+        for (int i = 0; i < machines.length; i += 1) {
+            machines[i] = machine(catalog, orders[i % orders.length],
+                                  randomSetting(rand), randomSetting(rand),
+                                  plugboards[i % plugboards.length]);
+            sessions[i] = store.open(machines[i]);
+        }
+        assertEquals(50, store.size());
+        char[] out = new char[40];
+        for (int round = 0; round < 500; round += 1) {
+            int i = rand.nextInt(machines.length);
+            char[] msg = Benchmark.randomMessage(1 + rand.nextInt(30), rand);
+            store.convert(sessions[i], msg, 0, msg.length, out, 5);
+            assertEquals(machines[i].convert(new String(msg)),
+                         new String(out, 5, msg.length));
+        }
+        Machine probe = new Machine(catalog);
+        for (int i = 0; i < machines.length; i += 1) {
+            store.load(sessions[i], probe);
+            assertEquals(machines[i].convert("PROBEPROBE"),
+                         probe.convert("PROBEPROBE"));
+        }
+    }
+
+    @Test
+    public void checkOpenAndClose() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        SessionStore store = new SessionStore(catalog, 2);
+        Machine m = machine(catalog, STANDARD, "AAAA", "AAAA", "");
+        int first = store.open(m);
+        int second = store.open(m);
+        assertTrue(first != second);
+        try {
+            store.open(m);
+            fail("opened a session in a full store");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        store.close(first);
+        try {
+            store.convert(first, new char[1], 0, 1, new char[1], 0);
+            fail("converted for a closed session");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(first, store.open(m));
+        char[] bad = "AB3".toCharArray();
+        try {
+            store.convert(second, bad, 0, 3, bad, 0);
+            fail("converted a character outside the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        char[] out = new char[10];
+        store.convert(second, "HELLOWORLD".toCharArray(), 0, 10, out, 0);
+        assertEquals("ILBDAAMTAZ", new String(out));
+        assertEquals(4 * 2 * 2 + 5 * 2 + 2 * 4, store.bytesPerSession());
+        assertEquals(2L * store.bytesPerSession(), store.footprint());
+    }
+
+    @Test
+    public void checkPlugboardsAreFreed() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        SessionStore store = new SessionStore(catalog, 2);
+        Machine m = machine(catalog, STANDARD, "AXLE", "BCFG", "(AB)");
+        int kept = store.open(m);
+        String expected = m.convert("HELLOWORLD");
+        Random rand = new Random(17);
+        int[] forward = new int[26];
+        for (int i = 0; i < 26; i += 1) {
+            forward[i] = i;
+        }
+        for (int n = 0; n < 70000; n += 1) {
+            for (int i = 25; i > 0; i -= 1) {
+                int j = rand.nextInt(i + 1);
+                int t = forward[i];
+                forward[i] = forward[j];
+                forward[j] = t;
+            }
+            int[] inverse = new int[26];
+            for (int i = 0; i < 26; i += 1) {
+                inverse[forward[i]] = i;
+            }
+            m.setPlugboard(new Permutation(forward.clone(), inverse, UPPER));
+            int session = store.open(m);
+            store.save(session, machine(catalog, STANDARD, "AAAA", "AAAA",
+                                        n % 2 == 0 ? "(AB)" : "(CD)"));
+            assertTrue(store.plugboards() <= 2);
+            store.close(session);
+        }
+        assertEquals(1, store.plugboards());
+        char[] out = new char[10];
+        store.convert(kept, "HELLOWORLD".toCharArray(), 0, 10, out, 0);
+        assertEquals(expected, new String(out));
+        store.close(kept);
+        assertEquals(0, store.plugboards());
+    }
+
+    @Test
+    public void checkConvertCreatesNothing() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        SessionStore store = new SessionStore(catalog, 100);
+        Machine m = machine(catalog, STANDARD, "AXLE", "BCFG", "(AB)");
+        for (int i = 0; i < 100; i += 1) {
+            m.setRotors(randomSetting(new Random(i)));
+            store.open(m);
+        }
+        char[] msg = Benchmark.randomMessage(64, new Random(0));
+        char[] out = new char[msg.length];
+        int[] session = new int[1];
+        assertEquals(0, allocatedPerRun(20000, () -> {
+            store.convert(session[0], msg, 0, msg.length, out, 0);
+            session[0] = (session[0] + 1) % 100;
+        }));
+    }
+
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The compiled forms of the settings lines most recently used with
+ *  machines built from one catalog, so that a repeated line costs a
+ *  lookup and a copy of machine state (see Machine.copyState) rather
+ *  than a parse and a new plugboard.  A compiled form is a machine set
+ *  up by the line and never used to convert, so machines set up from it
+ *  share its plugboard, and keep their substitution tables when the
+ *  same line is seen again.
+ *
+ *  Lines are keyed without trailing blanks, which setUp ignores.  When
+ *  full, the cache drops the line used least recently.  A line that
+ *  cannot be applied is not cached.  The cache may be used by several
+ *  threads at once.
+ *  @author Pranav Bhimani
+ */
+class SettingsCache {
+
+    /** Number of lines kept unless Main.SETTINGS_CACHE_PROPERTY says
+     *  otherwise. */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** A cache of up to CAPACITY lines, applied by MAIN to machines
+     *  built from CATALOG. */
+    SettingsCache(Main main, RotorCatalog catalog, int capacity) {
+        _main = main;
+        _catalog = catalog;
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Machine>
+                                                eldest) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Set M, which must share my catalog, according to SETTINGS, as
+     *  Main.setUp does. */
+    void setUp(Machine M, String settings) {
+        String key = normalize(settings);
+        Machine compiled;
+        synchronized (this) {
+            compiled = _entries.get(key);
+            if (compiled != null) {
+                _hits += 1;
+            } else {
+                _misses += 1;
+            }
+        }
+        if (compiled == null) {
+            compiled = new Machine(_catalog);
+            _main.applySettings(compiled, settings);
+            synchronized (this) {
+                _entries.put(key, compiled);
+            }
+        }
+        M.copyState(compiled);
+    }
+
+    /** Return the number of lines found in the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lines not found in the cache. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of lines dropped to make room for others. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of lines in the cache. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return SETTINGS without trailing blanks. */
+    private static String normalize(String settings) {
+        int end = settings.length();
+        while (end > 0 && settings.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        return settings.substring(0, end);
+    }
+
+    /** Applier of settings lines. */
+    private final Main _main;
+    /** Catalog of the machines set up. */
+    private final RotorCatalog _catalog;
+    /** Largest number of lines kept. */
+    private final int _capacity;
+    /** Compiled lines, least recently used first. */
+    private final LinkedHashMap<String, Machine> _entries;
+    /** Number of lines found. */
+    private long _hits;
+    /** Number of lines not found. */
+    private long _misses;
+    /** Number of lines dropped. */
+    private long _evictions;
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Pranav Bhimani
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Settings lines used in the tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA",
+        "* C Gamma VI VII VIII QDZL AMZB (AZ) (QW) (EX)",
+        "* B Beta III IV I AXLE BCFG (HQ) (EX) (IP) (TR) (BY)",
+    };
+
+    /** A message to convert. */
+    private static final String MSG = "FROMHISSHOULDERHIAWATHA";
+
+    @Test
+    public void checkMatchesUncached() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        Main main = new Main(catalog, null, null);
+        SettingsCache cache = new SettingsCache(main, catalog, 2);
+        Machine cached = new Machine(catalog);
+        Machine plain = new Machine(catalog);
+        for (int round = 0; round < 3; round += 1) {
+            for (String settings : SETTINGS) {
+                cache.setUp(cached, settings + "  ");
+                main.applySettings(plain, settings);
+                assertEquals(plain.convert(MSG), cached.convert(MSG));
+            }
+        }
+        assertEquals(9, cache.misses());
+        assertEquals(0, cache.hits());
+        assertEquals(7, cache.evictions());
+        assertEquals(2, cache.size());
+        for (int round = 0; round < 3; round += 1) {
+            cache.setUp(cached, SETTINGS[1]);
+            main.applySettings(plain, SETTINGS[1]);
+            assertEquals(plain.convert(MSG), cached.convert(MSG));
+            cache.setUp(cached, SETTINGS[2]);
+            main.applySettings(plain, SETTINGS[2]);
+            assertEquals(plain.convert(MSG), cached.convert(MSG));
+        }
+        assertEquals(6, cache.hits());
+    }
+
+    @Test
+    public void checkKeepsTable() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        Main main = new Main(catalog, null, null);
+        Machine m = new Machine(catalog);
+        m.setTableBudget(1L << 24);
+        main.setUp(m, SETTINGS[2]);
+        String first = m.convert(MSG);
+        assertTrue(m.usingTable());
+        main.setUp(m, SETTINGS[2]);
+        assertTrue(m.usingTable());
+        assertEquals(first, m.convert(MSG));
+        assertEquals(1, main.settingsCache().hits());
+    }
+
+    @Test
+    public void checkErrorsNotCached() {
+        RotorCatalog catalog = new RotorCatalog(UPPER, 5, 3, navalRotors());
+        Main main = new Main(catalog, null, null);
+        Machine m = new Machine(catalog);
+        for (int i = 0; i < 2; i += 1) {
+            try {
+                main.setUp(m, "* B Beta I I III AAAA");
+                fail("accepted a repeated rotor");
+            } catch (EnigmaException excp) {
+                assertEquals("Cannot repeat rotors!", excp.getMessage());
+            }
+        }
+        assertEquals(0, main.settingsCache().size());
+        main.setUp(m, SETTINGS[0]);
+        try {
+            main.setUp(m, "* B Beta I II XX AAAA");
+            fail("accepted an unknown rotor");
+        } catch (EnigmaException excp) {
+            assertEquals("Rotor XX is not in the configuration!",
+                         excp.getMessage());
+        }
+        assertEquals(1, main.settingsCache().size());
+    }
+
+}
@@ -18,6 +18,25 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return the number of bytes this thread allocates in each run of
+     *  BODY, rounded down: BODY is run N times to warm it up and N times
+     *  between two probes of Benchmark.allocatedBytes, and the bytes the
+     *  probe itself allocates, found by two back-to-back probes, are
+     *  subtracted. */
+    static long allocatedPerRun(int n, Runnable body) {
+        for (int i = 0; i < n; i += 1) {
+            body.run();
+        }
+        long probe = Benchmark.allocatedBytes();
+        probe = Benchmark.allocatedBytes() - probe;
+        long before = Benchmark.allocatedBytes();
+        for (int i = 0; i < n; i += 1) {
+            body.run();
+        }
+        long bytes = Benchmark.allocatedBytes() - before - probe;
+        return Math.max(0, bytes) / n;
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
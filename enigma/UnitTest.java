@@ -10,8 +10,22 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+        System.exit(textui.runClasses(BombeTest.class, CycleIndexTest.class,
+                                      HillClimbTest.class,
+                                      KeyBatchTest.class,
+                                      NGramModelTest.class,
+                                      PermutationTest.class,
+                                      ConfigFileTest.class,
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      MessageReaderTest.class,
+                                      GroupWriterTest.class,
+                                      BatchProcessorTest.class,
+                                      DaemonTest.class,
+                                      SessionServerTest.class,
+                                      SessionStoreTest.class,
+                                      SettingsCacheTest.class,
+                                      MachineTest.class));
     }
 
 }